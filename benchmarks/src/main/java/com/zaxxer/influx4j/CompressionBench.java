@@ -0,0 +1,108 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * Gzip one megabyte batch bodies of line protocol with the {@link GzipEncoder} of a
+ * connection, at several compression levels, so the time per operation is the CPU cost per
+ * megabyte.  The body bytes and compressed bytes are reported as secondary results; run
+ * {@link #main(String[])} for a table of the cost per megabyte against the bytes saved.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class CompressionBench {
+   private static final int BODY_SIZE = 1024 * 1024;
+
+   @Param({ "1", "3", "6", "9" })
+   private int level;
+
+   private GzipEncoder encoder;
+   private ByteBuffer body;
+   private ByteBuffer target;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      encoder = new GzipEncoder(level, BODY_SIZE);
+      body = ByteBuffer.allocate(BODY_SIZE);
+      target = ByteBuffer.allocate(BODY_SIZE);
+
+      final PointFactory pointFactory = PointFactory.builder().build();
+      final long start = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+      for (int i = 0; ; i++) {
+         final Point point = pointFactory.createPoint("cpu")
+            .tag("host", "server" + (i % 100))
+            .tag("region", (i % 3 == 0) ? "us-west" : "us-east")
+            .field("idle", 90d + (i % 1000) / 100d)
+            .field("user", (i * 7919) % 10000 / 100d)
+            .field("count", (long) i)
+            .timestamp(start + i * 1000000L, TimeUnit.NANOSECONDS);
+         final int size = point.serializedSize(Precision.NANOSECOND);
+         if (size > body.remaining()) {
+            point.release();
+            break;
+         }
+         point.write(body, Precision.NANOSECOND);
+         point.release();
+      }
+      body.flip();
+      pointFactory.close();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() {
+      encoder.end();
+   }
+
+   @Benchmark
+   public boolean compress(final Sizes sizes) {
+      body.rewind();
+      target.clear();
+      final boolean compressed = encoder.encode(body, target);
+      sizes.bodyBytes += body.limit();
+      sizes.compressedBytes += compressed ? target.position() : body.limit();
+      return compressed;
+   }
+
+   @AuxCounters(AuxCounters.Type.EVENTS)
+   @State(Scope.Thread)
+   public static class Sizes {
+      public long bodyBytes;
+      public long compressedBytes;
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final Options options = new OptionsBuilder()
+         .include(CompressionBench.class.getSimpleName())
+         .forks(1)
+         .build();
+
+      for (final RunResult result : new Runner(options).run()) {
+         final double mbs = result.getSecondaryResults().get("bodyBytes").getScore() / BODY_SIZE;
+         final double ratio = result.getSecondaryResults().get("bodyBytes").getScore() / result.getSecondaryResults().get("compressedBytes").getScore();
+         System.out.printf("level=%s: %.2f ms CPU per MB, %.1fx smaller, %.1f%% of bytes saved (%.0f MB)%n",
+                           result.getParams().getParam("level"), result.getPrimaryResult().getScore(), ratio, 100d * (1d - 1d / ratio), mbs);
+      }
+   }
+}
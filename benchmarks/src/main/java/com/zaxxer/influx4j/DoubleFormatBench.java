@@ -0,0 +1,66 @@
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.fastdouble.FastDtoaBuffer;
+import com.zaxxer.influx4j.util.fastdouble.RyuDouble;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the Ryu double formatter against the previous Grisu3 path (including its
+ * {@code String.valueOf()} fallback) and the JDK, over a fixed set of noisy sensor values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class DoubleFormatBench {
+   @Param({ "ryu", "grisu", "jdk" })
+   private String formatter;
+
+   private final ByteBuffer buffer = ByteBuffer.allocate(64);
+   private final double[] values = new double[1024];
+   private FastDtoaBuffer grisu;
+   private int ndx;
+
+   @Setup(Level.Trial)
+   public void createValues() {
+      final Random random = new Random(1234);
+      for (int i = 0; i < values.length; i++) {
+         values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(12) - 4);
+      }
+
+      grisu = new FastDtoaBuffer(null);
+   }
+
+   @Benchmark
+   public Object formatDouble() {
+      final double value = values[ndx++ & (values.length - 1)];
+      buffer.clear();
+
+      switch (formatter) {
+         case "ryu":
+            RyuDouble.format(value, buffer);
+            break;
+         case "grisu":
+            grisu.setBuffer(buffer).format(value);
+            break;
+         case "jdk":
+            buffer.put(String.valueOf(value).getBytes());
+            break;
+      }
+
+      return buffer;
+   }
+}
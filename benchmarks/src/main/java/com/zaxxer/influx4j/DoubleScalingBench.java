@@ -0,0 +1,149 @@
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.FastValue2Buffer;
+import com.zaxxer.influx4j.util.fastdouble.FastDtoaBuffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import stormpot.Allocator;
+import stormpot.BlazePool;
+import stormpot.Config;
+import stormpot.Slot;
+import stormpot.Timeout;
+
+/**
+ * Measures how double serialization scales with the number of serializing threads.  The
+ * {@code pooled} variant reproduces the previous design, where every double claimed a
+ * {@link FastDtoaBuffer} from a shared 1024-slot {@link BlazePool}; {@code stateless} is
+ * the current {@link FastValue2Buffer#writeDoubleToBuffer(double, ByteBuffer)}.
+ * <p>
+ * Run the {@link #main(String[])} method to sweep 1, 2, 4 ... N threads and print the
+ * scaling curve, where N defaults to twice the number of available processors.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class DoubleScalingBench {
+   private static final Timeout TIMEOUT = new Timeout(Long.MAX_VALUE, TimeUnit.DAYS);
+
+   @Param({ "stateless", "pooled" })
+   private String mode;
+
+   private BlazePool<FastDtoaBuffer> dtoaPool;
+
+   @Setup(Level.Trial)
+   public void createPool() {
+      final Config<FastDtoaBuffer> config = new Config<FastDtoaBuffer>()
+         .setSize(1024)
+         .setAllocator(new Allocator<FastDtoaBuffer>() {
+            @Override
+            public FastDtoaBuffer allocate(final Slot slot) {
+               return new FastDtoaBuffer(slot);
+            }
+
+            @Override
+            public void deallocate(final FastDtoaBuffer poolable) {
+               // nothing
+            }
+         })
+         .setThreadFactory(r -> {
+            Thread t = new Thread(r);
+            t.setDaemon(true);
+            return t;
+         });
+      dtoaPool = new BlazePool<>(config);
+   }
+
+   @TearDown(Level.Trial)
+   public void shutdownPool() {
+      dtoaPool.shutdown();
+   }
+
+   @State(Scope.Thread)
+   public static class ThreadState {
+      private final ByteBuffer buffer = ByteBuffer.allocate(64);
+      private final double[] values = new double[1024];
+      private int ndx;
+
+      @Setup(Level.Trial)
+      public void createValues() {
+         final Random random = new Random(Thread.currentThread().getId());
+         for (int i = 0; i < values.length; i++) {
+            values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(12) - 4);
+         }
+      }
+   }
+
+   @Benchmark
+   public Object writeDouble(final ThreadState state) throws InterruptedException {
+      final ByteBuffer buffer = state.buffer;
+      final double value = state.values[state.ndx++ & (state.values.length - 1)];
+      buffer.clear();
+
+      if ("pooled".equals(mode)) {
+         try (FastDtoaBuffer dtoaBuffer = dtoaPool.claim(TIMEOUT)) {
+            dtoaBuffer.setBuffer(buffer).format(value);
+         }
+      }
+      else {
+         FastValue2Buffer.writeDoubleToBuffer(value, buffer);
+      }
+
+      return buffer;
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final int maxThreads = args.length > 0 ? Integer.parseInt(args[0]) : Runtime.getRuntime().availableProcessors() * 2;
+
+      final StringBuilder curve = new StringBuilder(String.format("%8s %14s %14s%n", "threads", "stateless", "pooled"));
+      for (int threads = 1; threads <= maxThreads; threads *= 2) {
+         final Options options = new OptionsBuilder()
+            .include(DoubleScalingBench.class.getSimpleName())
+            .threads(threads)
+            .forks(1)
+            .warmupIterations(3)
+            .warmupTime(TimeValue.seconds(1))
+            .measurementIterations(5)
+            .measurementTime(TimeValue.seconds(1))
+            .build();
+
+         final Collection<RunResult> results = new Runner(options).run();
+         double stateless = 0, pooled = 0;
+         for (final RunResult result : results) {
+            final double score = result.getPrimaryResult().getScore();
+            if ("pooled".equals(result.getParams().getParam("mode"))) {
+               pooled = score;
+            }
+            else {
+               stateless = score;
+            }
+         }
+         curve.append(String.format("%8d %14.1f %14.1f%n", threads, stateless, pooled));
+      }
+
+      System.out.println();
+      System.out.println("ops/ms by thread count");
+      System.out.print(curve);
+   }
+}
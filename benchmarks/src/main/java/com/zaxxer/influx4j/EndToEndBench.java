@@ -0,0 +1,102 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.OverflowPolicy;
+
+/**
+ * Writes points end to end, through one or more connections, to a {@link StandInServer}
+ * that holds every write for an injected latency.  The write queue is small and a full
+ * queue blocks the writer, so the rate at which points are written is the rate at which the
+ * server takes them.  With one connection the flusher idles for the latency of every batch;
+ * more connections keep more batches in flight.  Run {@link #main(String[])} for a table of
+ * the scaling with the number of connections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(2)
+@Fork(value = 1, jvmArgsAppend = { "-Dcom.zaxxer.influx4j.queueSize=256",
+                                   "-Dcom.zaxxer.influx4j.sndrcvBufferSize=16384",
+                                   "-Dcom.zaxxer.influx4j.minBatchSize=4096" })
+@SuppressWarnings("unused")
+public class EndToEndBench {
+   @Param({ "1", "2", "4", "8" })
+   private int connections;
+
+   @Param({ "5" })
+   private int latencyMs;
+
+   private StandInServer server;
+   private PointFactory pointFactory;
+   private InfluxDB influxDB;
+
+   @Setup(Level.Trial)
+   public void setup() throws IOException {
+      server = new StandInServer(latencyMs, true);
+      pointFactory = PointFactory.builder().build();
+      influxDB = InfluxDB.builder()
+         .setConnection("localhost", server.getPort(), InfluxDB.Protocol.HTTP)
+         .setDatabase("bench")
+         .setUsername("bench")
+         .setThreadFactory(runnable -> new Thread(runnable, "influx4j-flusher"))
+         .setConnectionCount(connections)
+         .setSerializeOnWrite(true)
+         .setOverflowPolicy(OverflowPolicy.BLOCK)
+         .setOverflowTimeout(TimeUnit.MINUTES.toMillis(1))
+         .build();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() throws IOException {
+      influxDB.close();
+      pointFactory.close();
+      server.close();
+      System.out.printf("%n%d lines received in %d requests%n", server.getLines(), server.getRequests());
+   }
+
+   @Benchmark
+   public void write() {
+      influxDB.write(pointFactory.createPoint("cpu")
+                        .tag("host", "server01")
+                        .tag("region", "us-west")
+                        .field("idle", 98.75d)
+                        .field("count", 123456789L)
+                        .timestamp(System.currentTimeMillis(), TimeUnit.MILLISECONDS));
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final Options options = new OptionsBuilder()
+         .include(EndToEndBench.class.getSimpleName())
+         .build();
+
+      double baseline = 0d;
+      for (final RunResult result : new Runner(options).run()) {
+         final double score = result.getPrimaryResult().getScore();
+         if (baseline == 0d) {
+            baseline = score;
+         }
+         System.out.printf("connections=%s latency=%sms: %.0f points/s, %.1fx%n",
+                           result.getParams().getParam("connections"), result.getParams().getParam("latencyMs"), score, score / baseline);
+      }
+   }
+}
@@ -0,0 +1,76 @@
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.Utf8;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the single-pass SWAR {@link Utf8#classify} against the previous char-by-char
+ * {@code containsUnicode()} plus {@code containsCommaEqualSpace()} scans, for tag values of
+ * 4 to 256 chars.  The {@code escaped} and {@code unicode} strings carry their special
+ * character at the end, so every variant scans the whole string.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class EscapeScanBench {
+   @Param({ "4", "16", "64", "256" })
+   private int length;
+
+   @Param({ "plain", "escaped", "unicode" })
+   private String content;
+
+   private final String[] strings = new String[16];
+   private int ndx;
+
+   @Setup(Level.Trial)
+   public void createStrings() {
+      final Random random = new Random(1234);
+      final char last = "escaped".equals(content) ? '=' : "unicode".equals(content) ? '\u00e9' : 'z';
+      for (int i = 0; i < strings.length; i++) {
+         final StringBuilder sb = new StringBuilder();
+         for (int j = 0; j < length - 1; j++) {
+            sb.append((char) ('a' + random.nextInt(26)));
+         }
+         strings[i] = sb.append(last).toString();
+      }
+   }
+
+   @Benchmark
+   public int swar() {
+      return Utf8.classify(strings[ndx++ & (strings.length - 1)], ',', '=', ' ');
+   }
+
+   @Benchmark
+   public int scalar() {
+      final String string = strings[ndx++ & (strings.length - 1)];
+      if (Utf8.containsUnicode(string)) {
+         return Utf8.NON_ASCII;
+      }
+      return containsCommaEqualSpace(string) ? Utf8.ESCAPED_ASCII : Utf8.PLAIN_ASCII;
+   }
+
+   private static boolean containsCommaEqualSpace(final String string) {
+      for (int i = 0; i < string.length(); i++) {
+         switch (string.charAt(i)) {
+            case ',':
+            case '=':
+            case ' ':
+               return true;
+         }
+      }
+      return false;
+   }
+}
@@ -0,0 +1,61 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares Point serialization with the escaped key cache enabled (the default) against
+ * the uncached escape path, selected by forking with {@code com.zaxxer.influx4j.keyCacheSize=0}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class KeyCacheBench {
+   private static final PointFactory pointFactory = PointFactory.builder()
+      .setThreadFactory(r -> {
+         Thread t = new Thread(r);
+         t.setDaemon(true);
+         return t;
+      })
+      .build();
+
+   private final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+   @Benchmark
+   public Object cachedKeys() {
+      return writePoint();
+   }
+
+   @Benchmark
+   @Fork(jvmArgsAppend = "-Dcom.zaxxer.influx4j.keyCacheSize=0")
+   public Object uncachedKeys() {
+      return writePoint();
+   }
+
+   private Object writePoint() {
+      final Point point = pointFactory.createPoint("testMeasurement")
+              .tag("zebra", "4")
+              .tag("apple", "1")
+              .tag("table", "3")
+              .tag("mouse", "2")
+              .field("long", 12345)
+              .field("boolean", true)
+              .field("double", 12345.6789d)
+              .field("string", "This is a string");
+
+      point.write(buffer);
+      buffer.clear();
+      point.release();
+
+      return buffer;
+   }
+}
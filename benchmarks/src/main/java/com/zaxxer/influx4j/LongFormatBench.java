@@ -0,0 +1,111 @@
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.FastValue2Buffer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the digit-pair long formatter against the previous recursive digit-at-a-time
+ * formatter, for 19-digit epoch-nanosecond timestamps, small counters, and negative values.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class LongFormatBench {
+   @Param({ "timestamp", "counter", "negative" })
+   private String values;
+
+   @Param({ "pairs", "recursive" })
+   private String formatter;
+
+   private final ByteBuffer buffer = ByteBuffer.allocate(64);
+   private final long[] longs = new long[1024];
+   private int ndx;
+
+   @Setup(Level.Trial)
+   public void createValues() {
+      final Random random = new Random(1234);
+      final long now = TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+      for (int i = 0; i < longs.length; i++) {
+         switch (values) {
+            case "timestamp":
+               longs[i] = now + random.nextInt(1_000_000_000);
+               break;
+            case "counter":
+               longs[i] = random.nextInt(10_000);
+               break;
+            case "negative":
+               longs[i] = -(long) (random.nextDouble() * Math.pow(10, 1 + random.nextInt(12)));
+               break;
+         }
+      }
+   }
+
+   @Benchmark
+   public Object formatLong() {
+      final long value = longs[ndx++ & (longs.length - 1)];
+      buffer.clear();
+
+      if ("pairs".equals(formatter)) {
+         FastValue2Buffer.writeLongToBuffer(value, buffer);
+      }
+      else {
+         RecursiveFormatter.writeLongToBuffer(value, buffer);
+      }
+
+      return buffer;
+   }
+
+   /**
+    * The previous formatter: one divide and modulo per digit, through a recursive pair of methods.
+    */
+   private static final class RecursiveFormatter {
+      static void writeLongToBuffer(final long value, final ByteBuffer buffer) {
+         final long v;
+         if (value >= 0) {
+            v = value;
+         }
+         else {
+            v = -value;
+            buffer.put((byte) '-');
+         }
+
+         final int offset = buffer.position();
+         final int len = FastValue2Buffer.longLength(v);
+         writeNumber(buffer, len, v, offset);
+         buffer.position(offset + len);
+      }
+
+      private static void writeNumber(final ByteBuffer buffer, final int len, final long value, final int offset) {
+         switch (len) {
+            case 1:
+               buffer.put(offset, (byte) ('0' + value));
+               break;
+            default:
+               writeChar(buffer, len, value, offset);
+               break;
+         }
+      }
+
+      private static void writeChar(final ByteBuffer buffer, final int len, final long value, final int offset) {
+         final long div = value / 10L;
+         final long rem = value % 10L;
+         buffer.put(len - 1 + offset, (byte) ('0' + rem));
+
+         writeNumber(buffer, len - 1, div, offset);
+      }
+   }
+}
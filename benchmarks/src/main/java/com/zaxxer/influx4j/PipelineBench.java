@@ -0,0 +1,111 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.OverflowPolicy;
+
+/**
+ * Writes points end to end, through one connection, to a {@link StandInServer} that answers
+ * every write a network round trip after it arrived.  The write queue is small and a full
+ * queue blocks the writer, so the rate at which points are written is the rate at which the
+ * server takes them.  With a pipeline depth of one the flusher idles for a round trip after
+ * every batch; a deeper pipeline keeps more batches in flight, and serializes the next batch
+ * while the previous ones are answered.  Run {@link #main(String[])} for a table of the
+ * scaling with the pipeline depth.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Threads(2)
+@Fork(value = 1, jvmArgsAppend = { "-Dcom.zaxxer.influx4j.queueSize=256",
+                                   "-Dcom.zaxxer.influx4j.sndrcvBufferSize=16384",
+                                   "-Dcom.zaxxer.influx4j.minBatchSize=4096" })
+@SuppressWarnings("unused")
+public class PipelineBench {
+   @Param({ "1", "2", "4", "8" })
+   private int pipelineDepth;
+
+   @Param({ "5", "50" })
+   private int latencyMs;
+
+   private StandInServer server;
+   private PointFactory pointFactory;
+   private InfluxDB influxDB;
+
+   @Setup(Level.Trial)
+   public void setup() throws IOException {
+      server = new StandInServer(latencyMs, false);
+      pointFactory = PointFactory.builder().build();
+      influxDB = InfluxDB.builder()
+         .setConnection("localhost", server.getPort(), InfluxDB.Protocol.HTTP)
+         .setDatabase("bench")
+         .setUsername("bench")
+         .setThreadFactory(runnable -> new Thread(runnable, "influx4j-flusher"))
+         .setPipelineDepth(pipelineDepth)
+         .setSerializeOnWrite(true)
+         .setOverflowPolicy(OverflowPolicy.BLOCK)
+         .setOverflowTimeout(TimeUnit.MINUTES.toMillis(1))
+         .build();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() throws IOException {
+      influxDB.close();
+      pointFactory.close();
+      server.close();
+      System.out.printf("%n%d lines received in %d requests%n", server.getLines(), server.getRequests());
+   }
+
+   @Benchmark
+   public void write() {
+      influxDB.write(pointFactory.createPoint("cpu")
+                        .tag("host", "server01")
+                        .tag("region", "us-west")
+                        .field("idle", 98.75d)
+                        .field("count", 123456789L)
+                        .timestamp(System.currentTimeMillis(), TimeUnit.MILLISECONDS));
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final Options options = new OptionsBuilder()
+         .include(PipelineBench.class.getSimpleName())
+         .build();
+
+      final Collection<RunResult> results = new Runner(options).run();
+      final Map<String, Double> baselines = new HashMap<>();
+      for (final RunResult result : results) {
+         if ("1".equals(result.getParams().getParam("pipelineDepth"))) {
+            baselines.put(result.getParams().getParam("latencyMs"), result.getPrimaryResult().getScore());
+         }
+      }
+
+      for (final RunResult result : results) {
+         final String latency = result.getParams().getParam("latencyMs");
+         final double score = result.getPrimaryResult().getScore();
+         System.out.printf("latency=%sms pipelineDepth=%s: %.0f points/s, %.1fx%n",
+                           latency, result.getParams().getParam("pipelineDepth"), score, score / baselines.getOrDefault(latency, score));
+      }
+   }
+}
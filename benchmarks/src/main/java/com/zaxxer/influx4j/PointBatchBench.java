@@ -0,0 +1,85 @@
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares creating, filling and serializing one pooled {@link Point} per sample against
+ * appending the same samples as rows of a {@link PointBatch}.  Scores are samples per
+ * millisecond.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class PointBatchBench {
+   private static final int ROWS = 100;
+
+   private PointFactory pointFactory;
+   private ByteBuffer buffer;
+   private long timestamp;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      pointFactory = PointFactory.builder().build();
+      buffer = ByteBuffer.allocateDirect(64 * 1024);
+      timestamp = System.currentTimeMillis();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() {
+      pointFactory.close();
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ROWS)
+   public Object points() {
+      buffer.clear();
+      for (int i = 0; i < ROWS; i++) {
+         try (Point point = pointFactory.createPoint("cpu")
+               .tag("host", "server01")
+               .tag("region", "us-west")
+               .field("count", i)
+               .field("idle", 98.5d + i)
+               .timestamp(timestamp + i, TimeUnit.MILLISECONDS)) {
+            point.write(buffer);
+         }
+      }
+      return buffer;
+   }
+
+   @Benchmark
+   @OperationsPerInvocation(ROWS)
+   public Object batch() {
+      buffer.clear();
+      try (PointBatch batch = pointFactory.createBatch("cpu")
+            .tag("host", "server01")
+            .tag("region", "us-west")) {
+         final int count = batch.longField("count");
+         final int idle = batch.doubleField("idle");
+         for (int i = 0; i < ROWS; i++) {
+            batch.addRow(timestamp + i, TimeUnit.MILLISECONDS)
+               .setLong(count, i)
+               .setDouble(idle, 98.5d + i);
+         }
+
+         while (!batch.encodeNext(buffer, Precision.NANOSECOND)) {
+            // next row
+         }
+      }
+      return buffer;
+   }
+}
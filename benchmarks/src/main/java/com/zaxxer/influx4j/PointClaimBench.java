@@ -0,0 +1,98 @@
+package com.zaxxer.influx4j;
+
+import org.jctools.queues.MpscArrayQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Producers claim points from a shared {@link PointFactory} and hand them to a single
+ * flusher thread, which releases them, as an {@link InfluxDB} connection does.  Compare
+ * {@code magazineSize=0}, where every claim and release goes to the Stormpot pool, with the
+ * per-thread magazines.  Run {@link #main(String[])} to measure claim throughput and p99
+ * claim latency at 1 to 64 producer threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.Throughput, Mode.SampleTime })
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@SuppressWarnings("unused")
+public class PointClaimBench {
+   @Param({ "0", "16" })
+   private int magazineSize;
+
+   private PointFactory pointFactory;
+   private MpscArrayQueue<Point> queue;
+   private Thread flusher;
+   private volatile boolean running;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      pointFactory = PointFactory.builder()
+         .setMagazineSize(magazineSize)
+         .build();
+      queue = new MpscArrayQueue<>(1024);
+
+      running = true;
+      flusher = new Thread(() -> {
+         while (running) {
+            if (queue.drain(Point::release) == 0) {
+               Thread.yield();
+            }
+         }
+      }, "flusher");
+      flusher.setDaemon(true);
+      flusher.start();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() throws InterruptedException {
+      running = false;
+      flusher.join();
+      queue.drain(Point::release);
+      pointFactory.close();
+   }
+
+   @Benchmark
+   public void claim() {
+      final Point point = pointFactory.createPoint("cpu");
+      while (!queue.offer(point)) {
+         Thread.yield();
+      }
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      for (int threads = 1; threads <= 64; threads *= 2) {
+         final Options options = new OptionsBuilder()
+            .include(PointClaimBench.class.getSimpleName())
+            .threads(threads)
+            .forks(1)
+            .build();
+
+         for (final RunResult result : new Runner(options).run()) {
+            final String magazine = result.getParams().getParam("magazineSize");
+            if (result.getParams().getMode() == Mode.Throughput) {
+               System.out.printf("threads=%d magazineSize=%s: %.1f claims/us%n", threads, magazine,
+                                 result.getPrimaryResult().getScore());
+            }
+            else {
+               System.out.printf("threads=%d magazineSize=%s: p99 %.3f us%n", threads, magazine,
+                                 result.getPrimaryResult().getStatistics().getPercentile(99));
+            }
+         }
+      }
+   }
+}
@@ -0,0 +1,48 @@
+package com.zaxxer.influx4j;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the heap retained by a pooled {@link Point}: a pool's worth of points is
+ * allocated, each is filled with a typical four tags and three fields and then reset, as it
+ * would be after being written and released, and the growth of the used heap after a full
+ * GC is divided by the number of points.  Run with a fixed heap and without a compressed
+ * oops change between runs, for example {@code -Xms1g -Xmx1g}.
+ */
+public class PointFootprint {
+   private static final int POINTS = 20_000;
+
+   public static void main(final String[] args) {
+      final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+      final long before = usedAfterGc(memory);
+      final Point[] points = new Point[POINTS];
+      for (int i = 0; i < POINTS; i++) {
+         points[i] = new Point(null, null)
+            .measurement("cpu")
+            .tag("host", "server01")
+            .tag("region", "us-west")
+            .tag("dc", "dc1")
+            .tag("rack", "r42")
+            .field("idle", 98.75d)
+            .field("count", 42L)
+            .field("status", "ok")
+            .timestamp(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+         points[i].reset();
+      }
+      final long after = usedAfterGc(memory);
+
+      System.out.printf("%d points, %.0f bytes retained per point, %.1f MB per 512-point pool%n",
+                        points.length, (after - before) / (double) POINTS,
+                        (after - before) / (double) POINTS * 512 / (1024 * 1024));
+   }
+
+   private static long usedAfterGc(final MemoryMXBean memory) {
+      for (int i = 0; i < 3; i++) {
+         System.gc();
+      }
+      return memory.getHeapMemoryUsage().getUsed();
+   }
+}
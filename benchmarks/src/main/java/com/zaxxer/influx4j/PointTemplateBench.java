@@ -0,0 +1,81 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates, fills and serializes a point of a fixed schema per invocation, either by key
+ * through {@link PointFactory#createPoint(String)} or by slot index through a
+ * {@link PointTemplate}, whose measurement, tag prefixes and field keys are pre-encoded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class PointTemplateBench {
+   private PointFactory pointFactory;
+   private PointTemplate template;
+   private ByteBuffer buffer;
+   private long timestamp;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      pointFactory = PointFactory.builder().build();
+      template = pointFactory.templateBuilder("cpu")
+         .tag("region")
+         .tag("host")
+         .doubleField("idle")
+         .doubleField("user")
+         .longField("count")
+         .build();
+      buffer = ByteBuffer.allocateDirect(512);
+      timestamp = System.currentTimeMillis();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() {
+      pointFactory.close();
+   }
+
+   @Benchmark
+   public Object keyed() {
+      buffer.clear();
+      final long now = timestamp++;
+      try (Point point = pointFactory.createPoint("cpu")
+         .tag("region", "us-west")
+         .tag("host", "server01")
+         .field("idle", 98.75d)
+         .field("user", 1.25d)
+         .field("count", now)
+         .timestamp(now, TimeUnit.MILLISECONDS)) {
+         point.write(buffer);
+      }
+      return buffer;
+   }
+
+   @Benchmark
+   public Object templated() {
+      buffer.clear();
+      final long now = timestamp++;
+      try (Point point = template.createPoint()
+         .setTag(0, "us-west")
+         .setTag(1, "server01")
+         .setDouble(0, 98.75d)
+         .setDouble(1, 1.25d)
+         .setLong(2, now)
+         .timestamp(now, TimeUnit.MILLISECONDS)) {
+         point.write(buffer);
+      }
+      return buffer;
+   }
+}
@@ -0,0 +1,89 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of parsing one write response, comparing the response parser against
+ * the previous approach of copying the response into a new buffer and decoding a string to
+ * take the status from.  The responses are InfluxDB's {@code 204} to a successful write,
+ * its {@code 400} to a partial write, and the same error with a chunked body.  Run with
+ * {@code -prof gc} to see the allocation per response.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@SuppressWarnings("unused")
+public class ResponseParseBench {
+   private static final String ERROR = "{\"error\":\"partial write: field type conflict: input field \\\"idle\\\" on measurement \\\"cpu\\\" is type integer, already exists as type float dropped=1\"}\n";
+
+   @Param({ "noContent", "error", "chunkedError" })
+   private String response;
+
+   @Param({ "parser", "string" })
+   private String parse;
+
+   private final HttpResponseParser parser = new HttpResponseParser();
+   private ByteBuffer buffer;
+
+   @Setup(Level.Trial)
+   public void createResponse() {
+      final String headers = "Content-Type: application/json\r\nRequest-Id: 5c5c3b6e-8f2a-11e7-8009-000000000000\r\n"
+         + "X-Influxdb-Version: 1.3.5\r\nDate: Thu, 31 Aug 2017 17:05:12 GMT\r\n";
+      final String text;
+      switch (response) {
+         case "noContent":
+            text = "HTTP/1.1 204 No Content\r\n" + headers + "\r\n";
+            break;
+         case "error":
+            text = "HTTP/1.1 400 Bad Request\r\n" + headers + "Content-Length: " + ERROR.length() + "\r\n\r\n" + ERROR;
+            break;
+         default:
+            text = "HTTP/1.1 400 Bad Request\r\n" + headers + "Transfer-Encoding: chunked\r\n\r\n"
+               + Integer.toHexString(ERROR.length()) + "\r\n" + ERROR + "\r\n0\r\n\r\n";
+            break;
+      }
+      buffer = ByteBuffer.allocate(8192);
+      buffer.put(text.getBytes(StandardCharsets.US_ASCII));
+      buffer.flip();
+   }
+
+   @Benchmark
+   public int parseResponse() throws IOException {
+      buffer.rewind();
+      if ("parser".equals(parse)) {
+         parser.parse(buffer);
+         return parser.status();
+      }
+      else {
+         return StringParser.readResponse(buffer);
+      }
+   }
+
+   /**
+    * The previous approach: a new buffer and a string per response, and the body left
+    * unread.
+    */
+   private static final class StringParser {
+      static int readResponse(final ByteBuffer source) {
+         final ByteBuffer buffer = ByteBuffer.allocate(512);
+         final ByteBuffer slice = source.duplicate();
+         slice.limit(Math.min(slice.limit(), slice.position() + buffer.capacity()));
+         buffer.put(slice);
+         final String response = new String(buffer.array(), 0, buffer.position());
+         return Integer.valueOf(response.substring(9, 12));
+      }
+   }
+}
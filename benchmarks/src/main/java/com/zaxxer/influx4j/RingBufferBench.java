@@ -0,0 +1,120 @@
+package com.zaxxer.influx4j;
+
+import org.jctools.queues.MpscArrayQueue;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * Producers hand points to a single consumer thread, standing in for the flusher, either
+ * as pooled {@link Point}s through the {@code MpscArrayQueue} that a connection uses by
+ * default, which the consumer serializes and releases, or as line protocol serialized by
+ * the producer into a {@link LineRingBuffer}, which the consumer drains.  The consumer
+ * copies into a direct buffer in place of the socket.  Run with {@code -t} for several
+ * producers and {@code -prof gc} to compare allocation and collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@SuppressWarnings("unused")
+public class RingBufferBench {
+   private static final int SINK_SIZE = 1024 * 1024;
+
+   @Param({ "queue", "ring" })
+   private String mode;
+
+   private PointFactory pointFactory;
+   private MpscArrayQueue<Encodable> queue;
+   private LineRingBuffer ring;
+   private Thread consumer;
+   private volatile boolean running;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      pointFactory = PointFactory.builder().build();
+      queue = new MpscArrayQueue<>(64 * 1024);
+      ring = new LineRingBuffer(16 * 1024 * 1024);
+
+      running = true;
+      consumer = new Thread("ring".equals(mode) ? this::drainRing : this::drainQueue, "consumer");
+      consumer.setDaemon(true);
+      consumer.start();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() throws InterruptedException {
+      running = false;
+      consumer.join();
+      for (Encodable encodable = queue.poll(); encodable != null; encodable = queue.poll()) {
+         encodable.release();
+      }
+      pointFactory.close();
+   }
+
+   @Benchmark
+   public void write() {
+      final long now = System.currentTimeMillis();
+      final Point point = pointFactory.createPoint("cpu")
+         .tag("host", "server01")
+         .tag("region", "us-west")
+         .field("idle", 98.75d)
+         .field("count", now)
+         .timestamp(now, TimeUnit.MILLISECONDS);
+
+      if ("ring".equals(mode)) {
+         while (!ring.offer(point, Precision.MILLISECOND)) {
+            Thread.yield();
+         }
+         point.release();
+      }
+      else {
+         while (!queue.offer(point)) {
+            Thread.yield();
+         }
+      }
+   }
+
+   private void drainQueue() {
+      final ByteBuffer sink = ByteBuffer.allocateDirect(SINK_SIZE);
+      while (running) {
+         final Encodable encodable = queue.poll();
+         if (encodable == null) {
+            Thread.yield();
+            continue;
+         }
+
+         if (encodable.nextSize(Precision.MILLISECOND) > sink.remaining()) {
+            sink.clear();
+         }
+         encodable.encodeNext(sink, Precision.MILLISECOND);
+         encodable.release();
+      }
+   }
+
+   private void drainRing() {
+      final ByteBuffer sink = ByteBuffer.allocateDirect(SINK_SIZE);
+      while (running) {
+         final ByteBuffer region = ring.nextRegion(SINK_SIZE);
+         if (region == null) {
+            Thread.yield();
+            continue;
+         }
+
+         sink.clear();
+         sink.put(region);
+         ring.consume();
+      }
+   }
+}
@@ -0,0 +1,105 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes a batch of points into a heap or a direct {@link ByteBuffer} and writes it to a
+ * loopback socket, as the flusher does.  A heap buffer is copied by the JDK into a temporary
+ * direct buffer on every {@code channel.write}; a direct buffer is handed to the kernel as-is.
+ * Each invocation is one 256KB batch.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@SuppressWarnings("unused")
+public class SocketWriteBench {
+   private static final int BATCH_SIZE = 256 * 1024;
+
+   @Param({ "heap", "direct" })
+   private String bufferType;
+
+   private PointFactory pointFactory;
+   private Point point;
+   private ByteBuffer buffer;
+   private ServerSocketChannel server;
+   private SocketChannel client;
+   private Thread drainer;
+
+   @Setup(Level.Trial)
+   public void setup() throws IOException {
+      pointFactory = PointFactory.builder().build();
+      point = pointFactory.createPoint("cpu")
+         .tag("host", "server01")
+         .tag("region", "us-west")
+         .field("idle", 98.75d)
+         .field("user", 1.25d)
+         .field("count", 123456789L)
+         .field("status", "running")
+         .timestamp(System.currentTimeMillis(), TimeUnit.MILLISECONDS);
+
+      buffer = "direct".equals(bufferType) ? ByteBuffer.allocateDirect(BATCH_SIZE) : ByteBuffer.allocate(BATCH_SIZE);
+
+      server = ServerSocketChannel.open();
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      client = SocketChannel.open(server.getLocalAddress());
+      client.setOption(StandardSocketOptions.SO_SNDBUF, 1024 * 1024);
+
+      final SocketChannel peer = server.accept();
+      drainer = new Thread(() -> {
+         final ByteBuffer sink = ByteBuffer.allocateDirect(1024 * 1024);
+         try (final SocketChannel channel = peer) {
+            while (channel.read(sink) >= 0) {
+               sink.clear();
+            }
+         }
+         catch (final IOException e) {
+            // closed at teardown
+         }
+      }, "socket-drainer");
+      drainer.setDaemon(true);
+      drainer.start();
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() throws Exception {
+      client.close();
+      server.close();
+      drainer.join(TimeUnit.SECONDS.toMillis(5));
+      point.release();
+      pointFactory.close();
+   }
+
+   @Benchmark
+   public int writeBatch() throws IOException {
+      buffer.clear();
+      while (buffer.remaining() > 512) {
+         point.write(buffer);
+      }
+
+      buffer.flip();
+      int written = 0;
+      while (buffer.hasRemaining()) {
+         written += client.write(buffer);
+      }
+
+      return written;
+   }
+}
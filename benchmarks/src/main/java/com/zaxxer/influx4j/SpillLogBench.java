@@ -0,0 +1,146 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how fast batches are spilled to the spill log and replayed from it.  Each shot
+ * spills 256 MB of line protocol in batches of the given size into an empty log, or opens a
+ * log of 256 MB left by a previous process, recovering it with a CRC check of every
+ * record, and claims and consumes every batch in it, as a replay does.  The segments are the
+ * default 64 MB, so a spill rotates, and forces, four of them.  Run {@link #main(String[])}
+ * for a table of the throughput in MB/s.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+@SuppressWarnings("unused")
+public class SpillLogBench {
+   private static final int LOG_BYTES = 256 * 1024 * 1024;
+   private static final int SEGMENT_SIZE = 64 * 1024 * 1024;
+
+   @State(Scope.Thread)
+   public static class Spill {
+      @Param({ "16384", "262144" })
+      int batchBytes;
+
+      File directory;
+      ByteBuffer batch;
+      SpillLog log;
+
+      @Setup(Level.Iteration)
+      public void setup() throws IOException {
+         directory = Files.createTempDirectory("influx4j-spill").toFile();
+         batch = createBatch(batchBytes);
+         log = new SpillLog(directory, "localhost:8086", "bench", "autogen", SEGMENT_SIZE);
+      }
+
+      @TearDown(Level.Iteration)
+      public void teardown() {
+         log.close();
+         delete(directory);
+      }
+   }
+
+   @State(Scope.Thread)
+   public static class Replay {
+      @Param({ "16384", "262144" })
+      int batchBytes;
+
+      File directory;
+
+      @Setup(Level.Iteration)
+      public void setup() throws IOException {
+         directory = Files.createTempDirectory("influx4j-spill").toFile();
+         final ByteBuffer batch = createBatch(batchBytes);
+         final SpillLog log = new SpillLog(directory, "localhost:8086", "bench", "autogen", SEGMENT_SIZE);
+         for (int i = 0; i < LOG_BYTES / batchBytes; i++) {
+            log.append(batch);
+         }
+         log.close();
+      }
+
+      @TearDown(Level.Iteration)
+      public void teardown() {
+         delete(directory);
+      }
+   }
+
+   @Benchmark
+   public long spill(final Spill state) throws IOException {
+      for (int i = 0; i < LOG_BYTES / state.batchBytes; i++) {
+         state.log.append(state.batch);
+      }
+      return state.log.bytes();
+   }
+
+   @Benchmark
+   public long replay(final Replay state) throws IOException {
+      final SpillLog log = new SpillLog(state.directory, "localhost:8086", "bench", "autogen", SEGMENT_SIZE);
+      long newlines = 0;
+      for (ByteBuffer body = log.claim(); body != null; body = log.claim()) {
+         newlines += body.get(body.limit() - 1);
+         log.release(true);
+      }
+      log.close();
+      return newlines;
+   }
+
+   private static ByteBuffer createBatch(final int bytes) {
+      final byte[] line = "cpu,host=server01,region=us-west idle=98.75,count=123456789i 1500000000000000000\n".getBytes(StandardCharsets.US_ASCII);
+      final ByteBuffer batch = ByteBuffer.allocateDirect(bytes);
+      while (batch.hasRemaining()) {
+         batch.put(line, 0, Math.min(line.length, batch.remaining()));
+      }
+      batch.flip();
+      return batch;
+   }
+
+   private static void delete(final File directory) {
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final Options options = new OptionsBuilder()
+         .include(SpillLogBench.class.getSimpleName())
+         .build();
+
+      for (final RunResult result : new Runner(options).run()) {
+         final double ms = result.getPrimaryResult().getScore();
+         System.out.printf("%s batchBytes=%s: %.0f ms, %.0f MB/s%n",
+                           result.getParams().getBenchmark().replaceAll(".*\\.", ""), result.getParams().getParam("batchBytes"),
+                           ms, (LOG_BYTES / (1024d * 1024d)) / (ms / 1000d));
+      }
+   }
+}
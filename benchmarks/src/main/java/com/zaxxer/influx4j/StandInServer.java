@@ -0,0 +1,186 @@
+package com.zaxxer.influx4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A stand-in for an InfluxDB server on the loopback interface, for benchmarks that write
+ * end to end.  Every connection is served by its own thread.  A query is answered at once,
+ * so connections validate; a write is read in full and answered with {@code 204 No Content}
+ * after the injected latency.  A serial server holds every write for the latency before it
+ * reads the next, like a server that takes that long to commit a batch.  Otherwise every
+ * response is sent the latency after its request arrived, however many requests are
+ * outstanding, like a network round trip.  The lines and requests received are counted.
+ */
+final class StandInServer implements AutoCloseable {
+   private static final byte[] OK = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] NO_CONTENT = "HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+   private final ServerSocket serverSocket;
+   private final long latencyNs;
+   private final boolean serial;
+   private final LongAdder lines;
+   private final LongAdder requests;
+
+   /**
+    * @param latencyMs how long after a write arrives it is answered
+    * @param serial true to hold every write for the latency before reading the next
+    */
+   StandInServer(final long latencyMs, final boolean serial) throws IOException {
+      this.serverSocket = new ServerSocket(0, 64, InetAddress.getLoopbackAddress());
+      this.latencyNs = TimeUnit.MILLISECONDS.toNanos(latencyMs);
+      this.serial = serial;
+      this.lines = new LongAdder();
+      this.requests = new LongAdder();
+
+      final Thread acceptor = new Thread(this::accept, "stand-in-acceptor");
+      acceptor.setDaemon(true);
+      acceptor.start();
+   }
+
+   int getPort() {
+      return serverSocket.getLocalPort();
+   }
+
+   long getLines() {
+      return lines.sum();
+   }
+
+   long getRequests() {
+      return requests.sum();
+   }
+
+   @Override
+   public void close() throws IOException {
+      serverSocket.close();
+   }
+
+   private void accept() {
+      while (!serverSocket.isClosed()) {
+         try {
+            final Socket socket = serverSocket.accept();
+            final Thread server = new Thread(() -> serve(socket), "stand-in-server");
+            server.setDaemon(true);
+            server.start();
+         }
+         catch (final IOException e) {
+            // closed
+         }
+      }
+   }
+
+   private void serve(final Socket socket) {
+      try (final Socket s = socket) {
+         s.setTcpNoDelay(true);
+         final InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+         final OutputStream out = s.getOutputStream();
+         final Responder responder = (serial ? null : new Responder(out));
+         final StringBuilder line = new StringBuilder();
+         byte[] body = new byte[64 * 1024];
+         while (true) {
+            if (!readLine(in, line)) {
+               return;
+            }
+            final boolean write = line.indexOf("POST") == 0;
+
+            int contentLength = 0;
+            while (readLine(in, line) && line.length() > 0) {
+               if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("Content-Length:")) {
+                  contentLength = Integer.parseInt(line.substring(15).trim());
+               }
+            }
+
+            if (contentLength > body.length) {
+               body = new byte[contentLength];
+            }
+            for (int read = 0; read < contentLength; ) {
+               final int n = in.read(body, read, contentLength - read);
+               if (n < 0) {
+                  return;
+               }
+               read += n;
+            }
+
+            if (write) {
+               int count = 0;
+               for (int i = 0; i < contentLength; i++) {
+                  if (body[i] == '\n') {
+                     count++;
+                  }
+               }
+               lines.add(count);
+               requests.increment();
+               if (responder != null) {
+                  responder.due.add(System.nanoTime() + latencyNs);
+                  continue;
+               }
+               LockSupport.parkNanos(latencyNs);
+               out.write(NO_CONTENT);
+            }
+            else {
+               out.write(OK);
+            }
+            out.flush();
+         }
+      }
+      catch (final IOException e) {
+         // client went away
+      }
+   }
+
+   /**
+    * Answers the writes of a connection when they fall due, in the order they arrived.
+    */
+   private static final class Responder extends Thread {
+      private final LinkedBlockingQueue<Long> due;
+      private final OutputStream out;
+
+      private Responder(final OutputStream out) {
+         super("stand-in-responder");
+         this.due = new LinkedBlockingQueue<>();
+         this.out = out;
+         setDaemon(true);
+         start();
+      }
+
+      @Override
+      public void run() {
+         try {
+            while (true) {
+               final long dueNs = due.take();
+               for (long wait = dueNs - System.nanoTime(); wait > 0; wait = dueNs - System.nanoTime()) {
+                  LockSupport.parkNanos(wait);
+               }
+               out.write(NO_CONTENT);
+               out.flush();
+            }
+         }
+         catch (final InterruptedException | IOException e) {
+            // client went away
+         }
+      }
+   }
+
+   private static boolean readLine(final InputStream in, final StringBuilder line) throws IOException {
+      line.setLength(0);
+      for (int c = in.read(); c != '\n'; c = in.read()) {
+         if (c < 0) {
+            return false;
+         }
+         if (c != '\r') {
+            line.append((char) c);
+         }
+      }
+      return true;
+   }
+}
@@ -0,0 +1,100 @@
+package com.zaxxer.influx4j;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes points whose tag values and string fields mix Latin, Cyrillic, CJK and
+ * astral-plane characters, with the series cache disabled so every tag is escaped and
+ * encoded on every write.  Run with {@code -prof gc}, or run {@link #main(String[])}, which
+ * attaches the {@link GCProfiler} and prints {@code gc.alloc.rate.norm} (bytes allocated per
+ * operation), expected to be zero.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@SuppressWarnings("unused")
+public class Utf8EscapeBench {
+   private static final String[] USERS = {
+      "brett", "Zo\u00eb \u00c5ngstr\u00f6m", "\u5f20\u4f1f", "\u0418\u0432\u0430\u043d \u041f\u0435\u0442\u0440\u043e\u0432",
+      "\u0645\u062d\u0645\u062f", "\u7530\u4e2d=\u592a\u90ce", "\ud83d\ude00 smiley", "o'brien, jr"
+   };
+
+   private static final String[] CITIES = {
+      "S\u00e3o Paulo", "\u6771\u4eac", "\u041c\u043e\u0441\u043a\u0432\u0430", "Z\u00fcrich",
+      "\u0627\u0644\u0642\u0627\u0647\u0631\u0629", "New York", "\u0391\u03b8\u03ae\u03bd\u03b1", "K\u00f8benhavn"
+   };
+
+   @Param({ "direct", "heap" })
+   private String bufferType;
+
+   private PointFactory pointFactory;
+   private Point[] points;
+   private ByteBuffer buffer;
+   private int ndx;
+
+   @Setup(Level.Trial)
+   public void setup() {
+      pointFactory = PointFactory.builder()
+         .setSeriesCacheSize(0)
+         .build();
+
+      points = new Point[USERS.length];
+      for (int i = 0; i < points.length; i++) {
+         points[i] = pointFactory.createPoint("logins")
+            .tag("user", USERS[i])
+            .tag("city", CITIES[i])
+            .field("message", "\"" + USERS[i] + "\" logged in from " + CITIES[(i + 3) % CITIES.length])
+            .field("count", i);
+      }
+
+      buffer = "direct".equals(bufferType) ? ByteBuffer.allocateDirect(512) : ByteBuffer.allocate(512);
+   }
+
+   @TearDown(Level.Trial)
+   public void teardown() {
+      for (final Point point : points) {
+         point.release();
+      }
+      pointFactory.close();
+   }
+
+   @Benchmark
+   public Object writePoint() {
+      buffer.clear();
+      points[ndx++ & (points.length - 1)].write(buffer);
+      return buffer;
+   }
+
+   public static void main(final String[] args) throws RunnerException {
+      final Options options = new OptionsBuilder()
+         .include(Utf8EscapeBench.class.getSimpleName())
+         .addProfiler(GCProfiler.class)
+         .forks(1)
+         .build();
+
+      for (final RunResult result : new Runner(options).run()) {
+         final Result allocated = result.getSecondaryResults().get("\u00b7gc.alloc.rate.norm");
+         System.out.printf("%s: %.1f %s%n", result.getParams().getParam("bufferType"),
+                           allocated.getScore(), allocated.getScoreUnit());
+      }
+   }
+}
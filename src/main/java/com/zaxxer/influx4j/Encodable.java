@@ -0,0 +1,53 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.ByteBuffer;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * Something a connection can queue and serialize as line protocol: a single {@link Point},
+ * or a {@link PointBatch} of many lines.  It is written one indivisible unit (line) at a
+ * time, so that a large batch can be split across HTTP requests.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+abstract class Encodable {
+   /**
+    * Get the exact serialized size of the next unit.
+    *
+    * @param precision the timestamp precision of the connection
+    * @return the size in bytes of the next unit
+    */
+   abstract int nextSize(Precision precision);
+
+   /**
+    * Serialize the next unit into the buffer, which must have {@link #nextSize} bytes
+    * remaining.
+    *
+    * @param buffer the buffer to write into
+    * @param precision the timestamp precision of the connection
+    * @return true if this was the last unit, and this {@code Encodable} can be released
+    */
+   abstract boolean encodeNext(ByteBuffer buffer, Precision precision);
+
+   /**
+    * Release this {@code Encodable} once it has been completely written.
+    */
+   public abstract void release();
+}
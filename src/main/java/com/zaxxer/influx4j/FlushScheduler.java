@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.util.concurrent.locks.LockSupport;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * Decides when the flusher of a connection sends, and how much.  The flusher drains
+ * everything that is queued and then parks, until either the latency deadline passes or a
+ * producer finds a full batch queued and wakes it.  Points therefore wait at most the
+ * deadline at low rates, and the flusher never sleeps on a backlog at high rates.
+ * <p>
+ * The size of a batch adapts to the response time of the server.  The lowest response time
+ * seen recently is taken as the fixed cost of a request; whatever a request takes beyond
+ * that is the cost of its body.  While there is a backlog and the body cost stays within
+ * half of the latency deadline the batch size doubles, amortizing the fixed cost over more
+ * points, and when the body cost exceeds half of the deadline the batch size halves.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class FlushScheduler {
+   private static final int MIN_RTT_WINDOW = 128;
+
+   private final long maxLatency;
+   private final int minBatch;
+   private final int maxBatch;
+   private final WriteMetrics metrics;
+
+   private volatile Thread flusher;
+   private volatile boolean parked;
+   private volatile long firstQueuedNs;
+   private volatile int batchLimit;
+
+   // Flusher state
+   private long minRtt;
+   private int rttSamples;
+
+   /**
+    * @param maxLatency the latency deadline in nanoseconds
+    * @param minBatch the smallest batch body in bytes
+    * @param maxBatch the largest batch body in bytes
+    * @param metrics the metrics to record batch sizes and queue waits in
+    */
+   FlushScheduler(final long maxLatency, final int minBatch, final int maxBatch, final WriteMetrics metrics) {
+      this.maxLatency = maxLatency;
+      this.minBatch = Math.min(minBatch, maxBatch);
+      this.maxBatch = maxBatch;
+      this.metrics = metrics;
+      this.batchLimit = maxBatch;
+      this.minRtt = Long.MAX_VALUE;
+   }
+
+   /**
+    * Get the current size limit of a batch body in bytes.
+    */
+   int batchLimit() {
+      return batchLimit;
+   }
+
+   /**
+    * Called by a producer after it queued something.
+    */
+   void queued() {
+      if (firstQueuedNs == 0L) {
+         firstQueuedNs = nanoTime();
+      }
+   }
+
+   /**
+    * Called by a producer that may have queued a full batch.
+    */
+   boolean isParked() {
+      return parked;
+   }
+
+   /**
+    * Wake the flusher if it is parked.
+    */
+   void wake() {
+      if (parked) {
+         parked = false;
+         LockSupport.unpark(flusher);
+      }
+   }
+
+   /**
+    * Called by the flusher before it drains the queue, recording how long the oldest entry
+    * has waited.
+    */
+   void beginDrain() {
+      final long first = firstQueuedNs;
+      if (first != 0L) {
+         metrics.queueWait.record(nanoTime() - first);
+      }
+   }
+
+   /**
+    * Called by the flusher once it has found the queue empty.
+    */
+   void endDrain() {
+      firstQueuedNs = 0L;
+   }
+
+   /**
+    * Called by the flusher to wait for the latency deadline or a full batch.  The caller
+    * checks for a full batch after {@link #prepareToPark()}, so that a producer queueing
+    * one in the meantime either sees the flusher parked or is seen by the check.
+    */
+   void prepareToPark() {
+      flusher = Thread.currentThread();
+      parked = true;
+   }
+
+   void park() {
+      if (parked) {
+         LockSupport.parkNanos(this, maxLatency);
+      }
+      parked = false;
+   }
+
+   void cancelPark() {
+      parked = false;
+   }
+
+   /**
+    * Called by the flusher once a batch has been sent and its response read.
+    *
+    * @param bytes the size of the batch body in bytes
+    * @param rtt the time from sending the batch to reading the response, in nanoseconds
+    * @param backlog true if at least another full batch was queued
+    */
+   void sent(final int bytes, final long rtt, final boolean backlog) {
+      metrics.batchSize.record(bytes);
+
+      if (++rttSamples > MIN_RTT_WINDOW) {
+         // Let the estimate of the fixed cost rise again if the server got slower
+         rttSamples = 1;
+         minRtt = rtt;
+      }
+      else {
+         minRtt = Math.min(minRtt, rtt);
+      }
+
+      final long bodyCost = rtt - minRtt;
+      final int limit = batchLimit;
+      if (bodyCost > maxLatency / 2) {
+         batchLimit = Math.max(minBatch, limit / 2);
+      }
+      else if (backlog && bytes >= limit / 2) {
+         batchLimit = (int) Math.min(maxBatch, limit * 2L);
+      }
+   }
+}
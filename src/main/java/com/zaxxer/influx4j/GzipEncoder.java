@@ -0,0 +1,116 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Compresses HTTP bodies into the gzip format with a single {@link Deflater} that is reset
+ * and reused for every body, so compressing a batch allocates nothing.  An encoder is owned
+ * by the flusher of a connection, and is not thread-safe.
+ * <p>
+ * The gzip member is assembled by hand around a raw deflate stream: a fixed ten byte header,
+ * the compressed body, and a trailer of the CRC-32 and length of the uncompressed body.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class GzipEncoder {
+   private static final byte[] HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+   private static final int TRAILER_SIZE = 8;
+
+   private final Deflater deflater;
+   private final CRC32 crc;
+   private final byte[] input;
+
+   /**
+    * @param level the compression level, from 1 (fastest) to 9 (smallest)
+    * @param maxInput the size of the largest body that will be compressed
+    */
+   GzipEncoder(final int level, final int maxInput) {
+      this.deflater = new Deflater(level, true);
+      this.crc = new CRC32();
+      this.input = new byte[maxInput];
+   }
+
+   /**
+    * Compress the remaining bytes of a body into a heap buffer, after its position.  The
+    * body is consumed whether or not it was compressed.
+    *
+    * @param body the body to compress
+    * @param target the buffer to compress into
+    * @return true if the compressed body fit in the target and is smaller than the body,
+    *         in which case the position of the target is after it
+    */
+   boolean encode(final ByteBuffer body, final ByteBuffer target) {
+      final int length = body.remaining();
+      final byte[] in;
+      final int offset;
+      if (body.hasArray()) {
+         in = body.array();
+         offset = body.arrayOffset() + body.position();
+         body.position(body.limit());
+      }
+      else if (length <= input.length) {
+         in = input;
+         offset = 0;
+         body.get(input, 0, length);
+      }
+      else {
+         body.position(body.limit());
+         return false;
+      }
+
+      final int start = target.position();
+      final int limit = Math.min(target.limit(), start + length);
+      if (limit - start <= HEADER.length + TRAILER_SIZE) {
+         return false;
+      }
+
+      final byte[] out = target.array();
+      final int outOffset = target.arrayOffset();
+      System.arraycopy(HEADER, 0, out, outOffset + start, HEADER.length);
+      int position = start + HEADER.length;
+      final int deflateLimit = limit - TRAILER_SIZE;
+
+      deflater.reset();
+      deflater.setInput(in, offset, length);
+      deflater.finish();
+      while (!deflater.finished()) {
+         if (position == deflateLimit) {
+            // No smaller than the body
+            return false;
+         }
+         position += deflater.deflate(out, outOffset + position, deflateLimit - position, Deflater.NO_FLUSH);
+      }
+
+      crc.reset();
+      crc.update(in, offset, length);
+      target.position(position);
+      target.order(ByteOrder.LITTLE_ENDIAN);
+      target.putInt((int) crc.getValue());
+      target.putInt(length);
+      target.order(ByteOrder.BIG_ENDIAN);
+      return true;
+   }
+
+   void end() {
+      deflater.end();
+   }
+}
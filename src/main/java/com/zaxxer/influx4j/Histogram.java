@@ -0,0 +1,123 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of non-negative values, recorded and read by any thread.  Each power of two
+ * is split into four buckets, so a percentile is accurate to within 25%.  Recording is a
+ * handful of arithmetic and atomic instructions, and never allocates.  Values are recorded
+ * once per batch by the flushers of a connection, so there is little contention.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public final class Histogram {
+   private static final int SUB_BUCKETS = 4;
+   private static final int BUCKETS = SUB_BUCKETS * Long.SIZE;
+
+   private final AtomicLongArray counts;
+   private final AtomicLong count;
+   private final AtomicLong sum;
+   private final AtomicLong max;
+
+   Histogram() {
+      this.counts = new AtomicLongArray(BUCKETS);
+      this.count = new AtomicLong();
+      this.sum = new AtomicLong();
+      this.max = new AtomicLong();
+   }
+
+   /**
+    * Get the number of recorded values.
+    *
+    * @return the value count
+    */
+   public long getCount() {
+      return count.get();
+   }
+
+   /**
+    * Get the largest recorded value.
+    *
+    * @return the maximum value, or zero if nothing was recorded
+    */
+   public long getMax() {
+      return max.get();
+   }
+
+   /**
+    * Get the mean of the recorded values.
+    *
+    * @return the mean value, or zero if nothing was recorded
+    */
+   public double getMean() {
+      final long count = this.count.get();
+      return count == 0 ? 0d : (double) sum.get() / count;
+   }
+
+   /**
+    * Get the value at a percentile, as the upper bound of the bucket it falls in.
+    *
+    * @param percentile the percentile, between 0 and 100
+    * @return the value at the percentile, or zero if nothing was recorded
+    */
+   public long getValueAtPercentile(final double percentile) {
+      long remaining = (long) Math.ceil(count.get() * Math.min(100d, Math.max(0d, percentile)) / 100d);
+      if (remaining == 0) {
+         return 0;
+      }
+
+      for (int i = 0; i < BUCKETS; i++) {
+         remaining -= counts.get(i);
+         if (remaining <= 0) {
+            return Math.min(upperBound(i), max.get());
+         }
+      }
+      return max.get();
+   }
+
+   void record(final long value) {
+      counts.incrementAndGet(index(Math.max(0L, value)));
+      sum.addAndGet(value);
+      for (long current = max.get(); value > current && !max.compareAndSet(current, value); current = max.get()) {
+         // retry
+      }
+      count.incrementAndGet();
+   }
+
+   static int index(final long value) {
+      if (value < SUB_BUCKETS) {
+         return (int) value;
+      }
+
+      final int exponent = 63 - Long.numberOfLeadingZeros(value);
+      final int sub = (int) (value >>> (exponent - 2)) & (SUB_BUCKETS - 1);
+      return SUB_BUCKETS * (exponent - 1) + sub;
+   }
+
+   static long upperBound(final int index) {
+      if (index < SUB_BUCKETS) {
+         return index;
+      }
+
+      final int shift = index / SUB_BUCKETS - 1;
+      final long lower = (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+      return lower + (1L << shift) - 1;
+   }
+}
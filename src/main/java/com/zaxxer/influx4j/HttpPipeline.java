@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.io.IOException;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ByteChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+
+import tlschannel.NeedsReadException;
+import tlschannel.NeedsWriteException;
+import tlschannel.TlsChannel;
+import tlschannel.WouldBlockException;
+
+import static java.lang.System.nanoTime;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+/**
+ * Sends HTTP requests on a keep-alive connection without waiting for the response to each
+ * one, keeping up to a fixed number of requests in flight.  Responses arrive in the order of
+ * the requests, so they are matched to them first in, first out.  The flusher of a
+ * connection therefore serializes the next batch while the previous ones cross the network.
+ * <p>
+ * Sending a request does not wait for the socket to take all of it either.  The buffers of a
+ * request belong to the pipeline until {@link #awaitWritten(long)} returns for its sequence
+ * number; whatever the socket could not take is written as it drains, while the flusher
+ * fills another buffer.
+ * <p>
+ * The socket is non-blocking and registered with a {@link Selector} owned by the flusher.
+ * While the flusher waits for a buffer or for room in the pipeline, it waits on the
+ * selector, writing requests and reading responses as the socket allows.  A TLS channel is
+ * driven the same way, waiting for whatever its handshake needs of the socket.  A pipeline
+ * is owned by the flusher of a connection, and is not thread-safe.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class HttpPipeline {
+   private static final long RESPONSE_TIMEOUT_MS = 30_000L;
+   private static final int MAX_REQUEST_BUFFERS = 2;
+
+   /**
+    * Receives the response to each request, in the order the requests were sent.
+    */
+   interface Listener {
+      /**
+       * @param response the parser of the response, with its status and, for an error, its
+       *                 body; valid only for the duration of the call
+       * @param bodyBytes the body size given when the request was sent
+       * @param serviceNs how long the server took to answer, from when the request was
+       *                  written or the previous response arrived, whichever was later
+       */
+      void responded(HttpResponseParser response, int bodyBytes, long serviceNs);
+   }
+
+   private final ByteChannel channel;
+   private final Selector selector;
+   private final SelectionKey key;
+   private final Listener listener;
+   private final ByteBuffer response;
+   private final HttpResponseParser parser;
+
+   // The requests in flight, in a ring indexed by sequence number.  Every request sent has
+   // been written, or is being written, and every request written is answered, or will be.
+   private final int depth;
+   private final ByteBuffer[][] requestBuffers;
+   private final int[] requestBufferCounts;
+   private final long[] sentNs;
+   private final int[] sentBytes;
+   private long sent;
+   private long written;
+   private long answered;
+   private long answeredNs;
+   private int writeInterest;
+
+   /**
+    * @param channel a connected socket channel, or a TLS channel over one
+    * @param depth the most requests to keep in flight
+    * @param listener the listener to pass every response to
+    */
+   HttpPipeline(final ByteChannel channel, final int depth, final Listener listener) throws IOException {
+      final SelectableChannel socket = (SelectableChannel) (channel instanceof TlsChannel ? ((TlsChannel) channel).getUnderlying() : channel);
+      socket.configureBlocking(false);
+
+      this.channel = channel;
+      this.selector = Selector.open();
+      this.key = socket.register(selector, 0);
+      this.listener = listener;
+      this.response = ByteBuffer.allocate(8192);
+      this.parser = new HttpResponseParser();
+      this.depth = depth;
+      this.requestBuffers = new ByteBuffer[depth][MAX_REQUEST_BUFFERS];
+      this.requestBufferCounts = new int[depth];
+      this.sentNs = new long[depth];
+      this.sentBytes = new int[depth];
+   }
+
+   /**
+    * Get the number of requests sent but not yet answered.
+    */
+   int inFlight() {
+      return (int) (sent - answered);
+   }
+
+   /**
+    * Send a request, the remaining bytes of the buffers in order, first waiting for a
+    * response if the pipeline is full.  As much of the request is written as the socket
+    * takes right away; the buffers must not be touched until the request is written.
+    *
+    * @param buffers the buffers of the request, at most two
+    * @param bodyBytes the body size to report with the response
+    * @return the sequence number of the request
+    */
+   long send(final ByteBuffer[] buffers, final int bodyBytes) throws IOException {
+      if (buffers.length > MAX_REQUEST_BUFFERS) {
+         throw new IllegalArgumentException("A request has at most " + MAX_REQUEST_BUFFERS + " buffers");
+      }
+
+      awaitResponses(depth - 1);
+
+      final int slot = (int) (sent % depth);
+      System.arraycopy(buffers, 0, requestBuffers[slot], 0, buffers.length);
+      requestBufferCounts[slot] = buffers.length;
+      sentBytes[slot] = bodyBytes;
+      final long sequence = sent++;
+
+      pump();
+      return sequence;
+   }
+
+   /**
+    * Write and read until a request has been completely written, and its buffers may be
+    * reused.
+    *
+    * @param sequence the sequence number of the request
+    */
+   void awaitWritten(final long sequence) throws IOException {
+      while (written <= sequence) {
+         if (!pump()) {
+            await();
+         }
+      }
+   }
+
+   /**
+    * Write and read until a request has been answered.
+    *
+    * @param sequence the sequence number of the request
+    */
+   void awaitAnswered(final long sequence) throws IOException {
+      while (answered <= sequence) {
+         if (!pump()) {
+            await();
+         }
+      }
+   }
+
+   /**
+    * Write and read until no more than the given number of requests are in flight.
+    *
+    * @param outstanding the number of requests that may remain unanswered
+    */
+   void awaitResponses(final int outstanding) throws IOException {
+      while (sent - answered > outstanding) {
+         if (!pump()) {
+            await();
+         }
+      }
+   }
+
+   void close() {
+      try {
+         selector.close();
+      }
+      catch (final IOException io) {
+         // ignored
+      }
+   }
+
+   /**
+    * Write whatever the socket takes of the unwritten requests, and read whatever responses
+    * have arrived.
+    *
+    * @return true if anything was written or read
+    */
+   private boolean pump() throws IOException {
+      final boolean wrote = writeRequests();
+      final boolean read = (answered < written && readResponses());
+      return wrote || read;
+   }
+
+   /**
+    * Wait until the socket can take more of a request, or has a response to read.
+    */
+   private void await() throws IOException {
+      int interest = (answered < written ? SelectionKey.OP_READ : 0);
+      if (written < sent) {
+         interest |= writeInterest;
+      }
+      key.interestOps(interest);
+
+      // A select can also return early with nothing selected, as when the selector is woken
+      final long deadline = nanoTime() + MILLISECONDS.toNanos(RESPONSE_TIMEOUT_MS);
+      long timeoutMs = RESPONSE_TIMEOUT_MS;
+      while (selector.select(timeoutMs) == 0) {
+         timeoutMs = NANOSECONDS.toMillis(deadline - nanoTime());
+         if (timeoutMs <= 0) {
+            throw new SocketTimeoutException("No response from the server in " + RESPONSE_TIMEOUT_MS + "ms");
+         }
+      }
+      selector.selectedKeys().clear();
+   }
+
+   /**
+    * Write the unwritten requests, in order, until the socket takes no more.
+    *
+    * @return true if anything was written
+    */
+   private boolean writeRequests() throws IOException {
+      boolean wrote = false;
+      while (written < sent) {
+         final int slot = (int) (written % depth);
+         final ByteBuffer[] buffers = requestBuffers[slot];
+         final int count = requestBufferCounts[slot];
+         try {
+            final long n = write(buffers, count);
+            wrote |= (n > 0);
+         }
+         catch (final NeedsReadException e) {
+            writeInterest = SelectionKey.OP_READ;
+            return wrote;
+         }
+         catch (final NeedsWriteException e) {
+            writeInterest = SelectionKey.OP_WRITE;
+            return wrote;
+         }
+
+         for (int i = 0; i < count; i++) {
+            if (buffers[i].hasRemaining()) {
+               writeInterest = SelectionKey.OP_WRITE;
+               return wrote;
+            }
+         }
+
+         sentNs[slot] = nanoTime();
+         for (int i = 0; i < count; i++) {
+            buffers[i] = null;
+         }
+         written++;
+      }
+      return wrote;
+   }
+
+   private long write(final ByteBuffer[] buffers, final int count) throws IOException {
+      if (channel instanceof GatheringByteChannel) {
+         return ((GatheringByteChannel) channel).write(buffers, 0, count);
+      }
+
+      long written = 0;
+      for (int i = 0; i < count; i++) {
+         while (buffers[i].hasRemaining()) {
+            final int n = channel.write(buffers[i]);
+            if (n == 0) {
+               return written;
+            }
+            written += n;
+         }
+      }
+      return written;
+   }
+
+   /**
+    * Read whatever the socket has, and complete every response that is now whole.
+    *
+    * @return true if anything was read
+    */
+   private boolean readResponses() throws IOException {
+      response.clear();
+      int read;
+      try {
+         read = channel.read(response);
+      }
+      catch (final WouldBlockException e) {
+         read = 0;
+      }
+      finally {
+         response.flip();
+      }
+
+      if (read < 0) {
+         throw new IOException("Unexpected end-of-stream");
+      }
+
+      // The parser takes every byte read, so the buffer is empty again after
+      while (parser.parse(response)) {
+         complete();
+      }
+      return read > 0;
+   }
+
+   private void complete() throws IOException {
+      if (answered == written) {
+         throw new IOException("Unexpected response with status " + parser.status());
+      }
+
+      final int slot = (int) (answered % depth);
+      final long now = nanoTime();
+      final long serviceNs = now - Math.max(sentNs[slot], answeredNs);
+      answeredNs = now;
+      answered++;
+      listener.responded(parser, sentBytes[slot], serviceNs);
+   }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Parses the HTTP/1.1 responses of a connection, one byte at a time, from whatever part of
+ * the response stream a buffer holds.  Responses may be split anywhere between buffers, and
+ * the parser never needs more than one byte to make progress, so the buffer may be any size.
+ * <p>
+ * The status and the framing headers, {@code Content-Length} and {@code Transfer-Encoding},
+ * are parsed in place.  Bodies framed either way are drained completely, so that nothing
+ * of one response is taken for the next.  Interim {@code 1xx} responses are skipped.  The
+ * body of a response with a status of 300 or more, such as InfluxDB's
+ * {@code {"error":"partial write: ..."}}, is kept, up to a limit, in an array allocated
+ * once; it is only decoded into a string by {@link #body()}.  A response that is neither
+ * {@code Content-Length} nor chunked is taken to have no body.
+ * <p>
+ * A parser is owned by the flusher of a connection, and is not thread-safe.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class HttpResponseParser {
+   private static final int MAX_BODY_KEPT = 4096;
+   private static final byte[] HTTP = "HTTP/".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] CONTENT_LENGTH = "content-length".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] TRANSFER_ENCODING = "transfer-encoding".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] CHUNKED = "chunked".getBytes(StandardCharsets.US_ASCII);
+
+   private static final int VERSION = 0;
+   private static final int STATUS = 1;
+   private static final int REASON = 2;
+   private static final int HEADER_START = 3;
+   private static final int HEADER_NAME = 4;
+   private static final int HEADER_VALUE = 5;
+   private static final int BODY = 6;
+   private static final int CHUNK_SIZE = 7;
+   private static final int CHUNK_EXTENSION = 8;
+   private static final int CHUNK_DATA = 9;
+   private static final int CHUNK_END = 10;
+   private static final int TRAILER_START = 11;
+   private static final int TRAILER = 12;
+
+   private final byte[] body;
+
+   private int state;
+   private boolean complete;
+
+   // The response being parsed
+   private int index;
+   private int status;
+   private long contentLength;
+   private boolean contentLengthSeen;
+   private boolean chunked;
+   private long bodyRemaining;
+   private int bodyLength;
+
+   // The header being parsed
+   private boolean contentLengthHeader;
+   private boolean transferEncodingHeader;
+   private long headerValue;
+   private boolean headerDigits;
+   private int chunkedIndex;
+
+   HttpResponseParser() {
+      this.body = new byte[MAX_BODY_KEPT];
+      this.state = VERSION;
+   }
+
+   /**
+    * Parse the remaining bytes of a buffer, up to the end of the next final response.
+    *
+    * @param buffer the buffer of the response stream, whose position is advanced past the
+    *               bytes parsed
+    * @return true if a final response is complete, in which case its status and body are
+    *         available until the next call; false if every remaining byte was parsed
+    *         without completing one
+    */
+   boolean parse(final ByteBuffer buffer) throws IOException {
+      if (complete) {
+         complete = false;
+         reset();
+      }
+
+      while (buffer.hasRemaining()) {
+         if (state == BODY || state == CHUNK_DATA) {
+            consumeBody(buffer);
+            if (bodyRemaining > 0) {
+               return false;
+            }
+            if (state == CHUNK_DATA) {
+               state = CHUNK_END;
+               continue;
+            }
+            state = VERSION;
+            complete = true;
+            return true;
+         }
+
+         final byte b = buffer.get();
+         switch (state) {
+            case VERSION:
+               if (index < HTTP.length) {
+                  if (b != HTTP[index++]) {
+                     throw new IOException("Malformed HTTP status line");
+                  }
+               }
+               else if (b == ' ') {
+                  state = STATUS;
+                  index = 0;
+               }
+               break;
+            case STATUS:
+               if (b >= '0' && b <= '9' && index < 3) {
+                  status = status * 10 + (b - '0');
+                  index++;
+               }
+               else if (index == 3 && (b == ' ' || b == '\r' || b == '\n') && status >= 100) {
+                  state = (b == '\n' ? HEADER_START : REASON);
+               }
+               else {
+                  throw new IOException("Malformed HTTP status line");
+               }
+               break;
+            case REASON:
+               if (b == '\n' || skipLine(buffer)) {
+                  state = HEADER_START;
+               }
+               break;
+            case HEADER_START:
+               if (b == '\n') {
+                  if (endHeaders()) {
+                     complete = true;
+                     return true;
+                  }
+               }
+               else if (b != '\r') {
+                  state = HEADER_NAME;
+                  index = 0;
+                  contentLengthHeader = true;
+                  transferEncodingHeader = true;
+                  matchName(b);
+               }
+               break;
+            case HEADER_NAME:
+               if (b == ':') {
+                  contentLengthHeader &= (index == CONTENT_LENGTH.length);
+                  transferEncodingHeader &= (index == TRANSFER_ENCODING.length);
+                  headerValue = 0;
+                  headerDigits = false;
+                  chunkedIndex = 0;
+                  state = HEADER_VALUE;
+               }
+               else if (b == '\n') {
+                  // A line without a colon is not a header worth failing over
+                  state = HEADER_START;
+               }
+               else {
+                  matchName(b);
+               }
+               break;
+            case HEADER_VALUE:
+               if (b == '\n') {
+                  if (contentLengthHeader) {
+                     endContentLength();
+                  }
+                  state = HEADER_START;
+               }
+               else if (!contentLengthHeader && !transferEncodingHeader) {
+                  // The value of a header that does not frame the body
+                  if (skipLine(buffer)) {
+                     state = HEADER_START;
+                  }
+               }
+               else if (contentLengthHeader) {
+                  if (b >= '0' && b <= '9' && headerValue <= (Long.MAX_VALUE - 9) / 10) {
+                     headerValue = headerValue * 10 + (b - '0');
+                     headerDigits = true;
+                  }
+                  else if (b != ' ' && b != '\t' && b != '\r') {
+                     throw new IOException("Malformed Content-Length header");
+                  }
+               }
+               else if (transferEncodingHeader && !chunked) {
+                  final byte lower = toLowerCase(b);
+                  chunkedIndex = (lower == CHUNKED[chunkedIndex] ? chunkedIndex + 1 : lower == CHUNKED[0] ? 1 : 0);
+                  chunked = (chunkedIndex == CHUNKED.length);
+               }
+               break;
+            case CHUNK_SIZE: {
+               final int digit = hexDigit(b);
+               if (digit >= 0) {
+                  if (bodyRemaining > (Long.MAX_VALUE >> 4)) {
+                     throw new IOException("Malformed chunk size");
+                  }
+                  bodyRemaining = (bodyRemaining << 4) + digit;
+               }
+               else if (b == ';') {
+                  state = CHUNK_EXTENSION;
+               }
+               else if (b == '\n') {
+                  state = (bodyRemaining > 0 ? CHUNK_DATA : TRAILER_START);
+               }
+               else if (b != '\r' && b != ' ' && b != '\t') {
+                  throw new IOException("Malformed chunk size");
+               }
+               break;
+            }
+            case CHUNK_EXTENSION:
+               if (b == '\n' || skipLine(buffer)) {
+                  state = (bodyRemaining > 0 ? CHUNK_DATA : TRAILER_START);
+               }
+               break;
+            case CHUNK_END:
+               if (b == '\n' || skipLine(buffer)) {
+                  state = CHUNK_SIZE;
+               }
+               break;
+            case TRAILER_START:
+               if (b == '\n') {
+                  state = VERSION;
+                  complete = true;
+                  return true;
+               }
+               else if (b != '\r') {
+                  state = TRAILER;
+               }
+               break;
+            case TRAILER:
+               if (b == '\n' || skipLine(buffer)) {
+                  state = TRAILER_START;
+               }
+               break;
+            default:
+               throw new IllegalStateException();
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Get the status of the response last completed.
+    */
+   int status() {
+      return status;
+   }
+
+   /**
+    * Decode the body of the response last completed, as far as it was kept.  The body is
+    * only kept for a status of 300 or more.
+    *
+    * @return the body, or an empty string if none was kept
+    */
+   String body() {
+      return new String(body, 0, bodyLength, StandardCharsets.UTF_8);
+   }
+
+   /**
+    * Decide what follows the headers just ended.
+    *
+    * @return true if the response is complete, without a body
+    */
+   private boolean endHeaders() {
+      if (status < 200) {
+         // An interim response, the final one follows
+         reset();
+         return false;
+      }
+
+      if (status == 204 || status == 304) {
+         state = VERSION;
+         return true;
+      }
+      else if (chunked) {
+         bodyRemaining = 0;
+         state = CHUNK_SIZE;
+         return false;
+      }
+      else if (contentLength > 0) {
+         bodyRemaining = contentLength;
+         state = BODY;
+         return false;
+      }
+
+      state = VERSION;
+      return true;
+   }
+
+   /**
+    * Take the value of a {@code Content-Length} header just ended.  A repeated header must
+    * repeat the same length; a response that declares two lengths has no reliable framing.
+    */
+   private void endContentLength() throws IOException {
+      if (!headerDigits) {
+         throw new IOException("Malformed Content-Length header");
+      }
+      if (contentLengthSeen && headerValue != contentLength) {
+         throw new IOException("Conflicting Content-Length headers");
+      }
+      contentLength = headerValue;
+      contentLengthSeen = true;
+   }
+
+   private void consumeBody(final ByteBuffer buffer) {
+      final int n = (int) Math.min(bodyRemaining, buffer.remaining());
+      final int keep = (status >= 300 ? Math.min(n, body.length - bodyLength) : 0);
+      if (keep > 0) {
+         buffer.get(body, bodyLength, keep);
+         bodyLength += keep;
+      }
+      buffer.position(buffer.position() + n - keep);
+      bodyRemaining -= n;
+   }
+
+   private void matchName(final byte b) {
+      final byte lower = toLowerCase(b);
+      contentLengthHeader &= (index < CONTENT_LENGTH.length && lower == CONTENT_LENGTH[index]);
+      transferEncodingHeader &= (index < TRANSFER_ENCODING.length && lower == TRANSFER_ENCODING[index]);
+      index++;
+      if (!contentLengthHeader && !transferEncodingHeader) {
+         // Neither framing header, skip the rest of the line with the value
+         state = HEADER_VALUE;
+      }
+   }
+
+   /**
+    * Advance the buffer past the next line feed, or to its limit if it holds none.
+    *
+    * @return true if a line feed was found
+    */
+   private static boolean skipLine(final ByteBuffer buffer) {
+      if (buffer.hasArray()) {
+         final byte[] array = buffer.array();
+         final int offset = buffer.arrayOffset();
+         for (int i = offset + buffer.position(), limit = offset + buffer.limit(); i < limit; i++) {
+            if (array[i] == '\n') {
+               buffer.position(i - offset + 1);
+               return true;
+            }
+         }
+      }
+      else {
+         for (int i = buffer.position(), limit = buffer.limit(); i < limit; i++) {
+            if (buffer.get(i) == '\n') {
+               buffer.position(i + 1);
+               return true;
+            }
+         }
+      }
+      buffer.position(buffer.limit());
+      return false;
+   }
+
+   private void reset() {
+      state = VERSION;
+      index = 0;
+      status = 0;
+      contentLength = 0;
+      contentLengthSeen = false;
+      chunked = false;
+      bodyRemaining = 0;
+      bodyLength = 0;
+   }
+
+   private static byte toLowerCase(final byte b) {
+      return (b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b);
+   }
+
+   private static int hexDigit(final byte b) {
+      if (b >= '0' && b <= '9') {
+         return b - '0';
+      }
+      else if (b >= 'a' && b <= 'f') {
+         return b - 'a' + 10;
+      }
+      else if (b >= 'A' && b <= 'F') {
+         return b - 'A' + 10;
+      }
+      return -1;
+   }
+}
@@ -16,6 +16,7 @@
 
 package com.zaxxer.influx4j;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
@@ -23,16 +24,24 @@ import java.net.StandardSocketOptions;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.UnknownHostException;
+import java.util.ArrayDeque;
+import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+import java.util.zip.Deflater;
 import java.nio.ByteBuffer;
 import java.nio.channels.ByteChannel;
 import java.nio.channels.DatagramChannel;
 import java.nio.channels.SocketChannel;
 import javax.net.ssl.SSLContext;
 
+import org.jctools.queues.MessagePassingQueue;
+import org.jctools.queues.MpmcArrayQueue;
 import org.jctools.queues.MpscArrayQueue;
 import tlschannel.ClientTlsChannel;
 
@@ -79,17 +88,26 @@ public class InfluxDB implements AutoCloseable {
     * InfluxDB timestamp precision.
     */
    public static enum Precision {
-      NANOSECOND("n"),
-      MICROSECOND("u"),
-      MILLISECOND("ms"),
-      SECOND("s"),
-      MINUTE("m"),
-      HOUR("h");
+      NANOSECOND("n", TimeUnit.NANOSECONDS),
+      MICROSECOND("u", TimeUnit.MICROSECONDS),
+      MILLISECOND("ms", TimeUnit.MILLISECONDS),
+      SECOND("s", TimeUnit.SECONDS),
+      MINUTE("m", TimeUnit.MINUTES),
+      HOUR("h", TimeUnit.HOURS);
 
       private final String precision;
+      private final TimeUnit timeUnit;
 
-      Precision(final String p) {
+      Precision(final String p, final TimeUnit timeUnit) {
          this.precision = p;
+         this.timeUnit = timeUnit;
+      }
+
+      /**
+       * Truncate a nanosecond timestamp to this precision.
+       */
+      long convert(final long nanos) {
+         return timeUnit.convert(nanos, TimeUnit.NANOSECONDS);
       }
 
       @Override
@@ -98,27 +116,146 @@ public class InfluxDB implements AutoCloseable {
       }
    }
 
+   /**
+    * What a write does when the write queue of the connection is full.  Every decision
+    * other than queueing is counted in the {@link WriteMetrics} of the connection.  A point
+    * that is dropped or spilled is released, and must not be used after the write.
+    */
+   public static enum OverflowPolicy {
+      /**
+       * Throw an exception.  The point is not released, and whatever was already accepted
+       * stays queued.  This is the default.
+       */
+      FAIL,
+      /**
+       * Park until there is room, checking every 100 microseconds, for at most the overflow
+       * timeout, and then drop the point.
+       */
+      BLOCK,
+      /**
+       * Spin, yielding, until there is room, then park with an exponential backoff, for at
+       * most the overflow timeout, and then drop the point.
+       */
+      SPIN_THEN_PARK,
+      /**
+       * Drop the point being written.
+       */
+      DROP_NEWEST,
+      /**
+       * Drop the oldest queued points until the point being written fits.  Not supported
+       * with a ring buffer, whose lines can only be removed by the flusher.
+       */
+      DROP_OLDEST,
+      /**
+       * Append the point to a line protocol file in the spill directory, which can be
+       * imported with <code>influx -import</code>.
+       */
+      SPILL_TO_DISK
+   }
+
 
    private static final int SNDRCV_BUFFER_SIZE = Integer.getInteger("com.zaxxer.influx4j.sndrcvBufferSize", 1024 * 1024);
-   private static final ConcurrentHashMap<String, EncapsulatedConnection> CONNECTIONS = new ConcurrentHashMap<>();
+   private static final int QUEUE_SIZE = Integer.getInteger("com.zaxxer.influx4j.queueSize", 64 * 1024);
+   private static final int OVERFLOW_SPINS = 100;
+   private static final long BLOCK_PARK_NS = TimeUnit.MICROSECONDS.toNanos(100);
+   private static final long MAX_PARK_NS = MILLISECONDS.toNanos(1);
+   private static final int MIN_BATCH_SIZE = Integer.getInteger("com.zaxxer.influx4j.minBatchSize", 16 * 1024);
+   private static final int CHUNK_SIZE = Math.min(Integer.getInteger("com.zaxxer.influx4j.chunkSize", 64 * 1024), SNDRCV_BUFFER_SIZE / 2);
+   private static final int MAX_CONNECTIONS = 64;
+   private static final int MAX_PIPELINE_DEPTH = 64;
+   private static final int MAX_BATCH_BUFFERS = 8;
+   private static final byte[] HEADERS_END = "\r\n\r\n".getBytes();
+   private static final int HEADER_TAIL_SIZE = 10 + HEADERS_END.length;
+   private static final int SPILL_SEGMENT_SIZE = Integer.getInteger("com.zaxxer.influx4j.spillSegmentMB", 64) * 1024 * 1024;
+   private static final int SPILL_WATERMARK = Integer.getInteger("com.zaxxer.influx4j.spillWatermark", 75);
+   private static final long MIN_RECONNECT_NS = MILLISECONDS.toNanos(100);
+   private static final long MAX_RECONNECT_NS = TimeUnit.SECONDS.toNanos(10);
+   private static final long UNCOMPRESSED = -2L;
+   private static final ConcurrentHashMap<String, EncapsulatedConnection[]> CONNECTIONS = new ConcurrentHashMap<>();
+
+   private final EncapsulatedConnection[] connections;
+
+   private InfluxDB(final EncapsulatedConnection[] connections) {
+      this.connections = connections;
+   }
 
-   private final EncapsulatedConnection connection;
+   /**
+    * Write a {@link Point}.  The point is released once it has been serialized, and must
+    * not be used after this call, unless the call throws.  Unless the connection serializes points on write, see
+    * {@link Builder#setSerializeOnWrite(boolean)}, that happens on the flusher thread.
+    *
+    * @param point the point to write
+    */
+   public void write(final Point point) {
+      final EncapsulatedConnection connection = leastBusy();
+      if (connection.serializeOnWrite && connection.ring == null) {
+         connection.serialize(point);
+      }
+      else {
+         connection.write(point);
+      }
+   }
 
-   private InfluxDB(final EncapsulatedConnection connection) {
-      this.connection = connection;
+   /**
+    * Write all the rows of a {@link PointBatch}.  The batch is released once it has been
+    * sent, and must not be used after this call.
+    *
+    * @param batch the batch to write
+    */
+   public void write(final PointBatch batch) {
+      if (batch.size() == 0) {
+         batch.release();
+      }
+      else {
+         leastBusy().write(batch);
+      }
    }
 
-   public void write(final Point point) {
-      connection.write(point);
+   /**
+    * Get the counters of the decisions taken by the {@link OverflowPolicy} of the
+    * connections.  Instances that share connections share their metrics, and the
+    * connections to an endpoint share one set of metrics.
+    *
+    * @return the write metrics of the connections
+    */
+   public WriteMetrics getWriteMetrics() {
+      return connections[0].metrics;
    }
 
    @Override
    public void close() {
-      if (connection != null) {
-         connection.close();
+      if (connections != null) {
+         for (final EncapsulatedConnection connection : connections) {
+            connection.close();
+         }
       }
    }
 
+   /**
+    * Pick the connection with the fewest bytes queued or in flight.  Each thread starts
+    * scanning at a different connection, so that threads spread over idle connections
+    * rather than all piling onto the first.
+    */
+   private EncapsulatedConnection leastBusy() {
+      final EncapsulatedConnection[] connections = this.connections;
+      if (connections.length == 1) {
+         return connections[0];
+      }
+
+      final int start = (int) (Thread.currentThread().getId() % connections.length);
+      EncapsulatedConnection leastBusy = connections[start];
+      long leastLoad = leastBusy.load();
+      for (int i = 1; i < connections.length && leastLoad > 0; i++) {
+         final EncapsulatedConnection connection = connections[(start + i) % connections.length];
+         final long load = connection.load();
+         if (load < leastLoad) {
+            leastBusy = connection;
+            leastLoad = load;
+         }
+      }
+      return leastBusy;
+   }
+
    public static Builder builder() {
       return new Builder();
    }
@@ -141,6 +278,19 @@ public class InfluxDB implements AutoCloseable {
       private Precision precision = Precision.NANOSECOND;
       private SSLContext sslContext;
       private ThreadFactory threadFactory;
+      private boolean serializeOnWrite;
+      private int ringBufferSize = Integer.getInteger("com.zaxxer.influx4j.ringBufferMB", 0);
+      private OverflowPolicy overflowPolicy = OverflowPolicy.FAIL;
+      private long overflowTimeout = MILLISECONDS.toNanos(Long.getLong("com.zaxxer.influx4j.overflowTimeoutMs", 1000L));
+      private File spillDirectory = new File(System.getProperty("com.zaxxer.influx4j.spillDirectory", System.getProperty("java.io.tmpdir")));
+      private boolean compression;
+      private int compressionLevel = Integer.getInteger("com.zaxxer.influx4j.compressionLevel", Deflater.BEST_SPEED);
+      private int compressionMinSize = Integer.getInteger("com.zaxxer.influx4j.compressionMinSize", 1024);
+      private int connectionCount = Integer.getInteger("com.zaxxer.influx4j.connections", 1);
+      private int pipelineDepth = Integer.getInteger("com.zaxxer.influx4j.pipelineDepth", 4);
+      private int batchBuffers = Integer.getInteger("com.zaxxer.influx4j.batchBuffers", 2);
+      private boolean spillLog;
+      private int spillReplayRate = Integer.getInteger("com.zaxxer.influx4j.spillReplayRateKB", 1024);
 
       private Builder() {
       }
@@ -182,9 +332,17 @@ public class InfluxDB implements AutoCloseable {
          return this;
       }
 
+      /**
+       * Set the latency deadline of the flusher: the longest a point waits in the queue
+       * before it is sent, unless the server is falling behind.  The flusher is woken
+       * sooner whenever a full batch is queued.  The default is 500ms.
+       *
+       * @param periodMs the latency deadline in milliseconds
+       * @return this {@link Builder}
+       */
       public Builder setAutoFlushPeriod(final long periodMs) {
-         if (periodMs < 100L) {
-            throw new IllegalArgumentException("autoFlushPeriod must be greater than 100ms");
+         if (periodMs < 1L) {
+            throw new IllegalArgumentException("autoFlushPeriod must be at least 1ms");
          }
          this.autoFlushPeriod = MILLISECONDS.toNanos(periodMs);
          return this;
@@ -195,6 +353,211 @@ public class InfluxDB implements AutoCloseable {
          return this;
       }
 
+      /**
+       * Serialize points on the thread that writes them, into per-thread chunks of line
+       * protocol, and release them immediately.  The flusher thread then only copies
+       * finished chunks into HTTP requests, so serialization scales with the number of
+       * writing threads rather than being bound to the single flusher.  The default is
+       * {@code false}.
+       *
+       * @param serializeOnWrite true to serialize points on the writing thread
+       * @return this {@link Builder}
+       */
+      public Builder setSerializeOnWrite(final boolean serializeOnWrite) {
+         this.serializeOnWrite = serializeOnWrite;
+         return this;
+      }
+
+      /**
+       * Queue lines in an off-heap ring buffer of the given size, instead of queueing
+       * points.  Points are serialized straight into the ring by the writing thread and
+       * released immediately, and the flusher sends regions of the ring to the socket
+       * without copying them.  The size is rounded up to a power of two.  The default is
+       * zero, which disables the ring buffer.
+       *
+       * @param megabytes the size of the ring buffer in megabytes
+       * @return this {@link Builder}
+       */
+      public Builder setRingBufferSize(final int megabytes) {
+         if (megabytes < 0 || megabytes > 1024) {
+            throw new IllegalArgumentException("ringBufferSize must be between 0 and 1024 megabytes");
+         }
+         this.ringBufferSize = megabytes;
+         return this;
+      }
+
+      /**
+       * Set what a write does when the write queue of the connection is full.  The default
+       * is {@link OverflowPolicy#FAIL}.
+       *
+       * @param overflowPolicy the overflow policy
+       * @return this {@link Builder}
+       */
+      public Builder setOverflowPolicy(final OverflowPolicy overflowPolicy) {
+         this.overflowPolicy = overflowPolicy;
+         return this;
+      }
+
+      /**
+       * Set how long the {@link OverflowPolicy#BLOCK} and {@link OverflowPolicy#SPIN_THEN_PARK}
+       * policies wait for room before dropping a point.  The default is 1000ms.
+       *
+       * @param timeoutMs the overflow timeout in milliseconds
+       * @return this {@link Builder}
+       */
+      public Builder setOverflowTimeout(final long timeoutMs) {
+         if (timeoutMs < 0L) {
+            throw new IllegalArgumentException("overflowTimeout must not be negative");
+         }
+         this.overflowTimeout = MILLISECONDS.toNanos(timeoutMs);
+         return this;
+      }
+
+      /**
+       * Set the directory of the spill file of the {@link OverflowPolicy#SPILL_TO_DISK}
+       * policy, and of the spill log, see {@link #setSpillLog(boolean)}.  The default is the
+       * system temporary directory.
+       *
+       * @param spillDirectory the spill directory
+       * @return this {@link Builder}
+       */
+      public Builder setSpillDirectory(final File spillDirectory) {
+         this.spillDirectory = spillDirectory;
+         return this;
+      }
+
+      /**
+       * Spill the batches of an HTTP connection to a write-ahead log in the spill directory
+       * while the server cannot be reached, or while the write queue is above the spill
+       * watermark, three-quarters full by default, rather than losing them or overflowing
+       * the queue.  A batch the server answers with an error worth retrying, a 5xx, 401, 404
+       * or 429, or that is still in flight when the connection fails, is spilled too; to
+       * that end a batch buffer is only reused, and the lines in the ring buffer are only
+       * released, once the server has answered the batch.  The log is replayed in order
+       * once the server answers again, and survives a restart of the process.  Without a
+       * spill log those batches are counted dropped.  The default is {@code false}.
+       *
+       * @param spillLog true to spill batches to a write-ahead log
+       * @return this {@link Builder}
+       */
+      public Builder setSpillLog(final boolean spillLog) {
+         this.spillLog = spillLog;
+         return this;
+      }
+
+      /**
+       * Set the rate at which the spill log is replayed, so that replay does not starve the
+       * points being written.  Replay also waits while a batch is queued.  The default is
+       * 1024 kilobytes per second.
+       *
+       * @param kilobytesPerSecond the replay rate in kilobytes of line protocol per second
+       * @return this {@link Builder}
+       */
+      public Builder setSpillReplayRate(final int kilobytesPerSecond) {
+         if (kilobytesPerSecond < 1) {
+            throw new IllegalArgumentException("spillReplayRate must be at least 1");
+         }
+         this.spillReplayRate = kilobytesPerSecond;
+         return this;
+      }
+
+      /**
+       * Send batches compressed with {@code Content-Encoding: gzip}.  Line protocol
+       * typically compresses five to ten times, at the cost of CPU on the flusher thread.
+       * A batch that does not get any smaller is sent as is.  The default is {@code false}.
+       *
+       * @param compression true to compress batches
+       * @return this {@link Builder}
+       */
+      public Builder setCompression(final boolean compression) {
+         this.compression = compression;
+         return this;
+      }
+
+      /**
+       * Set the compression level, from 1 (fastest) to 9 (smallest).  The default is 1.
+       *
+       * @param level the compression level
+       * @return this {@link Builder}
+       */
+      public Builder setCompressionLevel(final int level) {
+         if (level < Deflater.BEST_SPEED || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("compressionLevel must be between 1 and 9");
+         }
+         this.compressionLevel = level;
+         return this;
+      }
+
+      /**
+       * Set the body size below which batches are sent uncompressed, because the header
+       * overhead of a small request dwarfs what compression could save.  The default is
+       * 1024 bytes.
+       *
+       * @param bytes the minimum body size to compress
+       * @return this {@link Builder}
+       */
+      public Builder setCompressionMinSize(final int bytes) {
+         if (bytes < 0) {
+            throw new IllegalArgumentException("compressionMinSize cannot be negative");
+         }
+         this.compressionMinSize = bytes;
+         return this;
+      }
+
+      /**
+       * Set the number of HTTP connections to the endpoint, each with its own flusher
+       * thread.  Every write goes to the connection with the fewest bytes queued or in
+       * flight, so while one flusher waits for the server to answer, the others keep
+       * sending.  Points may therefore reach the server in a different order than they
+       * were written.  UDP always uses a single connection.  The default is 1.
+       *
+       * @param connections the number of connections, between 1 and 64
+       * @return this {@link Builder}
+       */
+      public Builder setConnectionCount(final int connections) {
+         if (connections < 1 || connections > MAX_CONNECTIONS) {
+            throw new IllegalArgumentException("connectionCount must be between 1 and " + MAX_CONNECTIONS);
+         }
+         this.connectionCount = connections;
+         return this;
+      }
+
+      /**
+       * Set the number of requests an HTTP connection keeps in flight.  The flusher sends
+       * the next batch without waiting for the response to the previous one, and matches
+       * responses to requests in order, so that it serializes while batches cross the
+       * network.  A depth of 1 waits for the response to every request before sending the
+       * next.  The default is 4.
+       *
+       * @param depth the number of requests in flight, between 1 and 64
+       * @return this {@link Builder}
+       */
+      public Builder setPipelineDepth(final int depth) {
+         if (depth < 1 || depth > MAX_PIPELINE_DEPTH) {
+            throw new IllegalArgumentException("pipelineDepth must be between 1 and " + MAX_PIPELINE_DEPTH);
+         }
+         this.pipelineDepth = depth;
+         return this;
+      }
+
+      /**
+       * Set the number of buffers the flusher of a connection builds batches in, in turn.
+       * While the socket takes the batch in one buffer, the flusher serializes the next one
+       * into another, so that queued points are not held up by a slow network.  With a
+       * single buffer the flusher waits for every batch to be written before serializing
+       * the next, or answered, if there is a spill log.  The default is 2.
+       *
+       * @param buffers the number of batch buffers, between 1 and 8
+       * @return this {@link Builder}
+       */
+      public Builder setBatchBuffers(final int buffers) {
+         if (buffers < 1 || buffers > MAX_BATCH_BUFFERS) {
+            throw new IllegalArgumentException("batchBuffers must be between 1 and " + MAX_BATCH_BUFFERS);
+         }
+         this.batchBuffers = buffers;
+         return this;
+      }
+
       public Builder setSSLContext(final SSLContext sslContext) {
          this.sslContext = sslContext;
          return this;
@@ -203,9 +566,25 @@ public class InfluxDB implements AutoCloseable {
       public InfluxDB build() {
          if (database == null) throw new IllegalStateException("Influx 'database' must be specified.");
          if (username == null) throw new IllegalStateException("Influx 'username' must be specified.");
+         if (overflowPolicy == OverflowPolicy.DROP_OLDEST && ringBufferSize > 0) {
+            throw new IllegalStateException("OverflowPolicy DROP_OLDEST is not supported with a ring buffer.");
+         }
+
+         if (connectionCount < 1 || connectionCount > MAX_CONNECTIONS) {
+            throw new IllegalStateException("connectionCount must be between 1 and " + MAX_CONNECTIONS);
+         }
+         if (pipelineDepth < 1 || pipelineDepth > MAX_PIPELINE_DEPTH) {
+            throw new IllegalStateException("pipelineDepth must be between 1 and " + MAX_PIPELINE_DEPTH);
+         }
+         if (batchBuffers < 1 || batchBuffers > MAX_BATCH_BUFFERS) {
+            throw new IllegalStateException("batchBuffers must be between 1 and " + MAX_BATCH_BUFFERS);
+         }
+         if (spillReplayRate < 1) {
+            throw new IllegalStateException("spillReplayRate must be at least 1");
+         }
 
          try {
-            EncapsulatedConnection connection;
+            EncapsulatedConnection[] connections;
             switch (protocol) {
                case HTTP:
                case HTTPS: {
@@ -214,7 +593,7 @@ public class InfluxDB implements AutoCloseable {
                      throw new RuntimeException("Access denied to database '" + database + "' for user '" + username + "'.");
                   }
 
-                  connection = CONNECTIONS.computeIfAbsent(url, this::createConnection);
+                  connections = CONNECTIONS.computeIfAbsent(url, this::createConnections);
                   break;
                }
                case UDP: {
@@ -222,14 +601,14 @@ public class InfluxDB implements AutoCloseable {
                   datagramChannel.setOption(StandardSocketOptions.SO_SNDBUF, SNDRCV_BUFFER_SIZE);
                   datagramChannel.setOption(StandardSocketOptions.SO_RCVBUF, SNDRCV_BUFFER_SIZE);
                   datagramChannel.connect(InetSocketAddress.createUnresolved(host, port));
-                  connection = new EncapsulatedConnection(null, datagramChannel, autoFlushPeriod, threadFactory);
+                  connections = new EncapsulatedConnection[] { newConnection(null, datagramChannel, newSpillFile(), null, new WriteMetrics()) };
                   break;
                }
                default:
                   throw new IllegalArgumentException("Unknown protocol: " + protocol);
             }
 
-            return new InfluxDB(connection);
+            return new InfluxDB(connections);
          }
          catch (final IOException e) {
             throw new RuntimeException(e);
@@ -241,6 +620,8 @@ public class InfluxDB implements AutoCloseable {
             final SocketChannel sockChannel = SocketChannel.open();
             sockChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
             sockChannel.setOption(StandardSocketOptions.SO_KEEPALIVE, true);
+            // Requests are written whole, and pipelined ones must not wait on the acks of the last
+            sockChannel.setOption(StandardSocketOptions.TCP_NODELAY, true);
             sockChannel.setOption(StandardSocketOptions.SO_SNDBUF, SNDRCV_BUFFER_SIZE);
             sockChannel.setOption(StandardSocketOptions.SO_RCVBUF, SNDRCV_BUFFER_SIZE);
             sockChannel.connect(new InetSocketAddress(host, port));
@@ -263,15 +644,66 @@ public class InfluxDB implements AutoCloseable {
          }
       }
 
-      private EncapsulatedConnection createConnection(final String url) {
+      private EncapsulatedConnection[] createConnections(final String url) {
+         // Connect every socket before starting any flusher, so a failure leaves nothing running
+         final ByteChannel[] channels = new ByteChannel[connectionCount];
          try {
-            return new EncapsulatedConnection(url, createSocketChannel(), autoFlushPeriod, threadFactory);
+            for (int i = 0; i < channels.length; i++) {
+               channels[i] = createSocketChannel();
+            }
+         }
+         catch (final RuntimeException e) {
+            closeChannels(channels, 0);
+            throw e;
+         }
+
+         // The connections to an endpoint spill into, and are measured by, the same sinks
+         final SpillFile spillFile = newSpillFile();
+         final WriteMetrics metrics = new WriteMetrics();
+         final EncapsulatedConnection[] connections = new EncapsulatedConnection[channels.length];
+         final SpillLog spillLog;
+         try {
+            spillLog = (this.spillLog ? new SpillLog(spillDirectory, host + ":" + port, database, retentionPolicy, SPILL_SEGMENT_SIZE) : null);
+         }
+         catch (final IOException e) {
+            closeChannels(channels, 0);
+            throw new RuntimeException(e);
+         }
+
+         int started = 0;
+         try {
+            for (; started < channels.length; started++) {
+               connections[started] = newConnection(url, channels[started], spillFile, spillLog, metrics);
+            }
+            return connections;
          }
          catch (final Exception e) {
+            // Stop the flushers already started, which close their own sockets, so that a
+            // retry finds the other sockets closed and the spill log unlocked
+            for (int i = 0; i < started; i++) {
+               connections[i].stop();
+            }
+            closeChannels(channels, started);
+            if (spillLog != null) {
+               spillLog.close();
+            }
             throw new RuntimeException(e);
          }
       }
 
+      private static void closeChannels(final ByteChannel[] channels, final int from) {
+         for (int i = from; i < channels.length; i++) {
+            if (channels[i] != null) {
+               try {
+                  channels[i].close();
+               }
+               catch (final IOException io) {
+                  // ignored
+               }
+            }
+         }
+      }
+
       boolean validateConnection(final ByteChannel byteChannel) throws IOException {
          try (final ByteChannel channel = byteChannel) {
             final ByteBuffer buffer = ByteBuffer.allocate(512);
@@ -303,6 +735,22 @@ public class InfluxDB implements AutoCloseable {
          }
       }
 
+      private EncapsulatedConnection newConnection(final String url, final ByteChannel channel, final SpillFile spillFile, final SpillLog spillLog,
+                                                   final WriteMetrics metrics) throws IOException {
+         final GzipEncoder gzip = (compression && url != null ? new GzipEncoder(compressionLevel, SNDRCV_BUFFER_SIZE) : null);
+         return new EncapsulatedConnection(url, channel, (url != null ? this::createSocketChannel : null), precision, autoFlushPeriod, serializeOnWrite,
+                                           ringBufferBytes(), overflowPolicy, overflowTimeout, spillFile, spillLog, spillReplayRate * 1024L, metrics,
+                                           gzip, compressionMinSize, pipelineDepth, batchBuffers, threadFactory);
+      }
+
+      private SpillFile newSpillFile() {
+         return (overflowPolicy == OverflowPolicy.SPILL_TO_DISK ? new SpillFile(spillDirectory, database, retentionPolicy) : null);
+      }
+
+      private int ringBufferBytes() {
+         return ringBufferSize == 0 ? 0 : Integer.highestOneBit(ringBufferSize * 1024 * 1024 - 1) << 1;
+      }
+
       private String createBaseURL() {
          try {
             String query = "db=" + URLEncoder.encode(database, "utf8")
@@ -330,24 +778,135 @@ public class InfluxDB implements AutoCloseable {
     */
    private static class EncapsulatedConnection implements Runnable {
       private final Semaphore shutdownSemaphore;
-      private final ByteChannel channel;
-      private final MpscArrayQueue<Point> pointQueue;
-      private final ByteBuffer httpHeaders;
+      private ByteChannel channel;
+      private final MessagePassingQueue<Encodable> pointQueue;
       private final String url;
-      private final long autoFlushPeriod;
-      private final int contentLengthOffset;
+      private final Precision precision;
+      private final int headLength;
       private volatile boolean shutdown;
 
+      // Overflow state
+      private final OverflowPolicy overflowPolicy;
+      private final long overflowTimeout;
+      private final SpillFile spillFile;
+      private final WriteMetrics metrics;
+
+      // Compression state, when batches are gzipped
+      private final GzipEncoder gzip;
+      private final int gzipMinSize;
+      private final BufferRing gzipBuffers;
+
+      // Requests in flight, when the connection is HTTP, and the headers and body of the next
+      private HttpPipeline pipeline;
+      private final ByteBuffer[] requestBuffers;
+      private final int pipelineDepth;
+
+      // The bodies of the requests in flight, by sequence number, kept until they are answered
+      // when there is a spill log to spill them to if they fail
+      private final Request[] requests;
+      private final boolean retainBodies;
+      private long requestsSent;
+      private long requestsAnswered;
+      private long ringTaken;
+
+      // Reconnection state, when the connection is HTTP: the socket is reopened after a failure
+      private final Supplier<ByteChannel> connector;
+      private boolean down;
+      private long reconnectNs;
+      private long reconnectBackoffNs;
+
+      // Spill log state, when batches the server cannot take are spilled and replayed later
+      private final SpillLog spillLog;
+      private final ByteBuffer replayHeaders;
+      private final long replayRate;
+      private long replayTokens;
+      private long replayRefillNs;
+      private int lastStatus;
+
+      // The buffers batches are serialized into in turn, while the requests of the others are written
+      private final BufferRing batchBuffers;
+
+      // The buffer a line too large for the batch buffers is serialized into, kept for the next
+      private ByteBuffer oversizedBuffer;
+
+      // Flush scheduling state
+      private final FlushScheduler scheduler;
+      private volatile int entryBytes;
+
+      // The queued entry the flusher has taken but not yet completely written
+      private Encodable pending;
+
+      // Serialize-on-write state: the chunk each producer thread appends to, and spare chunks
+      private final boolean serializeOnWrite;
+      private final ThreadLocal<ChunkHolder> localChunk;
+      private final ConcurrentLinkedQueue<ChunkHolder> chunkHolders;
+      private final ArrayDeque<SerializedChunk> unqueuedChunks;
+      private final MpmcArrayQueue<SerializedChunk> freeChunks;
+
+      // Ring buffer state, when lines are queued off-heap
+      private final LineRingBuffer ring;
+      private final ByteBuffer ringHeaders;
+
       EncapsulatedConnection(final String url,
                              final ByteChannel channel,
+                             final Supplier<ByteChannel> connector,
+                             final Precision precision,
                              final long autoFlushPeriod,
+                             final boolean serializeOnWrite,
+                             final int ringBufferSize,
+                             final OverflowPolicy overflowPolicy,
+                             final long overflowTimeout,
+                             final SpillFile spillFile,
+                             final SpillLog spillLog,
+                             final long replayRate,
+                             final WriteMetrics metrics,
+                             final GzipEncoder gzip,
+                             final int gzipMinSize,
+                             final int pipelineDepth,
+                             final int batchBuffers,
                              final ThreadFactory threadFactory) throws IOException {
          this.url = url;
          this.channel = channel;
-         this.autoFlushPeriod = autoFlushPeriod;
-         this.pointQueue = new MpscArrayQueue<>(64 * 1024);
-         this.httpHeaders = ByteBuffer.allocate(512);
-         this.contentLengthOffset = setupHttpHeaderBuffer();
+         this.connector = connector;
+         this.precision = precision;
+         this.serializeOnWrite = serializeOnWrite;
+         this.localChunk = ThreadLocal.withInitial(this::newChunkHolder);
+         this.chunkHolders = new ConcurrentLinkedQueue<>();
+         this.unqueuedChunks = new ArrayDeque<>();
+         this.freeChunks = new MpmcArrayQueue<>(256);
+         // Producers only take from the queue to drop the oldest entries
+         this.pointQueue = (overflowPolicy == OverflowPolicy.DROP_OLDEST ? new MpmcArrayQueue<>(QUEUE_SIZE) : new MpscArrayQueue<>(QUEUE_SIZE));
+         this.overflowPolicy = overflowPolicy;
+         this.overflowTimeout = overflowTimeout;
+         this.spillFile = spillFile;
+         this.spillLog = spillLog;
+         this.replayRate = replayRate;
+         this.replayTokens = replayRate;
+         this.replayRefillNs = nanoTime();
+         this.reconnectBackoffNs = MIN_RECONNECT_NS;
+         this.metrics = metrics;
+         final byte[] head = httpHead(null);
+         this.headLength = head.length;
+         this.gzip = gzip;
+         this.gzipMinSize = gzipMinSize;
+         this.gzipBuffers = (gzip != null ? new BufferRing(batchBuffers, httpHead("gzip"), () -> ByteBuffer.allocate(SNDRCV_BUFFER_SIZE)) : null);
+         this.ring = ringBufferSize > 0 ? new LineRingBuffer(ringBufferSize, overflowTimeout, metrics.timedOut) : null;
+         this.ringHeaders = ByteBuffer.allocateDirect(head.length + HEADER_TAIL_SIZE).put(head);
+         this.replayHeaders = (spillLog != null ? ByteBuffer.allocateDirect(head.length + HEADER_TAIL_SIZE).put(head) : null);
+         this.scheduler = new FlushScheduler(autoFlushPeriod, MIN_BATCH_SIZE, SNDRCV_BUFFER_SIZE, metrics);
+         this.entryBytes = 64;
+         this.pipelineDepth = pipelineDepth;
+         this.pipeline = (url != null ? new HttpPipeline(channel, pipelineDepth, this::responded) : null);
+         this.requestBuffers = new ByteBuffer[2];
+         // One more than can be in flight, so a request is tracked before it is sent
+         this.requests = new Request[pipelineDepth + 1];
+         for (int i = 0; i < requests.length; i++) {
+            requests[i] = new Request();
+         }
+         this.retainBodies = (spillLog != null && url != null);
+         // The deflater reads from a heap buffer without copying
+         this.batchBuffers = (ring != null ? null : gzip != null ? new BufferRing(batchBuffers, head, () -> ByteBuffer.allocate(SNDRCV_BUFFER_SIZE))
+                                                                 : new BufferRing(batchBuffers, head, () -> ByteBuffer.allocateDirect(SNDRCV_BUFFER_SIZE)));
          this.shutdownSemaphore = new Semaphore(1);
          this.shutdownSemaphore.acquireUninterruptibly();
 
@@ -356,18 +915,231 @@ public class InfluxDB implements AutoCloseable {
          flusher.start();
       }
 
-      void write(final Point point) {
-         if (!pointQueue.offer(point)) {
-            throw new RuntimeException(System.currentTimeMillis() + " Point queue overflow.  Exceeded capacity of " + pointQueue.capacity() + ".");
+      /**
+       * Queue an {@link Encodable}, or, if the queue is full, settle it by the overflow
+       * policy.
+       */
+      void write(final Encodable encodable) {
+         enqueue(encodable);
+         signalFlusher();
+      }
+
+      /**
+       * Serialize a point on the calling thread, appending it to the thread's chunk, and
+       * release it.  A full chunk is queued by its producer; the flusher sweeps partially
+       * filled chunks at every flush.  If the point cannot be written, as when the
+       * {@code FAIL} policy rejects a full chunk, the exception is thrown before the point is
+       * released.
+       */
+      void serialize(final Point point) {
+         try {
+            final ChunkHolder holder = localChunk.get();
+            if (holder.rejected != null) {
+               // Its lines go before anything else this producer writes
+               enqueueRejected(holder);
+            }
+
+            final int size = point.serializedSize(precision);
+
+            SerializedChunk chunk = holder.chunk;
+            if (!chunk.beginWrite()) {
+               // Swept by the flusher
+               chunk.abandon();
+               chunk = holder.replace(claimChunk());
+            }
+
+            if (size > chunk.buffer.remaining()) {
+               if (!chunk.isEmpty()) {
+                  chunk.sealFull();
+                  holder.rejected = chunk;
+                  chunk = holder.replace(claimChunk());
+                  try {
+                     enqueueRejected(holder);
+                  }
+                  catch (final RuntimeException e) {
+                     chunk.endWrite();
+                     throw e;
+                  }
+               }
+
+               if (size > chunk.capacity()) {
+                  chunk.endWrite();
+
+                  final SerializedChunk oversized = new SerializedChunk(size, this::recycle);
+                  oversized.beginWrite();
+                  point.write(oversized.buffer, precision);
+                  oversized.sealFull();
+                  enqueue(oversized);
+                  point.release();
+                  return;
+               }
+            }
+
+            final int mark = chunk.buffer.position();
+            try {
+               point.write(chunk.buffer, precision);
+            }
+            catch (final RuntimeException e) {
+               chunk.buffer.position(mark);
+               throw e;
+            }
+            finally {
+               chunk.endWrite();
+            }
+            point.release();
+         }
+         finally {
+            signalFlusher();
+         }
+      }
+
+      /**
+       * Queue the full chunk of a producer.  If the {@code FAIL} policy rejects it, it stays
+       * with the producer, to be queued by its next write, or by the flusher once the
+       * producer has terminated, so that its lines are never lost.
+       */
+      private void enqueueRejected(final ChunkHolder holder) {
+         enqueue(holder.rejected);
+         holder.rejected = null;
+      }
+
+      private void enqueue(final Encodable encodable) {
+         if (!tryWrite(encodable)) {
+            overflow(encodable);
+         }
+      }
+
+      /**
+       * Wake the flusher if it is parked and a full batch is queued.
+       */
+      private void signalFlusher() {
+         scheduler.queued();
+         if (scheduler.isParked() && queuedBytes() >= scheduler.batchLimit()) {
+            scheduler.wake();
+         }
+      }
+
+      /**
+       * Get the number of bytes queued, estimated from the average size of the entries sent
+       * so far unless lines are queued in the ring buffer.
+       */
+      private long queuedBytes() {
+         return (ring != null ? ring.size() : (long) pointQueue.size() * entryBytes);
+      }
+
+      /**
+       * Get how busy the connection is: the bytes queued, plus a batch in flight unless the
+       * flusher is parked.
+       */
+      long load() {
+         return queuedBytes() + (scheduler.isParked() ? 0L : scheduler.batchLimit());
+      }
+
+      private boolean tryWrite(final Encodable encodable) {
+         if (ring == null) {
+            return pointQueue.offer(encodable);
+         }
+         else if (ring.offer(encodable, precision)) {
+            // Serialized into the ring buffer
+            encodable.release();
+            return true;
          }
+         return false;
+      }
+
+      private void overflow(final Encodable encodable) {
+         switch (overflowPolicy) {
+            case BLOCK:
+            case SPIN_THEN_PARK:
+               waitForRoom(encodable);
+               break;
+            case DROP_NEWEST:
+               metrics.droppedNewest.increment();
+               encodable.release();
+               break;
+            case DROP_OLDEST:
+               do {
+                  final Encodable oldest = pointQueue.poll();
+                  if (oldest != null) {
+                     metrics.droppedOldest.increment();
+                     oldest.release();
+                  }
+               } while (!pointQueue.offer(encodable));
+               break;
+            case SPILL_TO_DISK:
+               try {
+                  spillFile.append(encodable, precision);
+                  metrics.spilled.increment();
+               }
+               catch (final IOException io) {
+                  io.printStackTrace();
+                  metrics.droppedNewest.increment();
+               }
+               finally {
+                  encodable.release();
+               }
+               break;
+            default:
+               metrics.failed.increment();
+               if (ring != null) {
+                  throw new RuntimeException(System.currentTimeMillis() + " Ring buffer overflow.  Exceeded capacity of " + ring.capacity() + " bytes.");
+               }
+               throw new RuntimeException(System.currentTimeMillis() + " Point queue overflow.  Exceeded capacity of " + pointQueue.capacity() + ".");
+         }
+      }
+
+      /**
+       * Retry a write until it succeeds or the overflow timeout expires, in which case the
+       * {@link Encodable} is dropped.
+       */
+      private void waitForRoom(final Encodable encodable) {
+         final long deadline = nanoTime() + overflowTimeout;
+         final boolean spin = (overflowPolicy == OverflowPolicy.SPIN_THEN_PARK);
+         long parkNs = spin ? 1000L : BLOCK_PARK_NS;
+         int spins = 0;
+         do {
+            if (nanoTime() - deadline >= 0 || shutdown) {
+               metrics.timedOut.increment();
+               encodable.release();
+               return;
+            }
+
+            if (spin && spins < OVERFLOW_SPINS) {
+               spins++;
+               Thread.yield();
+            }
+            else {
+               LockSupport.parkNanos(parkNs);
+               if (spin) {
+                  parkNs = Math.min(parkNs << 1, MAX_PARK_NS);
+               }
+            }
+         } while (!tryWrite(encodable));
+
+         metrics.blocked.increment();
       }
 
       void close() {
          if (shutdown) return;
 
+         if (url != null) {
+            CONNECTIONS.remove(url);
+         }
+         stop();
+      }
+
+      /**
+       * Stop the flusher, once it has sent what is queued, and wait for it to exit.  Unlike
+       * {@link #close()} the connection stays registered for its URL, so that the connections
+       * of a URL can be stopped while they are still being created.
+       */
+      void stop() {
          shutdown = true;
+         if (ring != null) {
+            ring.close();
+         }
+         scheduler.wake();
          try {
-            CONNECTIONS.remove(url);
             shutdownSemaphore.acquire();
          }
          catch (final InterruptedException e) {
@@ -377,35 +1149,44 @@ public class InfluxDB implements AutoCloseable {
 
       @Override
       public void run() {
-         final ByteBuffer buffer = ByteBuffer.allocate(SNDRCV_BUFFER_SIZE - 32768);
          try {
             while (true) {
-               final long startNs = nanoTime();
-               do {
-                  if (buffer.position() == 0) {
-                     httpHeaders.flip();
-                     buffer.put(httpHeaders);
-                  }
-
-                  try (final Point point = pointQueue.poll()) {
-                     if (point == null) break;
-                     point.write(buffer);
-                  }
-               } while (buffer.remaining() > 32768 && !shutdown);
+               if (down) {
+                  reconnect();
+               }
 
-               if (buffer.position() > httpHeaders.limit()) {
-                  writeBuffers(buffer);
+               scheduler.beginDrain();
+               if (ring != null) {
+                  drainRing();
+               }
+               else {
+                  drainQueue();
                }
 
+               awaitResponses();
+
                if (shutdown) {
-                  for (Point point = pointQueue.poll(); point != null; point.close());
+                  if (pending != null) {
+                     pending.release();
+                  }
+                  for (Encodable encodable = pointQueue.poll(); encodable != null; encodable = pointQueue.poll()) {
+                     encodable.release();
+                  }
+                  closeSpillFile();
+                  if (spillLog != null) {
+                     spillLog.close();
+                  }
                   break;
                }
 
-               final long parkTime = autoFlushPeriod - (nanoTime() - startNs);
-               if (parkTime > 0) {
-                  System.out.println(System.currentTimeMillis() + " Parking flusher thread...");
-                  LockSupport.parkNanos(parkTime);
+               replay();
+
+               scheduler.prepareToPark();
+               if (shutdown || queuedBytes() >= scheduler.batchLimit()) {
+                  scheduler.cancelPark();
+               }
+               else {
+                  scheduler.park();
                }
             }
          }
@@ -413,6 +1194,13 @@ public class InfluxDB implements AutoCloseable {
             e.printStackTrace();
          }
          finally {
+            if (gzip != null) {
+               gzip.end();
+            }
+            if (pipeline != null) {
+               pipeline.close();
+            }
+
             try {
                channel.close();
             }
@@ -427,58 +1215,756 @@ public class InfluxDB implements AutoCloseable {
          }
       }
 
-      private int setupHttpHeaderBuffer() throws UnknownHostException {
-         httpHeaders.put(("POST " + url + " HTTP/1.1\r\n").getBytes());
-         httpHeaders.put(("Host: " + InetAddress.getLocalHost().getHostName() + "\r\n").getBytes());
-         httpHeaders.put("Content-Type: application/x-www-form-urlencoded\r\n".getBytes());
-         httpHeaders.put("Content-Length:         \r\n\r\n".getBytes());
-         return httpHeaders.position() - 12;
+      /**
+       * Send batches until the queue is empty.
+       */
+      private void drainQueue() {
+         if (serializeOnWrite) {
+            sweepChunks();
+         }
+
+         while (!shutdown && fillAndWrite()) {
+            // keep sending
+         }
+         scheduler.endDrain();
       }
 
-      private void writeBuffers(final ByteBuffer buffer) {
-         final int contentLength = buffer.position();
-         buffer.position(contentLengthOffset);
-         buffer.put("00000000".getBytes());
-         buffer.position(contentLengthOffset + (8 - String.valueOf(contentLength).length()));
-         writeLongToBuffer(contentLength - httpHeaders.position(), buffer);
-         buffer.position(contentLength);
+      /**
+       * Serialize queued points into the next batch buffer until the batch is full or the
+       * queue is empty, and send it.  The buffer is left to the pipeline until the request
+       * is written, while the next batch is serialized into another.
+       *
+       * @return true if the batch was full, and more may be queued
+       */
+      private boolean fillAndWrite() {
+         final ByteBuffer buffer = claim(batchBuffers, retainBodies);
+         metrics.queueDepth.record(pointQueue.size());
+         buffer.limit(Math.min(buffer.capacity(), scheduler.batchLimit()));
+
+         boolean full = false;
+         int entries = 0;
+         do {
+            final Encodable encodable = (pending != null ? pending : pointQueue.poll());
+            if (encodable == null) break;
+            pending = encodable;
+
+            final int mark = buffer.position();
+            final boolean done;
+            try {
+               final int size = encodable.nextSize(precision);
+               if (size <= buffer.remaining()) {
+                  done = encodable.encodeNext(buffer, precision);
+               }
+               else if (buffer.position() > 0) {
+                  // Ship the current batch first, the rest stays queued for the next one
+                  full = true;
+                  break;
+               }
+               else if (size <= buffer.capacity()) {
+                  // A line larger than the batch limit is sent in a batch of its own
+                  buffer.limit(buffer.capacity());
+                  done = encodable.encodeNext(buffer, precision);
+                  buffer.limit(buffer.position());
+               }
+               else {
+                  done = writeOversized(encodable, size);
+               }
+            }
+            catch (final RuntimeException e) {
+               // An entry that cannot be serialized, such as a point without fields, is
+               // dropped, and the lines before it are sent, rather than stop the flusher
+               e.printStackTrace();
+               buffer.limit(Math.min(buffer.capacity(), scheduler.batchLimit()));
+               buffer.position(mark);
+               pending = null;
+               encodable.release();
+               metrics.malformed.increment();
+               continue;
+            }
 
-         try {
+            if (done) {
+               pending = null;
+               entries++;
+               encodable.release();
+            }
+         } while (!shutdown);
+
+         final int body = buffer.position();
+         if (entries > 0 && body > 0) {
+            entryBytes = Math.max(1, (entryBytes * 7 + body / entries) / 8);
+         }
+
+         if (body > 0) {
             buffer.flip();
-            channel.write(buffer);
+            batchBuffers.sent(writeBody(buffer));
+         }
+         return full;
+      }
+
+      /**
+       * Send every committed line in the ring buffer, straight from the ring, in requests of
+       * at most the send buffer size.  A region is released to the producers once its
+       * request is answered, when it may have to be spilled, or else once it is written.
+       */
+      private void drainRing() {
+         for (ByteBuffer region = ring.nextRegion(scheduler.batchLimit()); region != null; region = ring.nextRegion(scheduler.batchLimit())) {
+            ringTaken = ring.take();
+            if (spilling()) {
+               spill(region);
+            }
+            else {
+               final int mark = region.position();
+               final int contentLength = region.remaining();
+               if (writeCompressed(region) == UNCOMPRESSED) {
+                  metrics.bodyBytes.add(contentLength);
+                  metrics.sentBytes.add(contentLength);
+
+                  try {
+                     // The headers are reused only once the request is written
+                     awaitWritten(send(completeHeaders(ringHeaders, headLength, contentLength), region, contentLength, region, mark));
+                  }
+                  catch (final IOException io) {
+                     disconnect(io);
+                  }
+               }
+            }
+
+            if (!retainBodies || requestsAnswered == requestsSent) {
+               ring.release(ringTaken);
+            }
+         }
+         scheduler.endDrain();
+      }
+
+      /**
+       * Seal and queue the partially filled chunks of producers, so that lines do not wait
+       * in the chunk of a thread that has stopped writing.
+       */
+      private void sweepChunks() {
+         // Chunks that did not fit in the queue before are queued first, and never dropped
+         for (SerializedChunk chunk = unqueuedChunks.peek(); chunk != null && pointQueue.offer(chunk); chunk = unqueuedChunks.peek()) {
+            unqueuedChunks.poll();
+         }
+
+         if (!unqueuedChunks.isEmpty() || pointQueue.size() > pointQueue.capacity() / 2) {
+            // The queue is still full, or has plenty to send already
+            return;
+         }
+
+         for (final Iterator<ChunkHolder> iterator = chunkHolders.iterator(); iterator.hasNext(); ) {
+            final ChunkHolder holder = iterator.next();
+            final SerializedChunk chunk = holder.chunk;
+            if (chunk.trySeal() && !pointQueue.offer(chunk)) {
+               // The flusher must never wait on itself
+               unqueuedChunks.add(chunk);
+            }
+
+            if (!holder.owner.isAlive()) {
+               if (holder.rejected != null) {
+                  unqueuedChunks.add(holder.rejected);
+               }
+               iterator.remove();
+            }
+         }
+      }
+
+      private void closeSpillFile() {
+         if (spillFile != null) {
+            try {
+               spillFile.close();
+            }
+            catch (final IOException io) {
+               io.printStackTrace();
+            }
+         }
+      }
+
+      private SerializedChunk claimChunk() {
+         final SerializedChunk chunk = freeChunks.poll();
+         return (chunk != null ? chunk : new SerializedChunk(CHUNK_SIZE, this::recycle));
+      }
+
+      private void recycle(final SerializedChunk chunk) {
+         if (chunk.capacity() == CHUNK_SIZE) {
+            freeChunks.offer(chunk);
+         }
+      }
+
+      private ChunkHolder newChunkHolder() {
+         final ChunkHolder holder = new ChunkHolder(Thread.currentThread(), claimChunk());
+         chunkHolders.add(holder);
+         return holder;
+      }
+
+      /**
+       * Build the template of the headers of a write request, up to the value of its
+       * {@code Content-Length} header.
+       */
+      private byte[] httpHead(final String contentEncoding) throws UnknownHostException {
+         return ("POST " + url + " HTTP/1.1\r\n"
+                 + "Host: " + InetAddress.getLocalHost().getHostName() + "\r\n"
+                 + "Content-Type: application/x-www-form-urlencoded\r\n"
+                 + (contentEncoding != null ? "Content-Encoding: " + contentEncoding + "\r\n" : "")
+                 + "Content-Length: ").getBytes();
+      }
+
+      /**
+       * Send a line that does not fit in an empty batch buffer as a batch of its own, in a
+       * scratch buffer grown to fit the largest such line so far.  The request is waited for
+       * until the buffer may be reused: until it is written, or answered when its body may
+       * have to be spilled.
+       *
+       * @return true if the line was the last of the {@link Encodable}
+       */
+      private boolean writeOversized(final Encodable encodable, final int size) {
+         if (oversizedBuffer == null || oversizedBuffer.capacity() < size) {
+            // Like the batch buffers, a heap buffer when the deflater reads it
+            oversizedBuffer = (gzip != null ? ByteBuffer.allocate(size) : ByteBuffer.allocateDirect(size));
+         }
 
-            final String response = readResponse(channel);
-            final int status = Integer.valueOf(response.substring(9, 12));
-            if (status == 401) {
-               // re-authenticate?
+         final ByteBuffer buffer = oversizedBuffer;
+         buffer.clear().limit(size);
+         final boolean done = encodable.encodeNext(buffer, precision);
+         buffer.flip();
+         if (retainBodies) {
+            awaitAnswered(writeBody(buffer));
+         }
+         else {
+            awaitWritten(writeBody(buffer));
+         }
+         return done;
+      }
+
+      /**
+       * Send a request, its headers and body gathered in one write, through the pipeline
+       * unless the connection is UDP.  A datagram carries the body alone.  A request sent
+       * through the pipeline is tracked, with the uncompressed body it carries, until it is
+       * answered; if sending it fails, the caller must {@link #disconnect(IOException)},
+       * which spills it.
+       *
+       * @param headers the headers of the request
+       * @param body the body of the request
+       * @param bodyBytes the uncompressed body size of the request
+       * @param source the buffer of the uncompressed body, or null for a replayed batch
+       * @param sourcePosition the position of the uncompressed body in its buffer
+       * @return the sequence number of the request in the pipeline, or -1 if the request
+       *         was written before returning
+       */
+      private long send(final ByteBuffer headers, final ByteBuffer body, final int bodyBytes, final ByteBuffer source, final int sourcePosition) throws IOException {
+         if (pipeline != null) {
+            track(source, sourcePosition, bodyBytes);
+            requestBuffers[0] = headers;
+            requestBuffers[1] = body;
+            return pipeline.send(requestBuffers, bodyBytes);
+         }
+
+         while (body.hasRemaining()) {
+            channel.write(body);
+         }
+         return -1L;
+      }
+
+      /**
+       * Record where the uncompressed body of the next request is, and how far the ring
+       * buffer can be released once it is answered.
+       */
+      private void track(final ByteBuffer source, final int position, final int length) {
+         final Request request = requests[(int) (requestsSent++ % requests.length)];
+         if (source != null && ring != null) {
+            if (request.ringView == null) {
+               request.ringView = ring.view();
+            }
+            request.body = request.ringView;
+         }
+         else {
+            request.body = source;
+         }
+         request.position = position;
+         request.limit = position + length;
+         request.ringPosition = ringTaken;
+      }
+
+      /**
+       * Spill the batch of a request that failed, or count it dropped if its body was not
+       * kept.  A replayed batch stays in the spill log.
+       */
+      private void settle(final Request request) {
+         if (request.body != null) {
+            if (retainBodies) {
+               spill(request.body());
+            }
+            else {
+               metrics.droppedBatches.increment();
+            }
+            request.body = null;
+         }
+      }
+
+      /**
+       * Take the next buffer of a ring, cleared, once the request last sent from it has been
+       * written, or answered if its body must be kept until then.
+       */
+      private ByteBuffer claim(final BufferRing buffers, final boolean untilAnswered) {
+         final long sequence = buffers.release();
+         if (untilAnswered) {
+            awaitAnswered(sequence);
+         }
+         else {
+            awaitWritten(sequence);
+         }
+         return (ByteBuffer) buffers.current().clear();
+      }
+
+      /**
+       * Wait until a request sent through the pipeline has been written, and its buffers may
+       * be reused.
+       *
+       * @param sequence the sequence number of the request, or -1 if there is none
+       */
+      private void awaitWritten(final long sequence) {
+         if (sequence >= 0 && !down) {
+            try {
+               pipeline.awaitWritten(sequence);
             }
-            else if (status > 399) {
-               // unexpected response
-               throw new RuntimeException("Unexpected HTTP response status: " + status);
+            catch (final IOException io) {
+               disconnect(io);
+            }
+         }
+      }
+
+      /**
+       * Wait until a request sent through the pipeline has been answered.
+       *
+       * @param sequence the sequence number of the request, or -1 if there is none
+       */
+      private void awaitAnswered(final long sequence) {
+         if (sequence >= 0 && !down) {
+            try {
+               pipeline.awaitAnswered(sequence);
+            }
+            catch (final IOException io) {
+               disconnect(io);
+            }
+         }
+      }
+
+      /**
+       * Wait for the responses to every request in flight, so that none is left unanswered
+       * while the flusher is parked.
+       */
+      private void awaitResponses() {
+         if (pipeline != null && !down) {
+            try {
+               pipeline.awaitResponses(0);
+            }
+            catch (final IOException io) {
+               disconnect(io);
+            }
+         }
+      }
+
+      /**
+       * Called by the pipeline with the response to each request, in order.  The batch of a
+       * request that is worth retrying is spilled, or counted dropped if there is no spill
+       * log; one the server cannot take at all is counted rejected.
+       */
+      private void responded(final HttpResponseParser response, final int bodyBytes, final long serviceNs) {
+         final int status = response.status();
+         lastStatus = status;
+         final Request request = requests[(int) (requestsAnswered++ % requests.length)];
+         if (retryable(status)) {
+            System.err.println(System.currentTimeMillis() + " HTTP response status " + status + ", the batch is " + (retainBodies ? "spilled" : "dropped") + ": " + response.body());
+            settle(request);
+         }
+         else if (status > 399) {
+            // unexpected response, the body says why; the flusher carries on with the next batch
+            System.err.println(System.currentTimeMillis() + " Unexpected HTTP response status: " + status + " " + response.body());
+            metrics.rejectedBatches.increment();
+         }
+         request.body = null;
+
+         if (ring != null && retainBodies) {
+            ring.release(requestsAnswered == requestsSent ? ringTaken : request.ringPosition);
+         }
+         scheduler.sent(bodyBytes, serviceNs, queuedBytes() >= scheduler.batchLimit());
+      }
+
+      /**
+       * Close the connection after a failure, and spill batches, or drop them if there is no
+       * spill log, until it is reopened.  The batches of the requests in flight, which may
+       * never be answered now, are spilled, or counted dropped.  A datagram channel is left
+       * open.
+       */
+      private void disconnect(final IOException io) {
+         io.printStackTrace();
+         if (connector == null) {
+            return;
+         }
+
+         down = true;
+         reconnectNs = nanoTime() + reconnectBackoffNs;
+         pipeline.close();
+         try {
+            channel.close();
+         }
+         catch (final IOException e) {
+            // ignored
+         }
+
+         for (long sequence = requestsAnswered; sequence < requestsSent; sequence++) {
+            settle(requests[(int) (sequence % requests.length)]);
+         }
+         // The sequence numbers of the next pipeline start again from zero
+         requestsSent = 0L;
+         requestsAnswered = 0L;
+         if (ring != null) {
+            ring.release(ringTaken);
+         }
+
+         if (batchBuffers != null) {
+            batchBuffers.reset();
+         }
+         if (gzipBuffers != null) {
+            gzipBuffers.reset();
+         }
+      }
+
+      /**
+       * Reopen the connection once the backoff since the last attempt has passed, doubling
+       * the backoff if the server still cannot be reached.
+       */
+      private void reconnect() {
+         if (nanoTime() - reconnectNs < 0) {
+            return;
+         }
+
+         ByteChannel reopened = null;
+         try {
+            reopened = connector.get();
+            pipeline = new HttpPipeline(reopened, pipelineDepth, this::responded);
+            channel = reopened;
+            down = false;
+            reconnectBackoffNs = MIN_RECONNECT_NS;
+         }
+         catch (final RuntimeException | IOException e) {
+            if (reopened != null) {
+               try {
+                  reopened.close();
+               }
+               catch (final IOException io) {
+                  // ignored
+               }
             }
+            reconnectBackoffNs = Math.min(reconnectBackoffNs << 1, MAX_RECONNECT_NS);
+            reconnectNs = nanoTime() + reconnectBackoffNs;
+         }
+      }
+
+      /**
+       * Whether batches are spilled rather than sent: the server cannot be reached, or the
+       * queue is above the spill watermark.
+       */
+      private boolean spilling() {
+         if (spillLog == null) {
+            return down;
+         }
+         else if (down) {
+            return true;
+         }
+         else if (ring != null) {
+            return ring.size() > (long) ring.capacity() * SPILL_WATERMARK / 100;
+         }
+         return pointQueue.size() > (long) pointQueue.capacity() * SPILL_WATERMARK / 100;
+      }
+
+      /**
+       * Append a batch body to the spill log, or count it dropped if there is none or it
+       * cannot be appended.
+       *
+       * @param body the body, between its position and limit
+       */
+      private void spill(final ByteBuffer body) {
+         if (spillLog == null) {
+            metrics.droppedBatches.increment();
+            return;
+         }
+
+         try {
+            spillLog.append(body);
+            metrics.spilledBatches.increment();
          }
          catch (final IOException io) {
-            // TODO: What? Log? Pretty spammy...
             io.printStackTrace();
+            metrics.droppedBatches.increment();
          }
-         finally {
-            buffer.clear();
+      }
+
+      /**
+       * Replay the spill log, oldest batch first, one request at a time, while no batch is
+       * queued and the replay rate allows.  A batch is consumed once the server answers it,
+       * unless the answer is worth retrying, in which case it is replayed later.
+       */
+      private void replay() {
+         if (spillLog == null || down) {
+            return;
+         }
+
+         final long now = nanoTime();
+         final long elapsedNs = Math.min(now - replayRefillNs, TimeUnit.SECONDS.toNanos(1));
+         replayTokens = Math.min(replayRate, replayTokens + elapsedNs * replayRate / TimeUnit.SECONDS.toNanos(1));
+         replayRefillNs = now;
+
+         while (replayTokens > 0 && !shutdown && queuedBytes() < scheduler.batchLimit()) {
+            final ByteBuffer body = spillLog.claim();
+            if (body == null) {
+               break;
+            }
+
+            final int contentLength = body.remaining();
+            boolean consumed = false;
+            try {
+               lastStatus = 0;
+               send(completeHeaders(replayHeaders, headLength, contentLength), body, contentLength, null, 0);
+               pipeline.awaitResponses(0);
+               consumed = (lastStatus >= 200 && !retryable(lastStatus));
+            }
+            catch (final IOException io) {
+               disconnect(io);
+            }
+            finally {
+               spillLog.release(consumed);
+            }
+
+            if (!consumed) {
+               break;
+            }
+
+            replayTokens -= contentLength;
+            if (lastStatus < 300) {
+               // A batch the server rejected is counted as such, and is not replayed again
+               metrics.replayedBatches.increment();
+            }
+            metrics.bodyBytes.add(contentLength);
+            metrics.sentBytes.add(contentLength);
+         }
+      }
+
+      /**
+       * Compress the remaining bytes of a body and send it, unless it is smaller than the
+       * minimum size to compress or does not get any smaller.
+       *
+       * @return the sequence number of the request, -1 if there is nothing to wait for, or
+       *         {@link #UNCOMPRESSED} if the body must be sent as is
+       */
+      private long writeCompressed(final ByteBuffer body) {
+         final int length = body.remaining();
+         if (gzip == null || length < gzipMinSize) {
+            return UNCOMPRESSED;
+         }
+
+         final int mark = body.position();
+         final ByteBuffer gzipBuffer = claim(gzipBuffers, false);
+         if (!gzip.encode(body, gzipBuffer)) {
+            body.position(mark);
+            return UNCOMPRESSED;
+         }
+
+         final int compressedLength = gzipBuffer.position();
+         metrics.bodyBytes.add(length);
+         metrics.sentBytes.add(compressedLength);
+
+         try {
+            gzipBuffer.flip();
+            // The log holds bodies uncompressed
+            final long sequence = send(gzipBuffers.headers(compressedLength), gzipBuffer, length, body, mark);
+            gzipBuffers.sent(sequence);
+            return sequence;
+         }
+         catch (final IOException io) {
+            disconnect(io);
+            return -1L;
          }
       }
+
+      /**
+       * Send a batch body, compressed if worthwhile, with the headers of the current batch
+       * buffer, or spill it while the server cannot be reached or the queue is above the
+       * spill watermark.
+       *
+       * @param body the body, between its position and limit
+       * @return the sequence number of the request still reading the body, or -1 if the
+       *         body may be reused at once
+       */
+      private long writeBody(final ByteBuffer body) {
+         if (spilling()) {
+            spill(body);
+            return -1L;
+         }
+
+         final long compressed = writeCompressed(body);
+         if (compressed != UNCOMPRESSED) {
+            // Only a body kept until it is answered is still needed
+            return (retainBodies ? compressed : -1L);
+         }
+
+         final int mark = body.position();
+         final int contentLength = body.remaining();
+         metrics.bodyBytes.add(contentLength);
+         metrics.sentBytes.add(contentLength);
+
+         try {
+            return send(batchBuffers.headers(contentLength), body, contentLength, body, mark);
+         }
+         catch (final IOException io) {
+            disconnect(io);
+            return -1L;
+         }
+      }
+
+      /**
+       * Whether a response status is worth sending the batch again for: the server failed
+       * or is unavailable, the request was unauthorized or throttled, or the database was not
+       * found, as it may yet be created.
+       */
+      private static boolean retryable(final int status) {
+         return status >= 500 || status == 401 || status == 404 || status == 429;
+      }
+   }
+
+   /**
+    * Complete headers that hold a template up to the value of the {@code Content-Length}
+    * header with the digits of a content length and the blank line that ends them, ready to
+    * be sent.
+    *
+    * @param headers the header buffer
+    * @param headLength the length of the template at the start of the buffer
+    * @param contentLength the content length
+    * @return the header buffer
+    */
+   private static ByteBuffer completeHeaders(final ByteBuffer headers, final int headLength, final int contentLength) {
+      headers.clear();
+      headers.position(headLength);
+      writeLongToBuffer(contentLength, headers);
+      headers.put(HEADERS_END);
+      headers.flip();
+      return headers;
    }
 
-   private static String readResponse(final ByteChannel channel) throws IOException {
-      final ByteBuffer buffer = ByteBuffer.allocate(512);
-      do {
-         final int read = channel.read(buffer);
-         if (read < 0) {
-            throw new IOException("Unexpected end-of-stream");
+   /**
+    * A small ring of buffers that requests are built in, in turn, so that one is filled while
+    * the requests sent from the others are still being written.  Each buffer remembers the
+    * sequence number of the request last sent from it, and has a header buffer of its own
+    * that holds the template of the headers.
+    */
+   private static final class BufferRing {
+      private final ByteBuffer[] buffers;
+      private final ByteBuffer[] headers;
+      private final long[] sequences;
+      private final int headLength;
+      private int next;
+
+      private BufferRing(final int count, final byte[] head, final Supplier<ByteBuffer> allocator) {
+         this.buffers = new ByteBuffer[count];
+         this.headers = new ByteBuffer[count];
+         this.sequences = new long[count];
+         this.headLength = head.length;
+         for (int i = 0; i < count; i++) {
+            buffers[i] = allocator.get();
+            headers[i] = ByteBuffer.allocateDirect(head.length + HEADER_TAIL_SIZE).put(head);
+            sequences[i] = -1L;
          }
-      } while (buffer.position() < 12);
+      }
+
+      /**
+       * Get the buffer that the next request is built in.
+       */
+      private ByteBuffer current() {
+         return buffers[next];
+      }
+
+      /**
+       * Complete the headers of the request built in the current buffer.
+       *
+       * @param contentLength the size of the body of the request
+       * @return the header buffer, ready to be sent
+       */
+      private ByteBuffer headers(final int contentLength) {
+         return completeHeaders(headers[next], headLength, contentLength);
+      }
 
-      // HTTP/1.1 xxx
-      buffer.flip();
-      byte[] bytes = buffer.array();
-      return new String(bytes, 0, buffer.remaining());
+      /**
+       * Forget the request last sent from the current buffer.
+       *
+       * @return its sequence number, for the caller to wait for, or -1 if there is none
+       */
+      private long release() {
+         final long sequence = sequences[next];
+         sequences[next] = -1L;
+         return sequence;
+      }
+
+      /**
+       * Record the request sent from the current buffer, and move on to the next buffer.
+       *
+       * @param sequence the sequence number of the request, or -1 if it is already written
+       */
+      private void sent(final long sequence) {
+         sequences[next] = sequence;
+         next = (next + 1) % buffers.length;
+      }
+
+      /**
+       * Forget every request sent, when the pipeline they were sent through is closed.
+       */
+      private void reset() {
+         for (int i = 0; i < sequences.length; i++) {
+            sequences[i] = -1L;
+         }
+      }
+   }
+
+   /**
+    * A request in flight, and where its uncompressed body is, so that its batch can be
+    * spilled if the request fails.
+    */
+   private static final class Request {
+      // The buffer of the body, or null for a replayed batch, which stays in the spill log
+      private ByteBuffer body;
+      // A view of the ring buffer of its own, for bodies kept in the ring
+      private ByteBuffer ringView;
+      private int position;
+      private int limit;
+      // How far the ring buffer can be released once the request is answered
+      private long ringPosition;
+
+      private ByteBuffer body() {
+         body.limit(limit);
+         body.position(position);
+         return body;
+      }
+   }
+
+   /**
+    * The chunk a producer thread is currently appending to.
+    */
+   private static final class ChunkHolder {
+      private final Thread owner;
+      private volatile SerializedChunk chunk;
+      // A full chunk the FAIL policy rejected, only touched by the flusher once the owner is gone
+      private SerializedChunk rejected;
+
+      private ChunkHolder(final Thread owner, final SerializedChunk chunk) {
+         this.owner = owner;
+         this.chunk = chunk;
+      }
+
+      /**
+       * Replace the chunk of this producer with a new one, claimed for writing.
+       */
+      private SerializedChunk replace(final SerializedChunk chunk) {
+         chunk.beginWrite();
+         this.chunk = chunk;
+         return chunk;
+      }
    }
 }
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.util.function.Function;
+
+/**
+ * A bounded, lock-free cache mapping measurement names and tag/field keys to their
+ * already-escaped UTF-8 bytes.  The table is a fixed-size, two-way set associative
+ * array of immutable entries; lookups and inserts are plain racy reads and writes,
+ * which is safe because {@link Entry} only has final fields.  A lost insert simply
+ * costs another miss.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class KeyCache {
+   private final Entry[] table;
+   private final int mask;
+   private final Function<String, byte[]> encoder;
+
+   KeyCache(final int size, final Function<String, byte[]> encoder) {
+      final int capacity = Integer.highestOneBit(Math.max(size, 2) * 2 - 1);
+      this.table = new Entry[capacity];
+      this.mask = capacity - 1;
+      this.encoder = encoder;
+   }
+
+   byte[] get(final String key) {
+      final int ndx = spread(key.hashCode()) & mask;
+
+      final Entry first = table[ndx];
+      if (first != null && (first.key == key || first.key.equals(key))) {
+         return first.bytes;
+      }
+
+      final Entry second = table[ndx ^ 1];
+      if (second != null && (second.key == key || second.key.equals(key))) {
+         return second.bytes;
+      }
+
+      // Miss: the new entry takes the primary slot and the previous occupant is demoted
+      final byte[] bytes = encoder.apply(key);
+      table[ndx ^ 1] = first;
+      table[ndx] = new Entry(key, bytes);
+      return bytes;
+   }
+
+   private static int spread(final int h) {
+      return h ^ (h >>> 16);
+   }
+
+   private static final class Entry {
+      private final String key;
+      private final byte[] bytes;
+
+      private Entry(final String key, final byte[] bytes) {
+         this.key = key;
+         this.bytes = bytes;
+      }
+   }
+}
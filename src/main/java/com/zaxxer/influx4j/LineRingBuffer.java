@@ -0,0 +1,412 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * A many-to-one ring buffer of line protocol over a direct {@link ByteBuffer}.  Producers
+ * serialize lines straight into the ring, and the single consumer, the flusher of a
+ * connection, hands contiguous regions of whole lines to the socket without copying them.
+ * Nothing queued in the ring references a {@link Point}, so points go back to their pool as
+ * soon as they are written.
+ * <p>
+ * A producer claims the exact size of its line by advancing the tail with a CAS, serializes
+ * into the claimed range, and then commits it.  The committed position always marks the end
+ * of a run of finished lines, but a producer never waits for the producers that claimed
+ * before it: one that finishes out of order posts its range to a small table of pending
+ * commits, and whichever producer advances the committed position to the start of a posted
+ * range also advances it over that range.  A producer preempted in the middle of its line
+ * therefore only holds back what the consumer sees, not the producers behind it, until the
+ * ring fills up.  Only when more producers than the table holds are pending at once does a
+ * producer wait for its turn.  A line never wraps; a claim that would cross the end of the
+ * buffer also claims the remainder of the lap as padding, which the consumer skips.
+ * <p>
+ * Positions are absolute byte counts that only increase; the index of a position in the
+ * buffer is the position modulo the (power of two) capacity.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class LineRingBuffer {
+   private static final int COMMIT_SPINS = 100;
+   private static final int PENDING_SLOTS = 256;
+   private static final long EMPTY = -1L;
+   private static final long RESERVED = -2L;
+   private static final long PADDED = 1L << 62;
+
+   private final ByteBuffer buffer;
+   private final int capacity;
+   private final int mask;
+
+   private final AtomicLong tail;       // end of the claimed lines
+   private final AtomicLong committed;  // end of the committed lines
+   private volatile long head;          // end of the consumed lines
+   private volatile long headCache;
+   private volatile long wrapPosition;  // start of the padding of the latest lap to be padded
+
+   // Commits posted out of order: the start of a range, and its end, flagged if it is padded
+   private final AtomicLongArray pendingStarts;
+   private final AtomicLongArray pendingEnds;
+   private final AtomicInteger pending;
+
+   private final long maxWaitNs;
+   private final LongAdder truncated;
+   private volatile boolean closed;
+
+   private final ThreadLocal<ByteBuffer> producerView;
+
+   // Consumer state
+   private final ByteBuffer consumerView;
+   private long readPosition;           // end of the lines taken by the consumer
+   private long nextRead;
+
+   /**
+    * @param capacity the capacity in bytes, which must be a power of two
+    */
+   LineRingBuffer(final int capacity) {
+      this(capacity, Long.MAX_VALUE, new LongAdder());
+   }
+
+   /**
+    * @param capacity the capacity in bytes, which must be a power of two
+    * @param maxWaitNs how long the rest of a {@link PointBatch} waits for room once its first
+    *                  line is in the ring
+    * @param truncated the counter of the batches whose rest was dropped instead
+    */
+   LineRingBuffer(final int capacity, final long maxWaitNs, final LongAdder truncated) {
+      if (Integer.bitCount(capacity) != 1) {
+         throw new IllegalArgumentException("Ring buffer capacity must be a power of two");
+      }
+
+      this.buffer = ByteBuffer.allocateDirect(capacity);
+      this.capacity = capacity;
+      this.mask = capacity - 1;
+      this.tail = new AtomicLong();
+      this.committed = new AtomicLong();
+      this.wrapPosition = -1L;
+      this.pendingStarts = new AtomicLongArray(PENDING_SLOTS);
+      this.pendingEnds = new AtomicLongArray(PENDING_SLOTS);
+      this.pending = new AtomicInteger();
+      for (int i = 0; i < PENDING_SLOTS; i++) {
+         pendingStarts.set(i, EMPTY);
+      }
+      this.maxWaitNs = maxWaitNs;
+      this.truncated = truncated;
+      this.producerView = ThreadLocal.withInitial(buffer::duplicate);
+      this.consumerView = buffer.duplicate();
+   }
+
+   int capacity() {
+      return capacity;
+   }
+
+   /**
+    * Stop the rest of a {@link PointBatch} from waiting for room that the consumer will no
+    * longer make.
+    */
+   void close() {
+      closed = true;
+   }
+
+   /**
+    * Serialize every line of an {@link Encodable} into the ring.  The lines of a
+    * {@link PointBatch} are claimed one at a time; once its first line is in the ring, the
+    * rest wait for room rather than fail, until the maximum wait expires or the ring is
+    * closed, in which case the rest of the batch is dropped and counted as truncated.
+    *
+    * @return false if there was no room for the first line, and nothing was written
+    */
+   boolean offer(final Encodable encodable, final Precision precision) {
+      boolean first = true;
+      boolean done;
+      long waitStart = 0L;
+      do {
+         final int size = encodable.nextSize(precision);
+         if (size > capacity) {
+            throw new IllegalArgumentException("Line of " + size + " bytes does not fit in a ring buffer of " + capacity + " bytes");
+         }
+
+         long start;
+         long end;
+         int pad;
+         while (true) {
+            start = tail.get();
+            final int index = (int) (start & mask);
+            pad = (index + size > capacity) ? capacity - index : 0;
+            end = start + pad + size;
+
+            if (end - headCache > capacity) {
+               headCache = head;
+               if (end - headCache > capacity) {
+                  if (first) {
+                     return false;
+                  }
+                  if (waitStart == 0L) {
+                     waitStart = System.nanoTime() | 1L;
+                  }
+                  else if (closed || System.nanoTime() - waitStart >= maxWaitNs) {
+                     truncated.increment();
+                     return true;
+                  }
+                  Thread.yield();
+                  continue;
+               }
+            }
+
+            if (tail.compareAndSet(start, end)) {
+               break;
+            }
+         }
+
+         final int index = (int) ((start + pad) & mask);
+         final ByteBuffer view = producerView.get();
+         view.limit(capacity).position(index);
+         view.limit(index + size);
+         try {
+            done = encodable.encodeNext(view, precision);
+         }
+         catch (final RuntimeException e) {
+            // The range is claimed and must be committed; turn it into a comment line
+            blank(index, size);
+            commit(start, end, pad);
+            throw e;
+         }
+
+         commit(start, end, pad);
+         first = false;
+         waitStart = 0L;
+      } while (!done);
+
+      return true;
+   }
+
+   /**
+    * Get the next contiguous region of whole committed lines, at most {@code maxBytes} long
+    * unless its first line alone is longer, and call {@link #consume()} once it has been
+    * sent, or {@link #take()} to move on to the next region while keeping this one.
+    *
+    * @return a view of the region, or {@code null} if nothing is committed
+    */
+   ByteBuffer nextRegion(final int maxBytes) {
+      long head = readPosition;
+      while (true) {
+         final long committed = this.committed.get();
+         if (committed == head) {
+            return null;
+         }
+
+         final int index = (int) (head & mask);
+         final long lapEnd = head - index + capacity;
+         long end = Math.min(committed, lapEnd);
+         long next = end;
+         if (committed >= lapEnd) {
+            final long wrap = wrapPosition;
+            if (wrap >= head && wrap < lapEnd) {
+               end = wrap;
+               next = lapEnd;
+            }
+         }
+
+         if (end == head) {
+            // Nothing but padding is left in this lap, released at once unless lines are kept
+            if (this.head == head) {
+               this.head = next;
+            }
+            head = next;
+            readPosition = head;
+            continue;
+         }
+
+         int length = (int) (end - head);
+         if (length > maxBytes) {
+            length = lineBoundary(index, maxBytes);
+            next = head + length;
+         }
+
+         nextRead = next;
+         consumerView.limit(capacity).position(index);
+         consumerView.limit(index + length);
+         return consumerView;
+      }
+   }
+
+   /**
+    * Release the region returned by the last call to {@link #nextRegion(int)} to the
+    * producers.
+    */
+   void consume() {
+      release(take());
+   }
+
+   /**
+    * Move past the region returned by the last call to {@link #nextRegion(int)} without
+    * releasing it, so that it can be kept, through a {@link #view()}, until it is answered.
+    *
+    * @return the position to {@link #release(long)} the ring up to once the region, and
+    *         every region taken before it, is done with
+    */
+   long take() {
+      readPosition = nextRead;
+      return readPosition;
+   }
+
+   /**
+    * Release the regions taken up to a position to the producers.
+    */
+   void release(final long position) {
+      head = position;
+   }
+
+   /**
+    * Get a view of the buffer of the ring, for the consumer to keep a taken region in.
+    */
+   ByteBuffer view() {
+      return buffer.duplicate();
+   }
+
+   boolean isEmpty() {
+      return committed.get() == head;
+   }
+
+   /**
+    * Get the number of committed bytes not yet consumed, including any padding.
+    */
+   long size() {
+      return committed.get() - head;
+   }
+
+   private void commit(final long start, final long end, final int pad) {
+      if (committed.get() != start) {
+         pending.incrementAndGet();
+         if (post(start, pad > 0 ? end | PADDED : end)) {
+            advance();
+            return;
+         }
+
+         // The table is full; wait for the producers that claimed before this one
+         pending.decrementAndGet();
+         int spins = 0;
+         while (committed.get() != start) {
+            if (++spins > COMMIT_SPINS) {
+               Thread.yield();
+            }
+         }
+      }
+
+      // Nothing else advances the committed position past the start of an unposted range
+      if (pad > 0) {
+         wrapPosition = start;
+      }
+      committed.set(end);
+      advance();
+   }
+
+   /**
+    * Advance the committed position over the posted ranges that now follow it.
+    */
+   private void advance() {
+      while (pending.get() > 0) {
+         final long start = committed.get();
+         final long end = take(start);
+         if (end < 0L) {
+            // Posted ranges re-check the committed position after posting
+            return;
+         }
+
+         if ((end & PADDED) != 0L) {
+            wrapPosition = start;
+         }
+         committed.set(end & ~PADDED);
+         pending.decrementAndGet();
+      }
+   }
+
+   /**
+    * Post a range committed out of order.
+    *
+    * @return false if the table of pending commits is full
+    */
+   private boolean post(final long start, final long end) {
+      final int hash = slot(start);
+      for (int i = 0; i < PENDING_SLOTS; i++) {
+         final int slot = (hash + i) & (PENDING_SLOTS - 1);
+         if (pendingStarts.get(slot) == EMPTY && pendingStarts.compareAndSet(slot, EMPTY, RESERVED)) {
+            pendingEnds.set(slot, end);
+            pendingStarts.set(slot, start);
+            return true;
+         }
+      }
+      return false;
+   }
+
+   /**
+    * Take the posted range that starts at a position.  Positions never repeat, so the range
+    * is taken exactly once, by whichever caller removes it from the table.
+    *
+    * @return its end, or -1 if no range is posted at the position
+    */
+   private long take(final long start) {
+      final int hash = slot(start);
+      for (int i = 0; i < PENDING_SLOTS; i++) {
+         final int slot = (hash + i) & (PENDING_SLOTS - 1);
+         if (pendingStarts.get(slot) == start) {
+            final long end = pendingEnds.get(slot);
+            if (pendingStarts.compareAndSet(slot, start, EMPTY)) {
+               return end;
+            }
+            return -1L;
+         }
+      }
+      return -1L;
+   }
+
+   private static int slot(final long position) {
+      return (int) ((position * 0x9E3779B97F4A7C15L) >>> 56);
+   }
+
+   /**
+    * Get the length of the longest run of whole lines from {@code index} that is no longer
+    * than {@code maxBytes}, or of the first line if it alone is longer.
+    */
+   private int lineBoundary(final int index, final int maxBytes) {
+      for (int i = index + maxBytes - 1; i >= index; i--) {
+         if (buffer.get(i) == '\n') {
+            return i - index + 1;
+         }
+      }
+
+      int i = index + maxBytes;
+      while (buffer.get(i) != '\n') {
+         i++;
+      }
+      return i - index + 1;
+   }
+
+   private void blank(final int index, final int size) {
+      buffer.put(index, (byte) (size > 1 ? '#' : '\n'));
+      for (int i = 1; i < size - 1; i++) {
+         buffer.put(index + i, (byte) ' ');
+      }
+      buffer.put(index + size - 1, (byte) '\n');
+   }
+}
@@ -16,10 +16,14 @@
 
 package com.zaxxer.influx4j;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
+import com.zaxxer.influx4j.InfluxDB.Precision;
 import com.zaxxer.influx4j.util.PrimitiveArraySort;
+import com.zaxxer.influx4j.util.Utf8;
 import stormpot.Poolable;
 import stormpot.Slot;
 
@@ -30,85 +34,111 @@ import static com.zaxxer.influx4j.Point.PointSerializer.serializeDoubleField;
 import static com.zaxxer.influx4j.Point.PointSerializer.serializeBooleanField;
 import static com.zaxxer.influx4j.Point.PointSerializer.serializeMeasurement;
 import static com.zaxxer.influx4j.Point.PointSerializer.serializeTimestamp;
+import static com.zaxxer.influx4j.Point.PointSerializer.measurementSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.tagSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.stringFieldSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.longFieldSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.doubleFieldSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.booleanFieldSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.timestampSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.serializeTagValue;
+import static com.zaxxer.influx4j.Point.PointSerializer.serializeStringValue;
+import static com.zaxxer.influx4j.Point.PointSerializer.tagValueSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.stringValueSize;
 import static com.zaxxer.influx4j.util.FastValue2Buffer.writeDoubleToBuffer;
 import static com.zaxxer.influx4j.util.FastValue2Buffer.writeLongToBuffer;
-import static com.zaxxer.influx4j.util.Utf8.containsUnicode;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.doubleLength;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.longLength;
 
 /**
  * @author brett.wooldridge at gmail.com
  */
 @SuppressWarnings("ALL")
-public class Point implements Poolable, AutoCloseable {
-   private final static int MAX_TAG_COUNT = Integer.getInteger("com.zaxxer.influx4j.maxTagCount", 64);
-   private final static int MAX_FIELD_COUNT = Integer.getInteger("com.zaxxer.influx4j.maxTagCount", 64);
+public class Point extends Encodable implements Poolable, AutoCloseable {
+   private final static int INITIAL_CAPACITY = Math.max(1, Integer.getInteger("com.zaxxer.influx4j.initialPointCapacity", 8));
+   private final static long NO_TIMESTAMP = Long.MIN_VALUE;
 
-   private final ParallelTagArrayComparator tagKeyComparator;
+   private final PrimitiveArraySort.IntComparator tagKeyComparator;
 
-   private final StringPair[] tags;
-   private final int[] tagSort;
+   // Tags, in insertion order
+   private String[] tagNames;
+   private String[] tagValues;
+   private int[] tagSort;
 
-   private final LongPair[] longFields;
-   private final StringPair[] stringFields;
-   private final DoublePair[] doubleFields;
-   private final BooleanPair[] boolFields;
+   // Fields of every type, in insertion order: longs, doubles (as raw bits) and booleans
+   // (as 0 or 1) in fieldBits, strings in fieldStrings
+   private String[] fieldNames;
+   private byte[] fieldTypes;
+   private long[] fieldBits;
+   private String[] fieldStrings;
 
    private String measurement;
 
    private final Slot slot;
+   private final SeriesCache seriesCache;
+   private PointCache cache;
+   private byte[] series;
+   private boolean seriesLookedUp;
 
-   private Long timestamp;
+   private long timestamp = NO_TIMESTAMP;
    private int tagIndex;
    private int tagMark;
+   private int fieldIndex;
 
-   private int longFieldIndex;
-   private int doubleFieldIndex;
-   private int stringFieldIndex;
-   private int booleanFieldIndex;
+   // A point bound to a PointTemplate keeps its values in the arrays above by slot index,
+   // tags in tagValues and fields in fieldBits and fieldStrings
+   private PointTemplate template;
+   private long templateFieldMask;
 
-   Point(final Slot slot) {
+   Point(final Slot slot, final SeriesCache seriesCache) {
       this.slot = slot;
-      this.tags = new StringPair[MAX_TAG_COUNT];
-      this.tagSort = new int[MAX_TAG_COUNT];
-      this.tagKeyComparator = new ParallelTagArrayComparator(tags);
+      this.seriesCache = seriesCache;
+      this.tagKeyComparator = (a, b) -> tagNames[a].compareTo(tagNames[b]);
 
-      this.longFields = new LongPair[MAX_FIELD_COUNT];
-      this.boolFields = new BooleanPair[MAX_FIELD_COUNT];
-      this.stringFields = new StringPair[MAX_FIELD_COUNT];
-      this.doubleFields = new DoublePair[MAX_FIELD_COUNT];
+      this.tagNames = new String[INITIAL_CAPACITY];
+      this.tagValues = new String[INITIAL_CAPACITY];
+      this.tagSort = new int[INITIAL_CAPACITY];
 
-      for (int i = 0; i < MAX_FIELD_COUNT; i++) tags[i] = new StringPair();
-      for (int i = 0; i < MAX_FIELD_COUNT; i++) longFields[i] = new LongPair();
-      for (int i = 0; i < MAX_FIELD_COUNT; i++) boolFields[i] = new BooleanPair();
-      for (int i = 0; i < MAX_FIELD_COUNT; i++) stringFields[i] = new StringPair();
-      for (int i = 0; i < MAX_FIELD_COUNT; i++) doubleFields[i] = new DoublePair();
+      this.fieldNames = new String[INITIAL_CAPACITY];
+      this.fieldTypes = new byte[INITIAL_CAPACITY];
+      this.fieldBits = new long[INITIAL_CAPACITY];
+      this.fieldStrings = new String[INITIAL_CAPACITY];
    }
 
    public Point tag(final String tag, final String value) {
-      tags[tagIndex++].setPair(tag, value);
+      checkNoTemplate();
+      if (tagIndex == tagNames.length) {
+         growTags(tagIndex * 2);
+      }
+      tagNames[tagIndex] = tag;
+      tagValues[tagIndex] = value;
+      tagIndex++;
+      series = null;
+      seriesLookedUp = false;
       return this;
    }
 
    public Point field(final String field, final String value) {
-      stringFields[stringFieldIndex++].setPair(field, value);
-      // buffer.serializeStringField(field, value);
+      final int ndx = addField(field, PointTemplate.STRING);
+      fieldStrings[ndx] = value;
       return this;
    }
 
    public Point field(final String field, final long value) {
-      longFields[longFieldIndex++].setPair(field, value);
-      // buffer.serializeLongField(field, value);
+      final int ndx = addField(field, PointTemplate.LONG);
+      fieldBits[ndx] = value;
       return this;
    }
 
    public Point field(final String field, final double value) {
-      doubleFields[doubleFieldIndex++].setPair(field, value);
-       // buffer.serializeDoubleField(field, value);
+      final int ndx = addField(field, PointTemplate.DOUBLE);
+      fieldBits[ndx] = Double.doubleToRawLongBits(value);
       return this;
    }
 
    public Point field(final String field, final boolean value) {
-      boolFields[booleanFieldIndex++].setPair(field, value);
-      // buffer.serializeBooleanField(field, value);
+      final int ndx = addField(field, PointTemplate.BOOLEAN);
+      fieldBits[ndx] = value ? 1 : 0;
       return this;
    }
 
@@ -125,6 +155,8 @@ public class Point implements Poolable, AutoCloseable {
 
    public Point rewind() {
       tagIndex = tagMark;
+      series = null;
+      seriesLookedUp = false;
       // buffer.rewind();
       return this;
    }
@@ -137,16 +169,99 @@ public class Point implements Poolable, AutoCloseable {
    @Override
    public void release() {
       reset();
-      slot.release(this);
+      cache.release(this);
    }
 
    public Point measurement(final String measurement) {
+      checkNoTemplate();
       this.measurement = measurement;
       return this;
    }
 
+   /**
+    * Set the value of a tag of a point created from a {@link PointTemplate}.
+    *
+    * @param index the index of the tag key, in the order declared in the template
+    * @param value the tag value, or {@code null} to omit the tag
+    * @return this {@link Point}
+    */
+   public Point setTag(final int index, final String value) {
+      checkTemplate();
+      if (index < 0 || index >= template.tagCount()) {
+         throw new IllegalArgumentException("Tag " + index + " is not declared in the PointTemplate");
+      }
+      tagValues[index] = value;
+      return this;
+   }
+
+   /**
+    * Set the value of a long field of a point created from a {@link PointTemplate}.
+    *
+    * @param index the index of the field, in the order declared in the template
+    * @param value the field value
+    * @return this {@link Point}
+    */
+   public Point setLong(final int index, final long value) {
+      checkFieldType(index, PointTemplate.LONG);
+      fieldBits[index] = value;
+      return this;
+   }
+
+   public Point setDouble(final int index, final double value) {
+      checkFieldType(index, PointTemplate.DOUBLE);
+      fieldBits[index] = Double.doubleToRawLongBits(value);
+      return this;
+   }
+
+   public Point setString(final int index, final String value) {
+      checkFieldType(index, PointTemplate.STRING);
+      fieldStrings[index] = value;
+      return this;
+   }
+
+   public Point setBoolean(final int index, final boolean value) {
+      checkFieldType(index, PointTemplate.BOOLEAN);
+      fieldBits[index] = value ? 1 : 0;
+      return this;
+   }
+
+   void setCache(final PointCache cache) {
+      this.cache = cache;
+   }
+
+   void releaseToPool() {
+      slot.release(this);
+   }
+
+   /**
+    * Bind this point to a template, sizing the slot arrays to fit it.
+    */
+   void bind(final PointTemplate template) {
+      this.template = template;
+      if (tagValues.length < template.tagCount()) {
+         growTags(template.tagCount());
+      }
+      if (fieldBits.length < template.fieldCount()) {
+         growFields(template.fieldCount());
+      }
+   }
+
    void write(final ByteBuffer buffer) {
-      final int fieldCount = longFieldIndex + booleanFieldIndex + stringFieldIndex + doubleFieldIndex;
+      write(buffer, Precision.NANOSECOND);
+   }
+
+   /**
+    * Serialize this point, with its timestamp truncated to the given precision.  The
+    * timestamp is held in nanoseconds until this point, so the same point can be written to
+    * connections configured with different precisions.
+    */
+   void write(final ByteBuffer buffer, final Precision precision) {
+      if (template != null) {
+         writeTemplate(buffer, precision);
+         return;
+      }
+
+      final int fieldCount = fieldIndex;
 
       if (fieldCount == 0) {
          throw new IllegalStateException("Point must have at least one field");
@@ -155,65 +270,331 @@ public class Point implements Poolable, AutoCloseable {
       serializeMeasurement(buffer, measurement);
 
       if (tagIndex > 0) {
-         final int tagCount = tagIndex;
-         for (int i = 0; i < tagCount; i++) {
-            tagSort[i] = i;
+         if (lookupSeries() != null) {
+            buffer.put(series);
          }
+         else {
+            final int start = buffer.position();
+            serializeTags(buffer);
+
+            if (seriesCache != null) {
+               final ByteBuffer segment = buffer.duplicate();
+               segment.position(start).limit(buffer.position());
+               series = new byte[segment.remaining()];
+               segment.get(series);
+               seriesCache.put(this, series);
+            }
+         }
+      }
 
-         PrimitiveArraySort.sort(tagSort, tagCount, tagKeyComparator);
-         for (int i = 0; i < tagCount; i++) {
-            final int ndx = tagSort[i];
-            final StringPair pair = tags[ndx];
-            serializeTag(buffer, pair.name(), pair.value());
+      for (int i = 0; i < fieldCount; i++) {
+         final boolean notFirstField = (i > 0);
+         switch (fieldTypes[i]) {
+            case PointTemplate.LONG:
+               serializeLongField(buffer, fieldNames[i], fieldBits[i], notFirstField);
+               break;
+            case PointTemplate.DOUBLE:
+               serializeDoubleField(buffer, fieldNames[i], Double.longBitsToDouble(fieldBits[i]), notFirstField);
+               break;
+            case PointTemplate.STRING:
+               serializeStringField(buffer, fieldNames[i], fieldStrings[i], notFirstField);
+               break;
+            default:
+               serializeBooleanField(buffer, fieldNames[i], fieldBits[i] != 0, notFirstField);
          }
       }
 
-      boolean notFirstField = false;
-      for (int i = 0; i < stringFieldIndex; i++) {
-         final StringPair pair = stringFields[i];
-         serializeStringField(buffer, pair.name(), pair.value(), notFirstField);
-         notFirstField = true;
+      if (timestamp != NO_TIMESTAMP) {
+         serializeTimestamp(buffer, precision.convert(timestamp));
       }
 
-      for (int i = 0; i < longFieldIndex; i++) {
-         final LongPair pair = longFields[i];
-         serializeLongField(buffer, pair.name(), pair.value(), notFirstField);
-         notFirstField = true;
+      buffer.put((byte) '\n');
+   }
+
+   /**
+    * Get the exact number of bytes {@link #write(ByteBuffer)} will write for this point,
+    * without serializing it.  Measurement and keys are sized from the escaped-key caches and
+    * the tag segment from the {@link SeriesCache}, so for a recurring series only the field
+    * values are actually measured.
+    *
+    * @return the serialized length of this point in bytes
+    */
+   int serializedSize() {
+      return serializedSize(Precision.NANOSECOND);
+   }
+
+   /**
+    * Get the exact number of bytes {@link #write(ByteBuffer, Precision)} will write for this
+    * point at the given precision.
+    *
+    * @return the serialized length of this point in bytes
+    */
+   int serializedSize(final Precision precision) {
+      if (template != null) {
+         return templateSize(precision);
       }
 
-      for (int i = 0; i < doubleFieldIndex; i++) {
-         final DoublePair pair = doubleFields[i];
-         serializeDoubleField(buffer, pair.name(), pair.value(), notFirstField);
-         notFirstField = true;
+      final int fieldCount = fieldIndex;
+
+      if (fieldCount == 0) {
+         throw new IllegalStateException("Point must have at least one field");
+      }
+
+      int size = measurementSize(measurement);
+
+      if (tagIndex > 0) {
+         if (lookupSeries() != null) {
+            size += series.length;
+         }
+         else {
+            for (int i = 0; i < tagIndex; i++) {
+               size += tagSize(tagNames[i], tagValues[i]);
+            }
+         }
+      }
+
+      // A separator (' ' or ',') precedes every field
+      size += fieldCount;
+
+      for (int i = 0; i < fieldCount; i++) {
+         switch (fieldTypes[i]) {
+            case PointTemplate.LONG:
+               size += longFieldSize(fieldNames[i], fieldBits[i]);
+               break;
+            case PointTemplate.DOUBLE:
+               size += doubleFieldSize(fieldNames[i], Double.longBitsToDouble(fieldBits[i]));
+               break;
+            case PointTemplate.STRING:
+               size += stringFieldSize(fieldNames[i], fieldStrings[i]);
+               break;
+            default:
+               size += booleanFieldSize(fieldNames[i]);
+         }
+      }
+
+      if (timestamp != NO_TIMESTAMP) {
+         size += timestampSize(precision.convert(timestamp));
       }
 
-      for (int i = 0; i < booleanFieldIndex; i++) {
-         final BooleanPair pair = boolFields[i];
-         serializeBooleanField(buffer, pair.name(), pair.value(), notFirstField);
+      return size + 1;
+   }
+
+   /**
+    * Serialize a point bound to a template: the template's constant segments interleaved
+    * with the values set on this point.
+    */
+   private void writeTemplate(final ByteBuffer buffer, final Precision precision) {
+      checkTemplateFields();
+
+      buffer.put(template.measurement);
+
+      final int[] tagOrder = template.tagOrder;
+      for (int i = 0; i < tagOrder.length; i++) {
+         final String value = tagValues[tagOrder[i]];
+         if (value != null) {
+            buffer.put(template.tagPrefixes[i]);
+            serializeTagValue(buffer, value);
+         }
+      }
+
+      boolean notFirstField = false;
+      for (long mask = templateFieldMask; mask != 0; mask &= mask - 1) {
+         final int i = Long.numberOfTrailingZeros(mask);
+         buffer.put((byte) (notFirstField ? ',' : ' '));
+         buffer.put(template.fieldKeys[i]);
          notFirstField = true;
+
+         final long value = fieldBits[i];
+         switch (template.fieldTypes[i]) {
+            case PointTemplate.LONG:
+               writeLongToBuffer(value, buffer);
+               buffer.put((byte) 'i');
+               break;
+            case PointTemplate.DOUBLE:
+               writeDoubleToBuffer(Double.longBitsToDouble(value), buffer);
+               break;
+            case PointTemplate.STRING:
+               buffer.put((byte) '"');
+               serializeStringValue(buffer, fieldStrings[i]);
+               buffer.put((byte) '"');
+               break;
+            default:
+               buffer.put(value != 0 ? (byte) 't' : (byte) 'f');
+         }
       }
 
-      if (timestamp != null) {
-         serializeTimestamp(buffer, timestamp);
+      if (timestamp != NO_TIMESTAMP) {
+         serializeTimestamp(buffer, precision.convert(timestamp));
       }
 
       buffer.put((byte) '\n');
    }
 
+   private int templateSize(final Precision precision) {
+      checkTemplateFields();
+
+      int size = template.measurement.length;
+
+      final int[] tagOrder = template.tagOrder;
+      for (int i = 0; i < tagOrder.length; i++) {
+         final String value = tagValues[tagOrder[i]];
+         if (value != null) {
+            size += template.tagPrefixes[i].length + tagValueSize(value);
+         }
+      }
+
+      for (long mask = templateFieldMask; mask != 0; mask &= mask - 1) {
+         final int i = Long.numberOfTrailingZeros(mask);
+         size += 1 + template.fieldKeys[i].length;
+
+         final long value = fieldBits[i];
+         switch (template.fieldTypes[i]) {
+            case PointTemplate.LONG:
+               size += longLength(value) + 1;
+               break;
+            case PointTemplate.DOUBLE:
+               size += doubleLength(Double.longBitsToDouble(value));
+               break;
+            case PointTemplate.STRING:
+               size += stringValueSize(fieldStrings[i]) + 2;
+               break;
+            default:
+               size += 1;
+         }
+      }
+
+      if (timestamp != NO_TIMESTAMP) {
+         size += timestampSize(precision.convert(timestamp));
+      }
+
+      return size + 1;
+   }
+
+   private void checkTemplate() {
+      if (template == null) {
+         throw new IllegalStateException("Point was not created from a PointTemplate");
+      }
+   }
+
+   /**
+    * A point bound to a template only serializes the slots of the template, so values set
+    * by name would be silently dropped.
+    */
+   private void checkNoTemplate() {
+      if (template != null) {
+         throw new IllegalStateException("Point created from a PointTemplate must be set by index");
+      }
+   }
+
+   private void checkFieldType(final int index, final byte type) {
+      checkTemplate();
+      if (index < 0 || index >= template.fieldCount()) {
+         throw new IllegalArgumentException("Field " + index + " is not declared in the PointTemplate");
+      }
+      if (template.fieldTypes[index] != type) {
+         throw new IllegalArgumentException("Field " + index + " of the PointTemplate is not of the type being set");
+      }
+      templateFieldMask |= 1L << index;
+   }
+
+   private void checkTemplateFields() {
+      if (templateFieldMask == 0) {
+         throw new IllegalStateException("Point must have at least one field");
+      }
+   }
+
+   @Override
+   int nextSize(final Precision precision) {
+      return serializedSize(precision);
+   }
+
+   @Override
+   boolean encodeNext(final ByteBuffer buffer, final Precision precision) {
+      write(buffer, precision);
+      return true;
+   }
+
+   int tagCount() {
+      return tagIndex;
+   }
+
+   String tagName(final int index) {
+      return tagNames[index];
+   }
+
+   String tagValue(final int index) {
+      return tagValues[index];
+   }
+
+   /**
+    * Look up the serialized tag segment of this point in the {@link SeriesCache}, at most
+    * once until the tags change, so that {@link #serializedSize()} followed by
+    * {@link #write(ByteBuffer)} costs a single lookup, and a miss is counted once.
+    */
+   private byte[] lookupSeries() {
+      if (!seriesLookedUp && seriesCache != null) {
+         series = seriesCache.get(this);
+         seriesLookedUp = true;
+      }
+      return series;
+   }
+
+   private void serializeTags(final ByteBuffer buffer) {
+      final int tagCount = tagIndex;
+      for (int i = 0; i < tagCount; i++) {
+         tagSort[i] = i;
+      }
+
+      PrimitiveArraySort.sort(tagSort, tagCount, tagKeyComparator);
+      for (int i = 0; i < tagCount; i++) {
+         final int ndx = tagSort[i];
+         serializeTag(buffer, tagNames[ndx], tagValues[ndx]);
+      }
+   }
+
    void reset() {
-      final int len = tagIndex;
-      for (int i = 0; i < len; i++) {
-         tags[i].reset();
+      if (template != null) {
+         Arrays.fill(tagValues, 0, template.tagCount(), null);
+         Arrays.fill(fieldStrings, 0, template.fieldCount(), null);
+         templateFieldMask = 0;
+         template = null;
       }
 
+      Arrays.fill(tagNames, 0, tagIndex, null);
+      Arrays.fill(tagValues, 0, tagIndex, null);
+      Arrays.fill(fieldNames, 0, fieldIndex, null);
+      Arrays.fill(fieldStrings, 0, fieldIndex, null);
+
       tagMark = 0;
       tagIndex = 0;
-      longFieldIndex = 0;
-      stringFieldIndex = 0;
-      doubleFieldIndex = 0;
-      booleanFieldIndex = 0;
+      fieldIndex = 0;
 
-      timestamp = null;
+      timestamp = NO_TIMESTAMP;
+      series = null;
+      seriesLookedUp = false;
+   }
+
+   private int addField(final String field, final byte type) {
+      checkNoTemplate();
+      if (fieldIndex == fieldNames.length) {
+         growFields(fieldIndex * 2);
+      }
+      fieldNames[fieldIndex] = field;
+      fieldTypes[fieldIndex] = type;
+      return fieldIndex++;
+   }
+
+   private void growTags(final int capacity) {
+      tagNames = Arrays.copyOf(tagNames, capacity);
+      tagValues = Arrays.copyOf(tagValues, capacity);
+      tagSort = new int[capacity];
+   }
+
+   private void growFields(final int capacity) {
+      fieldNames = Arrays.copyOf(fieldNames, capacity);
+      fieldTypes = Arrays.copyOf(fieldTypes, capacity);
+      fieldBits = Arrays.copyOf(fieldBits, capacity);
+      fieldStrings = Arrays.copyOf(fieldStrings, capacity);
    }
 
 
@@ -222,6 +603,11 @@ public class Point implements Poolable, AutoCloseable {
     */
 
    static class PointSerializer {
+      private static final int KEY_CACHE_SIZE = Integer.getInteger("com.zaxxer.influx4j.keyCacheSize", 4096);
+
+      private static final KeyCache MEASUREMENT_CACHE = new KeyCache(KEY_CACHE_SIZE, PointSerializer::escapeMeasurement);
+      private static final KeyCache KEY_CACHE = new KeyCache(KEY_CACHE_SIZE, PointSerializer::escapeKey);
+
       // private static final int MAX_BUFFER_COUNTS = Integer.getInteger("com.zaxxer.influx4j.maxBuffersPerPoint", 64);
 
       // private final BufferPoolManager bufferPool;
@@ -290,28 +676,33 @@ public class Point implements Poolable, AutoCloseable {
        */
 
       static void serializeMeasurement(final ByteBuffer buffer, final String measurement) {
-         escapeCommaSpace(buffer, measurement);
+         if (KEY_CACHE_SIZE > 0) {
+            buffer.put(MEASUREMENT_CACHE.get(measurement));
+         }
+         else {
+            escapeCommaSpace(buffer, measurement);
+         }
       }
 
       static void serializeTag(final ByteBuffer buffer, final String key, final String value) {
          buffer.put((byte) ',');
-         escapeTagKeyOrValue(buffer, key, containsUnicode(key));
+         serializeKey(buffer, key);
          buffer.put((byte) '=');
-         escapeTagKeyOrValue(buffer, value, containsUnicode(value));
+         escapeCommaEqualSpace(buffer, value);
       }
 
       static void serializeStringField(final ByteBuffer buffer, final String field, final String value, final boolean notFirstField) {
          addFieldSeparator(buffer, notFirstField);
-         escapeFieldKey(buffer, field, containsUnicode(field));
+         serializeKey(buffer, field);
          buffer.put((byte) '=');
          buffer.put((byte) '"');
-         escapeFieldValue(buffer, value, containsUnicode(value));
+         escapeDoubleQuote(buffer, value);
          buffer.put((byte) '"');
       }
 
       static void serializeLongField(final ByteBuffer buffer, final String field, final long value, final boolean notFirstField) {
          addFieldSeparator(buffer, notFirstField);
-         escapeFieldKey(buffer, field, containsUnicode(field));
+         serializeKey(buffer, field);
          buffer.put((byte) '=');
          writeLongToBuffer(value, buffer);
          buffer.put((byte) 'i');
@@ -319,236 +710,257 @@ public class Point implements Poolable, AutoCloseable {
 
       static void serializeDoubleField(final ByteBuffer buffer, final String field, final double value, final boolean notFirstField) {
          addFieldSeparator(buffer, notFirstField);
-         escapeFieldKey(buffer, field, containsUnicode(field));
+         serializeKey(buffer, field);
          buffer.put((byte) '=');
          writeDoubleToBuffer(value, buffer);
       }
 
       static void serializeBooleanField(final ByteBuffer buffer, final String field, final boolean value, final boolean notFirstField) {
          addFieldSeparator(buffer, notFirstField);
-         escapeFieldKey(buffer, field, containsUnicode(field));
+         serializeKey(buffer, field);
          buffer.put((byte) '=');
          buffer.put(value ? (byte) 't' : (byte) 'f');
       }
 
+      static void serializeTagValue(final ByteBuffer buffer, final String value) {
+         escapeCommaEqualSpace(buffer, value);
+      }
+
+      static void serializeStringValue(final ByteBuffer buffer, final String value) {
+         escapeDoubleQuote(buffer, value);
+      }
+
       static void serializeTimestamp(final ByteBuffer buffer, final long timestamp) {
          buffer.put((byte) ' ');
          writeLongToBuffer(timestamp, buffer);
       }
 
       /*********************************************************************************************
-       * Escape handling
+       * Sizing, mirroring the serialization methods above byte for byte
        */
 
-      private static void escapeTagKeyOrValue(final ByteBuffer buffer, final String string, final boolean isUnicode) {
-         escapeCommaEqualSpace(string, buffer, isUnicode);
+      static int measurementSize(final String measurement) {
+         return KEY_CACHE_SIZE > 0 ? MEASUREMENT_CACHE.get(measurement).length : escapedLength(measurement, ESCAPE_COMMA_SPACE);
       }
 
-      private static void escapeFieldKey(final ByteBuffer buffer, final String key, final boolean isUnicode) {
-         escapeCommaEqualSpace(key, buffer, isUnicode);
+      static int tagSize(final String key, final String value) {
+         return 2 + keySize(key) + escapedLength(value, ESCAPE_COMMA_EQUAL_SPACE);
       }
 
-      private static void escapeFieldValue(final ByteBuffer buffer, final String value, final boolean isUnicode) {
-         escapeDoubleQuote(value, buffer, isUnicode);
-      }
+      // The sizes of fields exclude the leading field separator
 
-      private static void escapeCommaSpace(final ByteBuffer buffer, final String string) {
-         if (containsCommaSpace(string)) {
-            final byte[] bytes = string.getBytes();
-            for (int i = 0; i < bytes.length; i++) {
-               switch (bytes[i]) {
-                  case ',':
-                  case ' ':
-                     buffer.put((byte) '\\');
-                     buffer.put(bytes[i]);
-                     break;
-                  default:
-                     buffer.put(bytes[i]);
-               }
-            }
-         }
-         else {
-            final int pos = buffer.position();
-            string.getBytes(0, string.length(), buffer.array(), pos);
-            buffer.position(pos + string.length());
-         }
+      static int stringFieldSize(final String field, final String value) {
+         return 3 + keySize(field) + escapedLength(value, ESCAPE_DOUBLE_QUOTE);
       }
 
-      private static void escapeCommaEqualSpace(final String string, final ByteBuffer buffer, final boolean isUnicode) {
-         if (isUnicode || containsCommaEqualSpace(string)) {
-            final byte[] bytes = string.getBytes();
-            for (int i = 0; i < bytes.length; i++) {
-               switch (bytes[i]) {
-                  case ',':
-                  case '=':
-                  case ' ':
-                     buffer.put((byte) '\\');
-                     buffer.put(bytes[i]);
-                     break;
-                  default:
-                     buffer.put(bytes[i]);
-               }
-            }
-         }
-         else {
-            final int pos = buffer.position();
-            string.getBytes(0, string.length(), buffer.array(), pos);
-            buffer.position(pos + string.length());
-         }
+      static int longFieldSize(final String field, final long value) {
+         return 2 + keySize(field) + longLength(value);
       }
 
-      private static void escapeDoubleQuote(final String string, final ByteBuffer buffer, final boolean isUnicode) {
-         if (isUnicode || string.indexOf('"') != -1) {
-            final byte[] bytes = string.getBytes();
-            for (int i = 0; i < bytes.length; i++) {
-               if (bytes[i] == '"') {
-                  buffer.put((byte) '\\');
-               }
-               buffer.put(bytes[i]);
-            }
-         }
-         else {
-            final int pos = buffer.position();
-            string.getBytes(0, string.length(), buffer.array(), pos);
-            buffer.position(pos + string.length());
-         }
+      static int doubleFieldSize(final String field, final double value) {
+         return 1 + keySize(field) + doubleLength(value);
       }
 
-      private static boolean containsCommaSpace(final String string) {
-         for (int i = 0; i < string.length(); i++) {
-            switch (string.charAt(i)) {
-               case ',':
-               case ' ':
-                  return true;
-            }
-         }
-         return false;
+      static int booleanFieldSize(final String field) {
+         return 2 + keySize(field);
       }
 
-      private static boolean containsCommaEqualSpace(final String string) {
-         for (int i = 0; i < string.length(); i++) {
-            switch (string.charAt(i)) {
-               case ',':
-               case '=':
-               case ' ':
-                  return true;
-            }
-         }
-         return false;
+      static int tagValueSize(final String value) {
+         return escapedLength(value, ESCAPE_COMMA_EQUAL_SPACE);
       }
 
-      /*********************************************************************************************
-       * Miscellaneous
-       */
+      static int stringValueSize(final String value) {
+         return escapedLength(value, ESCAPE_DOUBLE_QUOTE);
+      }
 
-      private static void addFieldSeparator(final ByteBuffer buffer, final boolean notFirstField) {
-         buffer.put((byte) (notFirstField ? ',' : ' '));
+      static int timestampSize(final long timestamp) {
+         return 1 + longLength(timestamp);
       }
-   }
 
-   private static class ParallelTagArrayComparator implements PrimitiveArraySort.IntComparator {
-      private final StringPair[] tags;
+      /**
+       * Get the escaped bytes of a measurement, from the key cache if it is enabled.
+       */
+      static byte[] measurementBytes(final String measurement) {
+         return KEY_CACHE_SIZE > 0 ? MEASUREMENT_CACHE.get(measurement) : escapeMeasurement(measurement);
+      }
 
-      private ParallelTagArrayComparator(final StringPair[] tags) {
-         this.tags = tags;
+      /**
+       * Get the escaped bytes of a tag or field key, from the key cache if it is enabled.
+       */
+      static byte[] keyBytes(final String key) {
+         return KEY_CACHE_SIZE > 0 ? KEY_CACHE.get(key) : escapeKey(key);
       }
 
-      @Override
-      public int compare(int a, int b) {
-         return tags[a].name().compareTo(tags[b].name());
+      private static int keySize(final String key) {
+         return KEY_CACHE_SIZE > 0 ? KEY_CACHE.get(key).length : escapedLength(key, ESCAPE_COMMA_EQUAL_SPACE);
       }
-   }
 
-   /*********************************************************************************************
-    * Pair classes
-    */
+      /*********************************************************************************************
+       * Escape handling
+       */
 
-   private static class StringPair {
-      private String name;
-      private String value;
+      private static final Escapes ESCAPE_COMMA_SPACE = new Escapes(',', ' ', ' ');
+      private static final Escapes ESCAPE_COMMA_EQUAL_SPACE = new Escapes(',', '=', ' ');
+      private static final Escapes ESCAPE_DOUBLE_QUOTE = new Escapes('"', '"', '"');
 
-      void setPair(final String name, final String value) {
-         this.name = name;
-         this.value = value;
+      private static void serializeKey(final ByteBuffer buffer, final String key) {
+         if (KEY_CACHE_SIZE > 0) {
+            buffer.put(KEY_CACHE.get(key));
+         }
+         else {
+            escapeUtf8(buffer, key, ESCAPE_COMMA_EQUAL_SPACE);
+         }
       }
 
-      String name() {
-         return name;
+      private static byte[] escapeMeasurement(final String measurement) {
+         return escapeUtf8(measurement, ESCAPE_COMMA_SPACE);
       }
 
-      String value() {
-         return value;
+      private static byte[] escapeKey(final String key) {
+         return escapeUtf8(key, ESCAPE_COMMA_EQUAL_SPACE);
       }
 
-      void reset() {
-         name = null;
-         value = null;
+      private static byte[] escapeUtf8(final String string, final Escapes escapes) {
+         final byte[] bytes = new byte[escapedLength(string, escapes)];
+         escapeUtf8(ByteBuffer.wrap(bytes), string, escapes);
+         return bytes;
       }
-   }
 
-   private static class LongPair {
-      private String name;
-      private long value;
-
-      void setPair(final String name, final long value) {
-         this.name = name;
-         this.value = value;
+      private static void escapeCommaSpace(final ByteBuffer buffer, final String string) {
+         escapeUtf8(buffer, string, ESCAPE_COMMA_SPACE);
       }
 
-      String name() {
-         return name;
+      private static void escapeCommaEqualSpace(final ByteBuffer buffer, final String string) {
+         escapeUtf8(buffer, string, ESCAPE_COMMA_EQUAL_SPACE);
       }
 
-      long value() {
-         return value;
+      private static void escapeDoubleQuote(final ByteBuffer buffer, final String string) {
+         escapeUtf8(buffer, string, ESCAPE_DOUBLE_QUOTE);
       }
 
-      void reset() {
-         name = null;
-      }
-   }
+      /**
+       * UTF-8 encode a string directly into the buffer, preceding every ASCII character in
+       * {@code escapes} with a backslash.  No intermediate arrays are allocated, and heap and
+       * direct buffers are treated alike.
+       * <p>
+       * The string is first classified in one SWAR pass ({@link Utf8#classify}), and the common
+       * case of plain ASCII is copied in bulk.  Otherwise, a UTF-16 char never expands to more
+       * than three bytes, escaped or not, so when the buffer has that much room no bounds
+       * checks are needed; failing that the exact length is computed first, so that an
+       * overflow leaves the buffer position untouched.
+       *
+       * @throws BufferOverflowException if the encoded string does not fit in the buffer
+       */
+      private static void escapeUtf8(final ByteBuffer buffer, final String string, final Escapes escapes) {
+         final int len = string.length();
+         final int kind = Utf8.classify(string, escapes.c1, escapes.c2, escapes.c3);
+         if (kind == Utf8.PLAIN_ASCII) {
+            putAscii(buffer, string);
+            return;
+         }
 
-   private static class DoublePair {
-      private String name;
-      private double value;
+         if (len * 3 > buffer.remaining() && escapedLength(string, escapes, kind) > buffer.remaining()) {
+            throw new BufferOverflowException();
+         }
 
-      void setPair(final String name, final double value) {
-         this.name = name;
-         this.value = value;
+         final long escapeMask = escapes.mask;
+         int pos = buffer.position();
+         for (int i = 0; i < len; i++) {
+            final char c = string.charAt(i);
+            if (c < 0x80) {
+               if (c < 64 && (escapeMask & (1L << c)) != 0) {
+                  buffer.put(pos++, (byte) '\\');
+               }
+               buffer.put(pos++, (byte) c);
+            }
+            else if (c < 0x800) {
+               buffer.put(pos++, (byte) (0xc0 | (c >>> 6)));
+               buffer.put(pos++, (byte) (0x80 | (c & 0x3f)));
+            }
+            else if (!Character.isSurrogate(c)) {
+               buffer.put(pos++, (byte) (0xe0 | (c >>> 12)));
+               buffer.put(pos++, (byte) (0x80 | ((c >>> 6) & 0x3f)));
+               buffer.put(pos++, (byte) (0x80 | (c & 0x3f)));
+            }
+            else {
+               final int codePoint = Character.codePointAt(string, i);
+               if (codePoint == c) {
+                  // An unpaired surrogate is replaced, as String.getBytes(UTF_8) does
+                  buffer.put(pos++, (byte) '?');
+                  continue;
+               }
+               buffer.put(pos++, (byte) (0xf0 | (codePoint >>> 18)));
+               buffer.put(pos++, (byte) (0x80 | ((codePoint >>> 12) & 0x3f)));
+               buffer.put(pos++, (byte) (0x80 | ((codePoint >>> 6) & 0x3f)));
+               buffer.put(pos++, (byte) (0x80 | (codePoint & 0x3f)));
+               i++;
+            }
+         }
+         buffer.position(pos);
       }
 
-      String name() {
-         return name;
+      private static int escapedLength(final String string, final Escapes escapes) {
+         return escapedLength(string, escapes, Utf8.classify(string, escapes.c1, escapes.c2, escapes.c3));
       }
 
-      double value() {
-         return value;
+      private static int escapedLength(final String string, final Escapes escapes, final int kind) {
+         switch (kind) {
+            case Utf8.PLAIN_ASCII:
+               return string.length();
+            case Utf8.ESCAPED_ASCII:
+               return string.length() + Utf8.count(string, escapes.c1, escapes.c2, escapes.c3);
+            default:
+               return Utf8.encodedLength(string) + Utf8.count(string, escapes.c1, escapes.c2, escapes.c3);
+         }
       }
 
-      void reset() {
-         name = null;
+      /**
+       * A set of up to three ASCII characters to backslash-escape, both as the characters
+       * themselves for {@link Utf8#classify} and as a bitmask over the ASCII range 0-63.
+       */
+      private static final class Escapes {
+         private final char c1;
+         private final char c2;
+         private final char c3;
+         private final long mask;
+
+         private Escapes(final char c1, final char c2, final char c3) {
+            this.c1 = c1;
+            this.c2 = c2;
+            this.c3 = c3;
+            this.mask = (1L << c1) | (1L << c2) | (1L << c3);
+         }
       }
-   }
-
-   private static class BooleanPair {
-      private String name;
-      private boolean value;
 
-      void setPair(final String name, final boolean value) {
-         this.name = name;
-         this.value = value;
-      }
+      /*********************************************************************************************
+       * Miscellaneous
+       */
 
-      String name() {
-         return name;
-      }
+      /**
+       * Copy a string known to contain only ASCII characters into the buffer.  Heap buffers
+       * take the fast path through the backing array; direct buffers are filled with absolute
+       * puts.
+       */
+      private static void putAscii(final ByteBuffer buffer, final String string) {
+         final int len = string.length();
+         if (len > buffer.remaining()) {
+            throw new BufferOverflowException();
+         }
 
-      boolean value() {
-         return value;
+         final int pos = buffer.position();
+         if (buffer.hasArray()) {
+            string.getBytes(0, len, buffer.array(), buffer.arrayOffset() + pos);
+         }
+         else {
+            for (int i = 0; i < len; i++) {
+               buffer.put(pos + i, (byte) string.charAt(i));
+            }
+         }
+         buffer.position(pos + len);
       }
 
-      void reset() {
-         name = null;
+      private static void addFieldSeparator(final ByteBuffer buffer, final boolean notFirstField) {
+         buffer.put((byte) (notFirstField ? ',' : ' '));
       }
    }
 }
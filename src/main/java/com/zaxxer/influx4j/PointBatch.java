@@ -0,0 +1,357 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+import stormpot.Poolable;
+import stormpot.Slot;
+
+import static com.zaxxer.influx4j.Point.PointSerializer.keyBytes;
+import static com.zaxxer.influx4j.Point.PointSerializer.measurementSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.serializeMeasurement;
+import static com.zaxxer.influx4j.Point.PointSerializer.serializeTag;
+import static com.zaxxer.influx4j.Point.PointSerializer.serializeTimestamp;
+import static com.zaxxer.influx4j.Point.PointSerializer.tagSize;
+import static com.zaxxer.influx4j.Point.PointSerializer.timestampSize;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.doubleLength;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.longLength;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.writeDoubleToBuffer;
+import static com.zaxxer.influx4j.util.FastValue2Buffer.writeLongToBuffer;
+
+/**
+ * A columnar batch of rows of a single series: one measurement and tag set, declared once,
+ * and any number of timestamped rows of long and double fields.  The serialized
+ * measurement and tag segment is built once per batch and copied in front of every row,
+ * so a row costs little more than formatting its numbers.
+ * <pre>
+ *    PointBatch batch = pointFactory.createBatch("cpu")
+ *       .tag("host", "server01");
+ *    int idle = batch.doubleField("idle");
+ *    int count = batch.longField("count");
+ *
+ *    for (Sample sample : samples) {
+ *       batch.addRow(sample.time, TimeUnit.MILLISECONDS)
+ *          .setDouble(idle, sample.idle)
+ *          .setLong(count, sample.count);
+ *    }
+ *    influxDB.write(batch);
+ * </pre>
+ * Like a {@link Point}, a batch is pooled.  Once written to an {@link InfluxDB} it belongs
+ * to the connection, which releases it after it is sent.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public class PointBatch extends Encodable implements Poolable, AutoCloseable {
+   private static final int INITIAL_ROWS = 64;
+   private static final int INITIAL_COLUMNS = 8;
+
+   private final Slot slot;
+
+   private String measurement;
+
+   private String[] tagNames;
+   private String[] tagValues;
+   private int[] tagOrder;
+   private int tagCount;
+
+   private String[] columnNames;
+   private boolean[] doubleColumns;
+   private long[][] columns;
+   private int columnCount;
+
+   private long[] timestamps;
+   private int rowCount;
+   private int nextRow;
+
+   private ByteBuffer series;
+   private int seriesLength;
+   private boolean prepared;
+   private byte[][] columnKeys;
+
+   PointBatch(final Slot slot) {
+      this.slot = slot;
+      this.tagNames = new String[INITIAL_COLUMNS];
+      this.tagValues = new String[INITIAL_COLUMNS];
+      this.tagOrder = new int[INITIAL_COLUMNS];
+      this.columnNames = new String[INITIAL_COLUMNS];
+      this.doubleColumns = new boolean[INITIAL_COLUMNS];
+      this.columns = new long[INITIAL_COLUMNS][];
+      this.columnKeys = new byte[INITIAL_COLUMNS][];
+      this.timestamps = new long[INITIAL_ROWS];
+   }
+
+   public PointBatch measurement(final String measurement) {
+      checkNoRows();
+      this.measurement = measurement;
+      this.prepared = false;
+      return this;
+   }
+
+   public PointBatch tag(final String tag, final String value) {
+      checkNoRows();
+      if (tagCount == tagNames.length) {
+         tagNames = Arrays.copyOf(tagNames, tagCount * 2);
+         tagValues = Arrays.copyOf(tagValues, tagCount * 2);
+         tagOrder = Arrays.copyOf(tagOrder, tagCount * 2);
+      }
+      tagNames[tagCount] = tag;
+      tagValues[tagCount] = value;
+      tagCount++;
+      prepared = false;
+      return this;
+   }
+
+   /**
+    * Declare a long field column.
+    *
+    * @param field the field name
+    * @return the column index to pass to {@link #setLong(int, long)}
+    */
+   public int longField(final String field) {
+      return addColumn(field, false);
+   }
+
+   /**
+    * Declare a double field column.
+    *
+    * @param field the field name
+    * @return the column index to pass to {@link #setDouble(int, double)}
+    */
+   public int doubleField(final String field) {
+      return addColumn(field, true);
+   }
+
+   /**
+    * Append a row with the given timestamp.  Every field of the row is zero until set.
+    *
+    * @param timestamp the timestamp of the row
+    * @param timeUnit the unit of the timestamp
+    * @return this {@link PointBatch}
+    */
+   public PointBatch addRow(final long timestamp, final TimeUnit timeUnit) {
+      if (columnCount == 0) {
+         throw new IllegalStateException("PointBatch must have at least one field");
+      }
+      if (rowCount == 0) {
+         // The series can no longer change
+         sortTags();
+      }
+
+      if (rowCount == timestamps.length) {
+         final int capacity = rowCount * 2;
+         timestamps = Arrays.copyOf(timestamps, capacity);
+         for (int i = 0; i < columnCount; i++) {
+            columns[i] = Arrays.copyOf(columns[i], capacity);
+         }
+      }
+
+      timestamps[rowCount] = timeUnit.toNanos(timestamp);
+      for (int i = 0; i < columnCount; i++) {
+         columns[i][rowCount] = 0L;
+      }
+      rowCount++;
+      return this;
+   }
+
+   /**
+    * Set a long field of the last added row.
+    *
+    * @param column the index returned by {@link #longField(String)}
+    * @param value the field value
+    * @return this {@link PointBatch}
+    */
+   public PointBatch setLong(final int column, final long value) {
+      checkCell(column);
+      if (doubleColumns[column]) {
+         throw new IllegalArgumentException("Field '" + columnNames[column] + "' is a double field");
+      }
+      columns[column][rowCount - 1] = value;
+      return this;
+   }
+
+   /**
+    * Set a double field of the last added row.
+    *
+    * @param column the index returned by {@link #doubleField(String)}
+    * @param value the field value
+    * @return this {@link PointBatch}
+    */
+   public PointBatch setDouble(final int column, final double value) {
+      checkCell(column);
+      if (!doubleColumns[column]) {
+         throw new IllegalArgumentException("Field '" + columnNames[column] + "' is a long field");
+      }
+      columns[column][rowCount - 1] = Double.doubleToRawLongBits(value);
+      return this;
+   }
+
+   /**
+    * Get the number of rows in this batch.
+    *
+    * @return the row count
+    */
+   public int size() {
+      return rowCount;
+   }
+
+   @Override
+   public void close() {
+      release();
+   }
+
+   @Override
+   public void release() {
+      reset();
+      slot.release(this);
+   }
+
+   @Override
+   int nextSize(final Precision precision) {
+      prepare();
+
+      final int row = nextRow;
+      int size = seriesLength + columnCount + timestampSize(precision.convert(timestamps[row])) + 1;
+      for (int i = 0; i < columnCount; i++) {
+         final long value = columns[i][row];
+         size += columnKeys[i].length + 1;
+         size += doubleColumns[i] ? doubleLength(Double.longBitsToDouble(value)) : longLength(value) + 1;
+      }
+      return size;
+   }
+
+   @Override
+   boolean encodeNext(final ByteBuffer buffer, final Precision precision) {
+      prepare();
+
+      final int row = nextRow;
+      buffer.put(series.array(), 0, seriesLength);
+      for (int i = 0; i < columnCount; i++) {
+         buffer.put((byte) (i == 0 ? ' ' : ','));
+         buffer.put(columnKeys[i]);
+         buffer.put((byte) '=');
+
+         final long value = columns[i][row];
+         if (doubleColumns[i]) {
+            writeDoubleToBuffer(Double.longBitsToDouble(value), buffer);
+         }
+         else {
+            writeLongToBuffer(value, buffer);
+            buffer.put((byte) 'i');
+         }
+      }
+      serializeTimestamp(buffer, precision.convert(timestamps[row]));
+      buffer.put((byte) '\n');
+
+      return ++nextRow == rowCount;
+   }
+
+   void reset() {
+      Arrays.fill(tagNames, 0, tagCount, null);
+      Arrays.fill(tagValues, 0, tagCount, null);
+      Arrays.fill(columnNames, 0, columnCount, null);
+      Arrays.fill(columnKeys, 0, columnCount, null);
+
+      measurement = null;
+      prepared = false;
+      tagCount = 0;
+      columnCount = 0;
+      rowCount = 0;
+      nextRow = 0;
+   }
+
+   private int addColumn(final String field, final boolean isDouble) {
+      checkNoRows();
+      if (columnCount == columnNames.length) {
+         final int capacity = columnCount * 2;
+         columnNames = Arrays.copyOf(columnNames, capacity);
+         doubleColumns = Arrays.copyOf(doubleColumns, capacity);
+         columns = Arrays.copyOf(columns, capacity);
+         columnKeys = Arrays.copyOf(columnKeys, capacity);
+      }
+
+      final int column = columnCount++;
+      columnNames[column] = field;
+      doubleColumns[column] = isDouble;
+      if (columns[column] == null || columns[column].length < timestamps.length) {
+         columns[column] = new long[timestamps.length];
+      }
+      return column;
+   }
+
+   private void checkNoRows() {
+      if (rowCount > 0) {
+         throw new IllegalStateException("The series and fields of a PointBatch cannot change once rows are added");
+      }
+   }
+
+   private void checkCell(final int column) {
+      if (rowCount == 0) {
+         throw new IllegalStateException("PointBatch has no row to set, addRow() must be called first");
+      }
+      if (column < 0 || column >= columnCount) {
+         throw new IllegalArgumentException("Field " + column + " is not declared in the PointBatch");
+      }
+   }
+
+   /**
+    * Sort the tags by name into {@code tagOrder}, once the tags can no longer change.
+    */
+   private void sortTags() {
+      for (int i = 0; i < tagCount; i++) {
+         int j = i;
+         while (j > 0 && tagNames[tagOrder[j - 1]].compareTo(tagNames[i]) > 0) {
+            tagOrder[j] = tagOrder[j - 1];
+            j--;
+         }
+         tagOrder[j] = i;
+      }
+   }
+
+   /**
+    * Build the serialized measurement and sorted tag segment, and look up the escaped field
+    * keys, once per batch.  The segment buffer is kept, and reused, with the batch.
+    */
+   private void prepare() {
+      if (prepared) {
+         return;
+      }
+
+      int size = measurementSize(measurement);
+      for (int i = 0; i < tagCount; i++) {
+         size += tagSize(tagNames[i], tagValues[i]);
+      }
+
+      if (series == null || series.capacity() < size) {
+         series = ByteBuffer.allocate(size);
+      }
+      series.clear();
+      serializeMeasurement(series, measurement);
+      for (int i = 0; i < tagCount; i++) {
+         serializeTag(series, tagNames[tagOrder[i]], tagValues[tagOrder[i]]);
+      }
+      seriesLength = series.position();
+      prepared = true;
+
+      for (int i = 0; i < columnCount; i++) {
+         columnKeys[i] = keyBytes(columnNames[i]);
+      }
+   }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.jctools.queues.MpmcArrayQueue;
+import stormpot.BlazePool;
+import stormpot.Timeout;
+
+import java.lang.ref.WeakReference;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.lang.System.nanoTime;
+
+/**
+ * A tiered allocator of {@link Point}s in front of the Stormpot pool.  Each thread keeps a
+ * small magazine of points that it claims from and releases to without touching shared
+ * state.  A thread that releases a full magazine's worth of points, typically the flusher
+ * of an {@link InfluxDB} connection, hands the whole magazine to a shared depot in a single
+ * operation, and a producer whose magazine is empty takes a full one from the depot, so
+ * points travel from the flusher back to the producers in batches rather than one at a time.
+ * Only when both its magazine and the depot are empty does a thread claim from the pool.
+ * <p>
+ * Points sitting in a magazine remain claimed as far as the pool is concerned.  A thread
+ * that cannot claim from an exhausted pool steals from the magazines of other threads, so
+ * points stranded in the magazine of an idle thread are not lost.  A magazine only holds its
+ * thread weakly, and the magazines of terminated threads are swept, their points returned to
+ * the pool, at most every 100ms by a thread handing a full magazine to the depot, so that
+ * producer threads coming and going in a thread pool do not pile up magazines.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class PointCache {
+   private static final Timeout TIMEOUT = new Timeout(Long.MAX_VALUE, TimeUnit.DAYS);
+   private static final Timeout STARVATION_TIMEOUT = new Timeout(100, TimeUnit.MICROSECONDS);
+   private static final long SWEEP_INTERVAL_NS = TimeUnit.MILLISECONDS.toNanos(100);
+
+   private final BlazePool<Point> pool;
+   private final int magazineSize;
+
+   private final MpmcArrayQueue<Point[]> fullMagazines;
+   private final MpmcArrayQueue<Point[]> emptyMagazines;
+   private final ConcurrentLinkedQueue<Magazine> magazines;
+   private final ThreadLocal<Magazine> localMagazine;
+   private final AtomicLong nextSweepNs;
+
+   PointCache(final BlazePool<Point> pool, final int poolSize, final int magazineSize) {
+      this.pool = pool;
+      this.magazineSize = magazineSize;
+
+      final int depotSize = Math.max(2, poolSize / Math.max(1, magazineSize));
+      this.fullMagazines = new MpmcArrayQueue<>(depotSize);
+      this.emptyMagazines = new MpmcArrayQueue<>(depotSize);
+      this.magazines = new ConcurrentLinkedQueue<>();
+      this.localMagazine = ThreadLocal.withInitial(this::newMagazine);
+      this.nextSweepNs = new AtomicLong(nanoTime());
+   }
+
+   Point claim() throws InterruptedException {
+      if (magazineSize == 0) {
+         return claimFromPool(TIMEOUT);
+      }
+
+      final Magazine magazine = localMagazine.get();
+      magazine.lock();
+      try {
+         if (magazine.count == 0) {
+            final Point[] full = fullMagazines.poll();
+            if (full != null) {
+               emptyMagazines.offer(magazine.points);
+               magazine.points = full;
+               magazine.count = full.length;
+            }
+         }
+
+         if (magazine.count > 0) {
+            final Point point = magazine.points[--magazine.count];
+            magazine.points[magazine.count] = null;
+            return point;
+         }
+      }
+      finally {
+         magazine.unlock();
+      }
+
+      while (true) {
+         final Point point = claimFromPool(STARVATION_TIMEOUT);
+         if (point != null) {
+            return point;
+         }
+
+         final Point stolen = steal(magazine);
+         if (stolen != null) {
+            return stolen;
+         }
+      }
+   }
+
+   void release(final Point point) {
+      if (magazineSize == 0) {
+         point.releaseToPool();
+         return;
+      }
+
+      final Magazine magazine = localMagazine.get();
+      boolean handedOff = false;
+      boolean cached = false;
+      magazine.lock();
+      try {
+         if (magazine.count == magazine.points.length && fullMagazines.offer(magazine.points)) {
+            final Point[] empty = emptyMagazines.poll();
+            magazine.points = (empty != null ? empty : new Point[magazineSize]);
+            magazine.count = 0;
+            handedOff = true;
+         }
+
+         if (magazine.count < magazine.points.length) {
+            magazine.points[magazine.count++] = point;
+            cached = true;
+         }
+      }
+      finally {
+         magazine.unlock();
+      }
+
+      if (!cached) {
+         // Both the magazine and the depot are full
+         point.releaseToPool();
+      }
+
+      if (handedOff) {
+         sweepIfDue();
+      }
+   }
+
+   void shutdown() {
+      pool.shutdown();
+   }
+
+   private Point claimFromPool(final Timeout timeout) throws InterruptedException {
+      final Point point = pool.claim(timeout);
+      if (point != null) {
+         point.setCache(this);
+      }
+      return point;
+   }
+
+   /**
+    * Take a point from the magazine of another thread, or from a full magazine in the depot
+    * that was published while this thread waited on the pool.
+    */
+   private Point steal(final Magazine self) {
+      final Point[] full = fullMagazines.poll();
+      if (full != null) {
+         for (int i = 1; i < full.length; i++) {
+            release(full[i]);
+         }
+         return full[0];
+      }
+
+      for (final Iterator<Magazine> iterator = magazines.iterator(); iterator.hasNext(); ) {
+         final Magazine magazine = iterator.next();
+         if (magazine == self || !magazine.tryLock()) {
+            continue;
+         }
+
+         try {
+            if (magazine.count > 0) {
+               final Point point = magazine.points[--magazine.count];
+               magazine.points[magazine.count] = null;
+               return point;
+            }
+            else if (magazine.isOrphaned()) {
+               iterator.remove();
+            }
+         }
+         finally {
+            magazine.unlock();
+         }
+      }
+
+      return null;
+   }
+
+   /**
+    * Return the points of the magazines of terminated threads to the pool, and forget the
+    * magazines, unless another thread swept them less than the sweep interval ago.
+    */
+   private void sweepIfDue() {
+      final long due = nextSweepNs.get();
+      final long now = nanoTime();
+      if (now - due < 0 || !nextSweepNs.compareAndSet(due, now + SWEEP_INTERVAL_NS)) {
+         return;
+      }
+
+      for (final Iterator<Magazine> iterator = magazines.iterator(); iterator.hasNext(); ) {
+         final Magazine magazine = iterator.next();
+         if (!magazine.isOrphaned() || !magazine.tryLock()) {
+            continue;
+         }
+
+         try {
+            while (magazine.count > 0) {
+               final Point point = magazine.points[--magazine.count];
+               magazine.points[magazine.count] = null;
+               point.releaseToPool();
+            }
+            iterator.remove();
+         }
+         finally {
+            magazine.unlock();
+         }
+      }
+   }
+
+   int magazineCount() {
+      return magazines.size();
+   }
+
+   private Magazine newMagazine() {
+      final Magazine magazine = new Magazine(Thread.currentThread(), new Point[magazineSize]);
+      magazines.add(magazine);
+      return magazine;
+   }
+
+   /**
+    * A thread's stack of cached points.  The lock is only ever contended by a thread
+    * stealing from an exhausted pool, so for the owner it costs an uncontended CAS.
+    */
+   private static final class Magazine extends AtomicBoolean {
+      // Extended for the lock flag alone, never serialized
+      private static final long serialVersionUID = 1L;
+
+      private final WeakReference<Thread> owner;
+      private Point[] points;
+      private int count;
+
+      private Magazine(final Thread owner, final Point[] points) {
+         this.owner = new WeakReference<>(owner);
+         this.points = points;
+      }
+
+      /**
+       * Whether the thread of this magazine has terminated, so that nothing but a sweep or
+       * a steal will ever take its points.
+       */
+      private boolean isOrphaned() {
+         final Thread thread = owner.get();
+         return (thread == null || !thread.isAlive());
+      }
+
+      private void lock() {
+         while (!compareAndSet(false, true)) {
+            Thread.yield();
+         }
+      }
+
+      private boolean tryLock() {
+         return compareAndSet(false, true);
+      }
+
+      private void unlock() {
+         lazySet(false);
+      }
+   }
+}
@@ -32,7 +32,9 @@ import java.util.concurrent.TimeUnit;
 public class PointFactory {
    private static final Timeout TIMEOUT = new Timeout(Long.MAX_VALUE, TimeUnit.DAYS);
 
-   private final BlazePool<Point> pointPool;
+   private final PointCache pointCache;
+   private final BlazePool<PointBatch> batchPool;
+   private final SeriesCache seriesCache;
 
    public static Builder builder() {
       return new Builder();
@@ -40,7 +42,7 @@ public class PointFactory {
 
    public Point createPoint(final String measurement) {
       try {
-         final Point point = pointPool.claim(TIMEOUT);
+         final Point point = pointCache.claim();
          point.measurement(measurement);
          return point;
       }
@@ -49,13 +51,71 @@ public class PointFactory {
       }
    }
 
+   /**
+    * Create a {@link PointTemplate.Builder} for a prepared point schema with the given
+    * measurement.
+    *
+    * @param measurement the measurement of every point created from the template
+    * @return a {@link PointTemplate.Builder}
+    */
+   public PointTemplate.Builder templateBuilder(final String measurement) {
+      return new PointTemplate.Builder(this, measurement);
+   }
+
+   Point createPoint(final PointTemplate template) {
+      try {
+         final Point point = pointCache.claim();
+         point.bind(template);
+         return point;
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Create a {@link PointBatch} of rows of a single series, with the given measurement.
+    *
+    * @param measurement the measurement of every row of the batch
+    * @return a pooled {@link PointBatch}
+    */
+   public PointBatch createBatch(final String measurement) {
+      try {
+         final PointBatch batch = batchPool.claim(TIMEOUT);
+         batch.measurement(measurement);
+         return batch;
+      }
+      catch (InterruptedException e) {
+         throw new RuntimeException(e);
+      }
+   }
+
+   /**
+    * Get the {@link SeriesCache} shared by the points of this factory, for example to
+    * monitor its hit, miss and eviction counts.
+    *
+    * @return the series cache, or {@code null} if it was disabled
+    */
+   public SeriesCache getSeriesCache() {
+      return seriesCache;
+   }
+
+   PointCache getPointCache() {
+      return pointCache;
+   }
+
    public void close() {
-      pointPool.shutdown();
+      pointCache.shutdown();
+      batchPool.shutdown();
    }
 
-   private PointFactory(final Config<Point> config) {
-      this.pointPool = new BlazePool<>(config);
-      this.pointPool.setTargetSize(512);
+   private PointFactory(final Config<Point> config, final Config<PointBatch> batchConfig, final SeriesCache seriesCache,
+                        final int magazineSize) {
+      final BlazePool<Point> pointPool = new BlazePool<>(config);
+      pointPool.setTargetSize(512);
+      this.pointCache = new PointCache(pointPool, config.getSize(), magazineSize);
+      this.batchPool = new BlazePool<>(batchConfig);
+      this.seriesCache = seriesCache;
    }
 
    /**
@@ -64,9 +124,13 @@ public class PointFactory {
     */
    public static class Builder {
       private final Config<Point> config;
+      private final Config<PointBatch> batchConfig;
+      private long seriesCacheSize = 1024 * 1024;
+      private int magazineSize = Integer.getInteger("com.zaxxer.influx4j.pointMagazineSize", 16);
 
       private Builder() {
          config = new Config<Point>().setSize(512);
+         batchConfig = new Config<PointBatch>().setSize(64).setAllocator(new BatchAllocator());
       }
 
       public Builder setSize(final int size) {
@@ -74,14 +138,59 @@ public class PointFactory {
          return this;
       }
 
+      /**
+       * Set the number of pooled {@link PointBatch} instances.  The default is 64.
+       *
+       * @param size the size of the batch pool
+       * @return this {@link Builder}
+       */
+      public Builder setBatchPoolSize(final int size) {
+         batchConfig.setSize(size);
+         return this;
+      }
+
+      /**
+       * Set the number of released points each thread caches in front of the pool, and
+       * the number handed back to producers at once by the thread that releases them,
+       * typically the flusher.  The default is 16.  A size of zero disables the per-thread
+       * caches, so that every point is claimed from and released to the pool.
+       *
+       * @param size the size of the per-thread point magazines
+       * @return this {@link Builder}
+       */
+      public Builder setMagazineSize(final int size) {
+         if (size < 0) {
+            throw new IllegalArgumentException("magazineSize cannot be negative");
+         }
+         this.magazineSize = size;
+         return this;
+      }
+
       public Builder setThreadFactory(final ThreadFactory threadFactory) {
          config.setThreadFactory(threadFactory);
+         batchConfig.setThreadFactory(threadFactory);
+         return this;
+      }
+
+      /**
+       * Set the byte budget of the {@link SeriesCache}, which caches the serialized form
+       * of recurring tag sets.  The default is 1MB.  A size of zero disables the cache.
+       *
+       * @param bytes the maximum number of bytes retained by the series cache
+       * @return this {@link Builder}
+       */
+      public Builder setSeriesCacheSize(final long bytes) {
+         if (bytes < 0) {
+            throw new IllegalArgumentException("seriesCacheSize cannot be negative");
+         }
+         this.seriesCacheSize = bytes;
          return this;
       }
 
       public PointFactory build() {
-          config.setAllocator(new PointAllocator());
-          final PointFactory pointFactory = new PointFactory(config);
+          final SeriesCache seriesCache = seriesCacheSize > 0 ? new SeriesCache(seriesCacheSize) : null;
+          config.setAllocator(new PointAllocator(seriesCache));
+          final PointFactory pointFactory = new PointFactory(config, batchConfig, seriesCache, magazineSize);
           return pointFactory;
       }
    }
@@ -91,9 +200,15 @@ public class PointFactory {
     * {@code Allocator} used by StormPot for managing poolable object lifetimes.
     */
    private static class PointAllocator implements Allocator<Point> {
+      private final SeriesCache seriesCache;
+
+      private PointAllocator(final SeriesCache seriesCache) {
+         this.seriesCache = seriesCache;
+      }
+
       @Override
       public Point allocate(final Slot slot) throws Exception {
-         return new Point(slot);
+         return new Point(slot, seriesCache);
       }
 
       @Override
@@ -101,4 +216,19 @@ public class PointFactory {
          // nothing
       }
    }
+
+   /**
+    * {@code Allocator} used by StormPot for managing {@link PointBatch} lifetimes.
+    */
+   private static class BatchAllocator implements Allocator<PointBatch> {
+      @Override
+      public PointBatch allocate(final Slot slot) throws Exception {
+         return new PointBatch(slot);
+      }
+
+      @Override
+      public void deallocate(final PointBatch poolable) throws Exception {
+         // nothing
+      }
+   }
 }
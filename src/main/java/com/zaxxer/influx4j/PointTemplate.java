@@ -0,0 +1,185 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+import static com.zaxxer.influx4j.Point.PointSerializer.keyBytes;
+import static com.zaxxer.influx4j.Point.PointSerializer.measurementBytes;
+
+/**
+ * A prepared schema for points with a fixed measurement, tag keys and typed field keys.
+ * All of the constant bytes of the line protocol, the escaped measurement, the sorted
+ * <code>,tag=</code> prefixes and the <code>field=</code> prefixes, are encoded once when the
+ * template is built.  Points created from the template are addressed by slot index, in the
+ * order the tags and fields were declared:
+ * <pre>
+ *    PointTemplate template = pointFactory.templateBuilder("cpu")
+ *       .tag("region")
+ *       .tag("host")
+ *       .doubleField("idle")
+ *       .longField("count")
+ *       .build();
+ *
+ *    template.createPoint()
+ *       .setTag(0, "us-east")
+ *       .setTag(1, "server01")
+ *       .setDouble(0, 98.5)
+ *       .setLong(1, 42)
+ *       .timestamp(now, TimeUnit.MILLISECONDS);
+ * </pre>
+ * Serializing such a point is a straight interleave of the constant segments and the
+ * formatted values, with no sorting and no escaping of keys.  Tags left unset are omitted,
+ * as are unset fields, but at least one field must be set.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public final class PointTemplate {
+   static final byte LONG = 0;
+   static final byte DOUBLE = 1;
+   static final byte STRING = 2;
+   static final byte BOOLEAN = 3;
+
+   private final PointFactory pointFactory;
+
+   final byte[] measurement;
+   final int[] tagOrder;
+   final byte[][] tagPrefixes;
+   final byte[][] fieldKeys;
+   final byte[] fieldTypes;
+
+   private PointTemplate(final PointFactory pointFactory, final Builder builder) {
+      this.pointFactory = pointFactory;
+      this.measurement = measurementBytes(builder.measurement);
+
+      final int tagCount = builder.tags.size();
+      final Integer[] order = new Integer[tagCount];
+      for (int i = 0; i < tagCount; i++) {
+         order[i] = i;
+      }
+      Arrays.sort(order, Comparator.comparing(builder.tags::get));
+
+      this.tagOrder = new int[tagCount];
+      this.tagPrefixes = new byte[tagCount][];
+      for (int i = 0; i < tagCount; i++) {
+         tagOrder[i] = order[i];
+         tagPrefixes[i] = concat(",", keyBytes(builder.tags.get(order[i])), "=");
+      }
+
+      final int fieldCount = builder.fields.size();
+      this.fieldKeys = new byte[fieldCount][];
+      this.fieldTypes = new byte[fieldCount];
+      for (int i = 0; i < fieldCount; i++) {
+         fieldKeys[i] = concat("", keyBytes(builder.fields.get(i)), "=");
+         fieldTypes[i] = builder.types.get(i);
+      }
+   }
+
+   /**
+    * Create a pooled {@link Point} bound to this template.  Set its values with
+    * {@link Point#setTag(int, String)}, {@link Point#setLong(int, long)} and friends.
+    *
+    * @return a point bound to this template
+    */
+   public Point createPoint() {
+      return pointFactory.createPoint(this);
+   }
+
+   int tagCount() {
+      return tagOrder.length;
+   }
+
+   int fieldCount() {
+      return fieldTypes.length;
+   }
+
+   private static byte[] concat(final String prefix, final byte[] bytes, final String suffix) {
+      final byte[] result = new byte[prefix.length() + bytes.length + suffix.length()];
+      System.arraycopy(prefix.getBytes(StandardCharsets.US_ASCII), 0, result, 0, prefix.length());
+      System.arraycopy(bytes, 0, result, prefix.length(), bytes.length);
+      System.arraycopy(suffix.getBytes(StandardCharsets.US_ASCII), 0, result, prefix.length() + bytes.length, suffix.length());
+      return result;
+   }
+
+
+   /** ***************************************************************************************
+    * Builder for a {@link PointTemplate}.  Call {@link PointFactory#templateBuilder(String)}
+    * to create an instance of the {@link Builder}.
+    */
+   public static class Builder {
+      private final PointFactory pointFactory;
+      private final String measurement;
+      private final List<String> tags = new ArrayList<>();
+      private final List<String> fields = new ArrayList<>();
+      private final List<Byte> types = new ArrayList<>();
+
+      Builder(final PointFactory pointFactory, final String measurement) {
+         this.pointFactory = pointFactory;
+         this.measurement = measurement;
+      }
+
+      /**
+       * Declare the next tag key, addressed by {@link Point#setTag(int, String)}.
+       */
+      public Builder tag(final String key) {
+         if (tags.contains(key)) {
+            throw new IllegalArgumentException("Tag '" + key + "' is already declared");
+         }
+         tags.add(key);
+         return this;
+      }
+
+      public Builder longField(final String field) {
+         return field(field, LONG);
+      }
+
+      public Builder doubleField(final String field) {
+         return field(field, DOUBLE);
+      }
+
+      public Builder stringField(final String field) {
+         return field(field, STRING);
+      }
+
+      public Builder booleanField(final String field) {
+         return field(field, BOOLEAN);
+      }
+
+      public PointTemplate build() {
+         if (fields.isEmpty()) {
+            throw new IllegalStateException("PointTemplate must have at least one field");
+         }
+         return new PointTemplate(pointFactory, this);
+      }
+
+      private Builder field(final String field, final byte type) {
+         if (fields.size() == Long.SIZE) {
+            throw new IllegalStateException("PointTemplate cannot have more than " + Long.SIZE + " fields");
+         }
+         if (fields.contains(field)) {
+            throw new IllegalArgumentException("Field '" + field + "' is already declared");
+         }
+         fields.add(field);
+         types.add(type);
+         return this;
+      }
+   }
+}
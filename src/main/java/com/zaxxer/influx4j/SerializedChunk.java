@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * A chunk of line protocol serialized by a producer thread, when a connection serializes
+ * points on write.  A producer appends whole lines to the chunk it owns; once the chunk is
+ * sealed, either by the producer when it is full or by the flusher sweeping the chunks of
+ * idle producers, it is queued and copied into an HTTP body as a single unit.
+ * <p>
+ * The state guards the hand-off between the owning producer and the flusher, and neither
+ * side ever waits for the other:
+ * <ul>
+ *   <li>the producer holds the chunk {@code WRITING} for the duration of each append;</li>
+ *   <li>the flusher can only seal a chunk that is {@code OPEN}, and the producer finds out
+ *       when its next append fails to begin;</li>
+ *   <li>a chunk is recycled only once it has been sent <i>and</i> its producer has let go of
+ *       it, so a producer holding a stale reference can never append to a chunk that has
+ *       been handed to another producer.</li>
+ * </ul>
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class SerializedChunk extends Encodable {
+   private static final int OPEN = 0;
+   private static final int WRITING = 1;
+   private static final int SEALED = 2;     // sealed by the flusher, still held by the producer
+   private static final int ABANDONED = 3;  // sealed, and let go of by the producer
+   private static final int SENT = 4;       // sent, still held by the producer
+
+   private final AtomicInteger state;
+   private final ChunkRecycler recycler;
+   final ByteBuffer buffer;
+
+   SerializedChunk(final int capacity, final ChunkRecycler recycler) {
+      this.state = new AtomicInteger(OPEN);
+      this.recycler = recycler;
+      this.buffer = ByteBuffer.allocate(capacity);
+   }
+
+   /**
+    * Called by the owning producer before appending.  If this fails the flusher has sealed
+    * the chunk, and the producer must {@link #abandon()} it and append to a new one.
+    *
+    * @return true if the producer may append to this chunk
+    */
+   boolean beginWrite() {
+      return state.compareAndSet(OPEN, WRITING);
+   }
+
+   /**
+    * Called by the owning producer after appending, publishing the appended lines.
+    */
+   void endWrite() {
+      state.lazySet(OPEN);
+   }
+
+   /**
+    * Called by the owning producer, instead of {@link #endWrite()}, to seal a full chunk
+    * before queueing it.
+    */
+   void sealFull() {
+      state.lazySet(ABANDONED);
+   }
+
+   /**
+    * Called by the owning producer to let go of a chunk sealed by the flusher.
+    */
+   void abandon() {
+      if (!state.compareAndSet(SEALED, ABANDONED) && state.compareAndSet(SENT, OPEN)) {
+         recycle();
+      }
+   }
+
+   /**
+    * Called by the flusher to take a partially filled chunk away from an idle producer.
+    *
+    * @return true if the chunk was sealed, and must now be queued by the caller
+    */
+   boolean trySeal() {
+      return buffer.position() > 0 && state.compareAndSet(OPEN, SEALED);
+   }
+
+   boolean isEmpty() {
+      return buffer.position() == 0;
+   }
+
+   int capacity() {
+      return buffer.capacity();
+   }
+
+   @Override
+   int nextSize(final Precision precision) {
+      return buffer.position();
+   }
+
+   @Override
+   boolean encodeNext(final ByteBuffer target, final Precision precision) {
+      target.put(buffer.array(), 0, buffer.position());
+      return true;
+   }
+
+   /**
+    * Called by the flusher once the chunk has been sent.
+    */
+   @Override
+   public void release() {
+      if (!state.compareAndSet(SEALED, SENT) && state.compareAndSet(ABANDONED, OPEN)) {
+         recycle();
+      }
+   }
+
+   private void recycle() {
+      buffer.clear();
+      recycler.recycle(this);
+   }
+
+   /**
+    * Receives chunks once their contents have been sent.
+    */
+   interface ChunkRecycler {
+      void recycle(SerializedChunk chunk);
+   }
+}
@@ -0,0 +1,224 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache mapping a {@link Point}'s tag set, in insertion order, to its fully sorted
+ * and escaped <code>,k=v,k=v</code> line protocol segment.  Lookups are lock-free;
+ * inserts take a lock and evict entries with the CLOCK algorithm until the cache is
+ * within its byte budget.  Use the hit, miss and eviction counters to size the budget
+ * against the series cardinality of your application.
+ * <p>
+ * Every miss is followed by an insert, which copies the segment into a new array under the
+ * lock of the cache.  A point is serialized on the flusher thread unless the connection
+ * serializes points on write or queues lines in a ring buffer, in which case the producer
+ * threads take that lock, and contend for it while the cache misses.  A cache is shared by
+ * the points of a {@link PointFactory}; under high series cardinality, size it so that
+ * misses stay rare, or give groups of producer threads factories of their own.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public final class SeriesCache {
+   private static final int ENTRY_OVERHEAD = 64;
+
+   private final AtomicReferenceArray<Entry> table;
+   private final int mask;
+   private final long maxBytes;
+
+   private final LongAdder hits;
+   private final LongAdder misses;
+   private final LongAdder evictions;
+
+   private volatile long usedBytes;
+   private int clockHand;
+
+   SeriesCache(final long maxBytes) {
+      final int buckets = (int) Math.min(1 << 20, Math.max(16, Long.highestOneBit(maxBytes / 128)));
+      this.table = new AtomicReferenceArray<>(buckets);
+      this.mask = buckets - 1;
+      this.maxBytes = maxBytes;
+      this.hits = new LongAdder();
+      this.misses = new LongAdder();
+      this.evictions = new LongAdder();
+   }
+
+   /**
+    * Get the number of lookups that found a cached series.
+    *
+    * @return the hit count
+    */
+   public long getHitCount() {
+      return hits.sum();
+   }
+
+   /**
+    * Get the number of lookups that did not find a cached series.
+    *
+    * @return the miss count
+    */
+   public long getMissCount() {
+      return misses.sum();
+   }
+
+   /**
+    * Get the number of series evicted to stay within the byte budget.
+    *
+    * @return the eviction count
+    */
+   public long getEvictionCount() {
+      return evictions.sum();
+   }
+
+   /**
+    * Get the approximate number of bytes retained by the cached series.
+    *
+    * @return the retained byte count
+    */
+   public long getByteSize() {
+      return usedBytes;
+   }
+
+   /**
+    * Get the byte budget of this cache.
+    *
+    * @return the maximum number of bytes retained by the cache
+    */
+   public long getMaxByteSize() {
+      return maxBytes;
+   }
+
+   byte[] get(final Point point) {
+      final int hash = hash(point);
+      for (Entry entry = table.get(hash & mask); entry != null; entry = entry.next) {
+         if (entry.hash == hash && entry.matches(point)) {
+            if (!entry.referenced) {
+               entry.referenced = true;
+            }
+            hits.increment();
+            return entry.bytes;
+         }
+      }
+
+      misses.increment();
+      return null;
+   }
+
+   synchronized void put(final Point point, final byte[] bytes) {
+      final int count = point.tagCount();
+      final String[] names = new String[count];
+      final String[] values = new String[count];
+      for (int i = 0; i < count; i++) {
+         names[i] = point.tagName(i);
+         values[i] = point.tagValue(i);
+      }
+
+      final int hash = hash(point);
+      final int ndx = hash & mask;
+      for (Entry entry = table.get(ndx); entry != null; entry = entry.next) {
+         if (entry.hash == hash && entry.matches(point)) {
+            return;
+         }
+      }
+
+      final Entry entry = new Entry(hash, names, values, bytes);
+      if (entry.weight > maxBytes) {
+         return;
+      }
+
+      evict(entry.weight);
+
+      entry.next = table.get(ndx);
+      table.set(ndx, entry);
+      usedBytes += entry.weight;
+   }
+
+   /**
+    * Sweep the clock hand across the buckets until there is room for {@code weight} more
+    * bytes.  Entries referenced since the last sweep get a second chance.
+    */
+   private void evict(final int weight) {
+      while (usedBytes + weight > maxBytes) {
+         final int ndx = clockHand;
+         clockHand = (clockHand + 1) & mask;
+
+         Entry prev = null;
+         for (Entry entry = table.get(ndx); entry != null; entry = entry.next) {
+            if (entry.referenced) {
+               entry.referenced = false;
+               prev = entry;
+            }
+            else {
+               if (prev == null) {
+                  table.set(ndx, entry.next);
+               }
+               else {
+                  prev.next = entry.next;
+               }
+               usedBytes -= entry.weight;
+               evictions.increment();
+            }
+         }
+      }
+   }
+
+   private static int hash(final Point point) {
+      int h = 0;
+      final int count = point.tagCount();
+      for (int i = 0; i < count; i++) {
+         h = 31 * h + point.tagName(i).hashCode();
+         h = 31 * h + point.tagValue(i).hashCode();
+      }
+      return h ^ (h >>> 16);
+   }
+
+   private static final class Entry {
+      private final int hash;
+      private final int weight;
+      private final String[] names;
+      private final String[] values;
+      private final byte[] bytes;
+
+      private boolean referenced;
+      private Entry next;
+
+      private Entry(final int hash, final String[] names, final String[] values, final byte[] bytes) {
+         this.hash = hash;
+         this.names = names;
+         this.values = values;
+         this.bytes = bytes;
+         this.weight = ENTRY_OVERHEAD + bytes.length + 16 * names.length;
+      }
+
+      private boolean matches(final Point point) {
+         if (point.tagCount() != names.length) {
+            return false;
+         }
+
+         for (int i = 0; i < names.length; i++) {
+            final String name = point.tagName(i);
+            final String value = point.tagValue(i);
+            if ((name != names[i] && !name.equals(names[i])) || (value != values[i] && !value.equals(values[i]))) {
+               return false;
+            }
+         }
+         return true;
+      }
+   }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+
+/**
+ * An append-only file of the lines that overflowed the write queue of a connection.  The
+ * file starts with the DML header of the <code>influx -import</code> command, so it can be
+ * imported as is once the server has caught up.  The file is created on the first spill.
+ * <p>
+ * Appends are serialized by a lock, which is only ever taken by a producer that found the
+ * queue full.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class SpillFile {
+   private static final int BUFFER_SIZE = 64 * 1024;
+
+   private final File directory;
+   private final String database;
+   private final String retentionPolicy;
+
+   private FileChannel channel;
+   private ByteBuffer buffer;
+   private File file;
+
+   SpillFile(final File directory, final String database, final String retentionPolicy) {
+      this.directory = directory;
+      this.database = database;
+      this.retentionPolicy = retentionPolicy;
+   }
+
+   /**
+    * Append every line of an {@link Encodable}.  The caller still owns it, and must
+    * release it.
+    */
+   synchronized void append(final Encodable encodable, final Precision precision) throws IOException {
+      if (channel == null) {
+         open();
+      }
+
+      buffer.clear();
+      boolean done;
+      do {
+         final int size = encodable.nextSize(precision);
+         if (size > buffer.remaining()) {
+            drain();
+            if (size > buffer.capacity()) {
+               buffer = ByteBuffer.allocate(size);
+            }
+         }
+         done = encodable.encodeNext(buffer, precision);
+      } while (!done);
+
+      drain();
+   }
+
+   synchronized File getFile() {
+      return file;
+   }
+
+   synchronized void close() throws IOException {
+      if (channel != null) {
+         channel.close();
+         channel = null;
+      }
+   }
+
+   private void open() throws IOException {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Cannot create spill directory " + directory);
+      }
+
+      file = new File(directory, "influx4j-" + database + "-" + System.currentTimeMillis() + ".lp");
+      channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+      buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+      buffer.put(("# DML\n# CONTEXT-DATABASE: " + database + "\n# CONTEXT-RETENTION-POLICY: " + retentionPolicy + "\n")
+                    .getBytes(StandardCharsets.UTF_8));
+      drain();
+   }
+
+   private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+         channel.write(buffer);
+      }
+      buffer.clear();
+   }
+}
@@ -0,0 +1,392 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * A write-ahead log of the batch bodies a connection could not send, kept in memory-mapped
+ * segment files in the spill directory, to be replayed in order once the server recovers.
+ * <p>
+ * A segment is a file of a fixed size, holding records one after the other, each an
+ * {@code int} length, the {@code int} CRC-32 of the body, and the body.  The length is
+ * written last, so a record is only there once it is whole; the rest of a segment is zeros,
+ * which read as the end.  A replayed record is marked consumed by negating its length in
+ * place, so that it is not replayed again.  When a segment is full the log rotates to a new
+ * one, and once every record of a segment has been consumed the file is deleted.
+ * <p>
+ * When the log is opened it recovers the segments left by a previous process, in order,
+ * up to the first record that is torn or fails its CRC in each.  A crash of the process
+ * loses nothing that was appended, because the pages of a mapped file belong to the
+ * operating system; the segments are forced to the disk as they fill, and when the log is
+ * closed, against a crash of the machine.
+ * <p>
+ * The segments of a log are named for the endpoint, database and retention policy, so the
+ * logs of different servers can share a spill directory.  A log holds an exclusive lock on
+ * a lock file of the same name until it is closed, so that two processes never append to,
+ * or replay and delete, the same segments; the lock goes with the process if it crashes.
+ * <p>
+ * Appends and replays may come from different flushers of an endpoint, and are serialized
+ * by a lock.  Only one record is replayed at a time.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+final class SpillLog {
+   private static final int RECORD_HEADER_SIZE = 8;
+   private static final String SUFFIX = ".spill";
+   private static final String LOCK = "lock";
+
+   private final File directory;
+   private final String prefix;
+   private final int segmentSize;
+   private final CRC32 crc;
+   private final FileChannel lockChannel;
+   private final FileLock lock;
+
+   // The segments holding records not yet consumed, oldest first; the last is appended to
+   private final ArrayDeque<Segment> segments;
+   private long nextSegment;
+   private boolean appendable;
+   private boolean closed;
+
+   // The record being replayed, if any
+   private int replayOffset;
+   private int replayLength;
+   private boolean replaying;
+
+   private long records;
+   private long bytes;
+
+   /**
+    * Open the log of an endpoint, database and retention policy, recovering the segments it
+    * left.
+    *
+    * @param directory the spill directory
+    * @param endpoint the host and port of the server the batches are written to
+    * @param database the database the batches are written to
+    * @param retentionPolicy the retention policy the batches are written to
+    * @param segmentSize the size of a segment file in bytes
+    * @throws IOException if the log cannot be opened, or is open in another process
+    */
+   SpillLog(final File directory, final String endpoint, final String database, final String retentionPolicy, final int segmentSize) throws IOException {
+      if (!directory.isDirectory() && !directory.mkdirs()) {
+         throw new IOException("Cannot create spill directory " + directory);
+      }
+
+      this.directory = directory;
+      this.prefix = "influx4j-" + fileName(endpoint) + "-" + fileName(database) + "-" + fileName(retentionPolicy) + "-";
+      this.segmentSize = segmentSize;
+      this.crc = new CRC32();
+      this.segments = new ArrayDeque<>();
+
+      final File lockFile = new File(directory, prefix + LOCK);
+      this.lockChannel = FileChannel.open(lockFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+      FileLock lock = null;
+      try {
+         lock = lockChannel.tryLock();
+      }
+      catch (final OverlappingFileLockException e) {
+         // Held by another log of this process
+      }
+      if (lock == null) {
+         lockChannel.close();
+         throw new IOException("Spill log " + lockFile + " is in use by another log or process");
+      }
+      this.lock = lock;
+
+      try {
+         recover();
+      }
+      catch (final IOException e) {
+         lockChannel.close();
+         throw e;
+      }
+   }
+
+   /**
+    * Append a batch body.
+    *
+    * @param body the body, between its position and limit, which is left unchanged
+    * @throws IOException if the body cannot be appended, or the log is closed
+    */
+   synchronized void append(final ByteBuffer body) throws IOException {
+      if (closed) {
+         throw new IOException("Spill log " + prefix + " is closed");
+      }
+
+      final int length = body.remaining();
+      Segment segment = (appendable ? segments.peekLast() : null);
+      if (segment == null || segment.end + RECORD_HEADER_SIZE + length > segment.buffer.capacity()) {
+         if (segment != null) {
+            segment.buffer.force();
+         }
+         segment = createSegment(Math.max(segmentSize, RECORD_HEADER_SIZE + length));
+         segments.addLast(segment);
+         appendable = true;
+      }
+
+      final MappedByteBuffer buffer = segment.buffer;
+      final int start = segment.end;
+      final ByteBuffer source = body.duplicate();
+      crc.reset();
+      crc.update(source);
+      source.position(body.position());
+
+      buffer.position(start + RECORD_HEADER_SIZE);
+      buffer.put(source);
+      buffer.putInt(start + 4, (int) crc.getValue());
+      // The length commits the record
+      buffer.putInt(start, length);
+      segment.end = start + RECORD_HEADER_SIZE + length;
+      segment.live++;
+
+      records++;
+      bytes += length;
+   }
+
+   /**
+    * Claim the oldest record not yet consumed, for replay.  It stays claimed, and no other
+    * record can be claimed, until {@link #release(boolean)} is called.
+    *
+    * @return a buffer of the body of the record, valid until it is released, or null if the
+    *         log is empty or a record is already claimed
+    */
+   synchronized ByteBuffer claim() {
+      if (replaying) {
+         return null;
+      }
+
+      for (Segment segment = segments.peekFirst(); segment != null; segment = segments.peekFirst()) {
+         final int offset = segment.nextLive();
+         if (offset >= 0) {
+            replayOffset = offset;
+            replayLength = segment.buffer.getInt(offset);
+            replaying = true;
+
+            final ByteBuffer body = segment.buffer.duplicate();
+            body.limit(offset + RECORD_HEADER_SIZE + replayLength);
+            body.position(offset + RECORD_HEADER_SIZE);
+            return body;
+         }
+         if (!retire(segment)) {
+            break;
+         }
+      }
+      return null;
+   }
+
+   /**
+    * Release the record claimed for replay.
+    *
+    * @param consumed true if the record was replayed and must not be replayed again, false
+    *                 to leave it as the oldest record
+    */
+   synchronized void release(final boolean consumed) {
+      if (!replaying) {
+         return;
+      }
+
+      replaying = false;
+      if (consumed) {
+         final Segment segment = segments.peekFirst();
+         segment.buffer.putInt(replayOffset, -replayLength);
+         segment.start = replayOffset + RECORD_HEADER_SIZE + replayLength;
+         segment.live--;
+         records--;
+         bytes -= replayLength;
+         if (segment.live == 0) {
+            retire(segment);
+         }
+      }
+   }
+
+   /**
+    * Get the number of records not yet consumed.
+    */
+   synchronized long size() {
+      return records;
+   }
+
+   /**
+    * Get the number of body bytes in the records not yet consumed.
+    */
+   synchronized long bytes() {
+      return bytes;
+   }
+
+   /**
+    * Force the segments to the disk, stop appending, and release the lock.  The records
+    * not yet consumed are recovered when the log is opened again.
+    */
+   synchronized void close() {
+      for (final Segment segment : segments) {
+         segment.buffer.force();
+      }
+      appendable = false;
+      closed = true;
+
+      if (lockChannel.isOpen()) {
+         try {
+            lock.release();
+            lockChannel.close();
+         }
+         catch (final IOException io) {
+            io.printStackTrace();
+         }
+      }
+   }
+
+   /**
+    * Make a name safe to use in a file name on any platform, so that it cannot name a path
+    * outside the spill directory.
+    */
+   private static String fileName(final String name) {
+      return name.replaceAll("[^A-Za-z0-9.-]", "_");
+   }
+
+   /**
+    * Delete a segment once nothing is left to replay in it, unless it is still appended to.
+    *
+    * @return true if the segment was deleted
+    */
+   private boolean retire(final Segment segment) {
+      if (segment.live > 0 || (appendable && segment == segments.peekLast())) {
+         return false;
+      }
+
+      segments.remove(segment);
+      if (!segment.file.delete()) {
+         // A mapped file cannot be deleted on some platforms; it is recovered as empty
+         segment.file.deleteOnExit();
+      }
+      return true;
+   }
+
+   private void recover() throws IOException {
+      final File[] files = directory.listFiles((dir, name) -> name.startsWith(prefix) && name.endsWith(SUFFIX));
+      if (files != null) {
+         Arrays.sort(files);
+         for (final File file : files) {
+            final String name = file.getName();
+            try {
+               nextSegment = Math.max(nextSegment, Long.parseLong(name.substring(prefix.length(), name.length() - SUFFIX.length())) + 1);
+            }
+            catch (final NumberFormatException e) {
+               continue;
+            }
+
+            final Segment segment = new Segment(file, map(file, file.length()));
+            segment.scan(crc);
+            if (segment.live > 0) {
+               segments.addLast(segment);
+               records += segment.live;
+               bytes += segment.liveBytes;
+            }
+            else {
+               file.delete();
+            }
+         }
+      }
+   }
+
+   private Segment createSegment(final int size) throws IOException {
+      final File file = new File(directory, prefix + String.format("%010d", nextSegment++) + SUFFIX);
+      return new Segment(file, map(file, size));
+   }
+
+   private static MappedByteBuffer map(final File file, final long size) throws IOException {
+      try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+         return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+      }
+   }
+
+   /**
+    * A segment file, mapped for as long as it has records to replay.
+    */
+   private static final class Segment {
+      private final File file;
+      private final MappedByteBuffer buffer;
+      // The offset of the first record that may be live, and the offset after the last record
+      private int start;
+      private int end;
+      private int live;
+      private long liveBytes;
+
+      private Segment(final File file, final MappedByteBuffer buffer) {
+         this.file = file;
+         this.buffer = buffer;
+      }
+
+      /**
+       * Find the records of a recovered segment, up to the first that is torn or corrupt.
+       */
+      private void scan(final CRC32 crc) {
+         int offset = 0;
+         while (offset + RECORD_HEADER_SIZE <= buffer.capacity()) {
+            final int length = buffer.getInt(offset);
+            final int size = Math.abs(length);
+            if (length == 0 || length == Integer.MIN_VALUE || size > buffer.capacity() - offset - RECORD_HEADER_SIZE) {
+               break;
+            }
+
+            if (length > 0) {
+               final ByteBuffer body = buffer.duplicate();
+               body.limit(offset + RECORD_HEADER_SIZE + size);
+               body.position(offset + RECORD_HEADER_SIZE);
+               crc.reset();
+               crc.update(body);
+               if ((int) crc.getValue() != buffer.getInt(offset + 4)) {
+                  break;
+               }
+               live++;
+               liveBytes += size;
+            }
+            offset += RECORD_HEADER_SIZE + size;
+         }
+         end = offset;
+      }
+
+      /**
+       * Find the first record not yet consumed.
+       *
+       * @return its offset, or -1 if there is none
+       */
+      private int nextLive() {
+         int offset = start;
+         while (offset < end) {
+            final int length = buffer.getInt(offset);
+            if (length > 0) {
+               start = offset;
+               return offset;
+            }
+            offset += RECORD_HEADER_SIZE - length;
+         }
+         start = end;
+         return -1;
+      }
+   }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Metrics of the writes of a connection.  The counters count the decisions taken by the
+ * {@link InfluxDB.OverflowPolicy} when the write queue is full.  A write is counted once, by
+ * the decision that settled it.  A write is a {@link Point} or a {@link PointBatch}, or,
+ * when the connection serializes points on write, a chunk of serialized lines.
+ * <p>
+ * The histograms describe the batches sent by the flusher, for tuning the latency deadline
+ * and the socket buffer size of the connection.
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public final class WriteMetrics {
+   final LongAdder failed;
+   final LongAdder blocked;
+   final LongAdder timedOut;
+   final LongAdder droppedNewest;
+   final LongAdder droppedOldest;
+   final LongAdder malformed;
+   final LongAdder spilled;
+   final LongAdder spilledBatches;
+   final LongAdder replayedBatches;
+   final LongAdder droppedBatches;
+   final LongAdder rejectedBatches;
+   final LongAdder bodyBytes;
+   final LongAdder sentBytes;
+   final Histogram batchSize;
+   final Histogram queueWait;
+   final Histogram queueDepth;
+
+   WriteMetrics() {
+      this.failed = new LongAdder();
+      this.blocked = new LongAdder();
+      this.timedOut = new LongAdder();
+      this.droppedNewest = new LongAdder();
+      this.droppedOldest = new LongAdder();
+      this.malformed = new LongAdder();
+      this.spilled = new LongAdder();
+      this.spilledBatches = new LongAdder();
+      this.replayedBatches = new LongAdder();
+      this.droppedBatches = new LongAdder();
+      this.rejectedBatches = new LongAdder();
+      this.bodyBytes = new LongAdder();
+      this.sentBytes = new LongAdder();
+      this.batchSize = new Histogram();
+      this.queueWait = new Histogram();
+      this.queueDepth = new Histogram();
+   }
+
+   /**
+    * Get the number of writes rejected with an exception by the {@code FAIL} policy.
+    *
+    * @return the failed write count
+    */
+   public long getFailedCount() {
+      return failed.sum();
+   }
+
+   /**
+    * Get the number of writes that waited for room and were eventually queued, by the
+    * {@code BLOCK} and {@code SPIN_THEN_PARK} policies.
+    *
+    * @return the blocked write count
+    */
+   public long getBlockedCount() {
+      return blocked.sum();
+   }
+
+   /**
+    * Get the number of writes dropped because there was still no room when the overflow
+    * timeout expired.  A {@link PointBatch} written to a ring buffer is counted here when
+    * the rest of its rows are dropped, after the first went in.
+    *
+    * @return the timed out write count
+    */
+   public long getTimedOutCount() {
+      return timedOut.sum();
+   }
+
+   /**
+    * Get the number of writes dropped instead of being queued, by the {@code DROP_NEWEST}
+    * policy or because they could not be spilled.
+    *
+    * @return the dropped newest write count
+    */
+   public long getDroppedNewestCount() {
+      return droppedNewest.sum();
+   }
+
+   /**
+    * Get the number of queued writes dropped to make room, by the {@code DROP_OLDEST}
+    * policy.
+    *
+    * @return the dropped oldest write count
+    */
+   public long getDroppedOldestCount() {
+      return droppedOldest.sum();
+   }
+
+   /**
+    * Get the number of queued writes dropped because the flusher could not serialize them,
+    * such as a {@link Point} without fields.  The writes queued around them are still sent.
+    *
+    * @return the malformed write count
+    */
+   public long getMalformedCount() {
+      return malformed.sum();
+   }
+
+   /**
+    * Get the number of writes appended to the spill file, by the {@code SPILL_TO_DISK}
+    * policy.
+    *
+    * @return the spilled write count
+    */
+   public long getSpilledCount() {
+      return spilled.sum();
+   }
+
+   /**
+    * Get the number of batches appended to the spill log, because the server could not be
+    * reached or the queue was above the spill watermark.
+    *
+    * @return the spilled batch count
+    */
+   public long getSpilledBatchCount() {
+      return spilledBatches.sum();
+   }
+
+   /**
+    * Get the number of batches replayed from the spill log and accepted by the server.  A
+    * replayed batch the server rejects is counted as rejected instead, and not replayed again.
+    *
+    * @return the replayed batch count
+    */
+   public long getReplayedBatchCount() {
+      return replayedBatches.sum();
+   }
+
+   /**
+    * Get the number of batches lost without a spill log to keep them: sent while the server
+    * could not be reached, in flight when the connection failed, or answered with an error
+    * worth retrying.  With a spill log, a batch is only counted if it cannot be appended.
+    *
+    * @return the dropped batch count
+    */
+   public long getDroppedBatchCount() {
+      return droppedBatches.sum();
+   }
+
+   /**
+    * Get the number of batches the server answered with a client error that sending them
+    * again cannot fix, such as {@code 400} for a malformed line or {@code 413} for a body
+    * that is too large.  They are neither spilled nor replayed.
+    *
+    * @return the rejected batch count
+    */
+   public long getRejectedBatchCount() {
+      return rejectedBatches.sum();
+   }
+
+   /**
+    * Get the number of bytes of line protocol sent in batch bodies, before compression.
+    *
+    * @return the uncompressed body byte count
+    */
+   public long getBodyBytes() {
+      return bodyBytes.sum();
+   }
+
+   /**
+    * Get the number of bytes sent in batch bodies, after compression.  This is the same as
+    * {@link #getBodyBytes()} unless compression is enabled.
+    *
+    * @return the sent body byte count
+    */
+   public long getSentBytes() {
+      return sentBytes.sum();
+   }
+
+   /**
+    * Get the histogram of the body sizes, in bytes, of the batches sent by the flusher.
+    *
+    * @return the batch size histogram
+    */
+   public Histogram getBatchSizeHistogram() {
+      return batchSize;
+   }
+
+   /**
+    * Get the histogram of how long, in nanoseconds, the oldest queued write waited for the
+    * flusher to start draining the queue.
+    *
+    * @return the queue wait histogram
+    */
+   public Histogram getQueueWaitHistogram() {
+      return queueWait;
+   }
+
+   /**
+    * Get the histogram of the number of writes queued when the flusher starts each batch.
+    * It is not recorded when lines are queued in a ring buffer.
+    *
+    * @return the queue depth histogram
+    */
+   public Histogram getQueueDepthHistogram() {
+      return queueDepth;
+   }
+}
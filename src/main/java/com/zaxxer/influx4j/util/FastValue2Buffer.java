@@ -16,16 +16,10 @@
 
 package com.zaxxer.influx4j.util;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
-import java.util.concurrent.TimeUnit;
 
-import stormpot.Allocator;
-import stormpot.BlazePool;
-import stormpot.Config;
-import stormpot.Slot;
-import stormpot.Timeout;
-
-import com.zaxxer.influx4j.util.fastdouble.FastDtoaBuffer;
+import com.zaxxer.influx4j.util.fastdouble.RyuDouble;
 
  /**
  * @author brett.wooldridge at gmail.com
@@ -63,81 +57,109 @@ public class FastValue2Buffer {
            1000000000000000000L };
    //      10000000000000000000L    -- too big for signed long
 
-   private static final Timeout TIMEOUT = new Timeout(Long.MAX_VALUE, TimeUnit.DAYS);
-
-   private static final BlazePool<FastDtoaBuffer> dtoaPool;
-
-   private static final int NO_NEGATIVE_OFFSET = 0;
-   private static final int NEGATIVE_OFFSET = 1;
-
    private static final byte[] LONG_MINVALUE_BYTES = String.valueOf(Long.MIN_VALUE).getBytes();
 
+   // Tens and ones digits of 00..99
+   private static final byte[] DIGIT_TENS = new byte[100];
+   private static final byte[] DIGIT_ONES = new byte[100];
+
    static {
-      final Config<FastDtoaBuffer> config = new Config<>()
-         .setAllocator(new FastDoubleAllocator())
-         .setSize(1024)
-         .setThreadFactory(r -> {
-            Thread t = new Thread(r, "StormPot FastDtoaBuffer Pool");
-            t.setDaemon(true);
-            return t;
-         });
-      dtoaPool = new BlazePool<>(config);
+      for (int i = 0; i < 100; i++) {
+         DIGIT_TENS[i] = (byte) ('0' + i / 10);
+         DIGIT_ONES[i] = (byte) ('0' + i % 10);
+      }
    }
 
    private FastValue2Buffer() {
    }
 
    public static void writeDoubleToBuffer(final double value, final ByteBuffer buffer) {
-      try (FastDtoaBuffer dtoaBuffer = dtoaPool.claim(TIMEOUT)) {
-         dtoaBuffer.setBuffer(buffer).format(value);
-      }
-      catch (InterruptedException e) {
-         throw new RuntimeException(e);
-      }
+      RyuDouble.format(value, buffer);
    }
 
    public static void writeLongToBuffer(final long value, final ByteBuffer buffer) {
-      final long v;
-      final int negOffset;
-      if (value >= 0) {
-         v = value;
-         negOffset = NO_NEGATIVE_OFFSET;
-      }
-      else if (value == Long.MIN_VALUE) {
+      if (value == Long.MIN_VALUE) {
          buffer.put(LONG_MINVALUE_BYTES);
          return;
       }
-      else {
-         v = -value;
+
+      final long v = Math.abs(value);
+      final int len = numberDigits(v);
+      final int sign = value < 0 ? 1 : 0;
+      if (len + sign > buffer.remaining()) {
+         throw new BufferOverflowException();
+      }
+
+      if (sign != 0) {
          buffer.put((byte) '-');
-         negOffset = NEGATIVE_OFFSET;
       }
 
       final int offset = buffer.position();
-      final int len = numberDigits(v);
-      final byte[] bytes = buffer.array();
+      writeDigits(buffer, offset + len, v);
+      buffer.position(offset + len);
+   }
 
-      writeNumber(bytes, len, v, offset);
-      buffer.position(buffer.position() + len + negOffset);
+   /**
+    * Get the number of bytes {@link #writeDoubleToBuffer(double, ByteBuffer)} would write.
+    */
+   public static int doubleLength(final double value) {
+      return RyuDouble.length(value);
    }
 
-   private static void writeNumber(final byte[] buffer, final int len, final long value, final int offset) {
-      switch (len) {
-         case 1:
-            buffer[offset] = (byte) ('0' + value);
-            break;
-         default:
-            writeChar(buffer, len, value, offset);
-            break;
+   /**
+    * Get the number of bytes {@link #writeLongToBuffer(long, ByteBuffer)} would write.
+    */
+   public static int longLength(final long value) {
+      if (value == Long.MIN_VALUE) {
+         return LONG_MINVALUE_BYTES.length;
       }
+
+      return numberDigits(Math.abs(value)) + (value < 0 ? 1 : 0);
    }
 
-   private static void writeChar(final byte[] buffer, final int len, final long value, final int offset) {
-      final long div = value / 10L;
-      final long rem = value % 10L;
-      buffer[len - 1 + offset] = (byte) ('0' + rem);
+   /**
+    * Write the digits of a non-negative value backwards from {@code end}, two at a time.
+    * The value is cut into chunks of eight digits with one long division each, so a 19-digit
+    * nanosecond timestamp costs two long divisions and the rest is int arithmetic.
+    */
+   private static void writeDigits(final ByteBuffer buffer, int end, long value) {
+      while (value >= 100_000_000L) {
+         final long q = value / 100_000_000L;
+         end -= 8;
+         writeEightDigits(buffer, end, (int) (value - q * 100_000_000L));
+         value = q;
+      }
+
+      int v = (int) value;
+      while (v >= 100) {
+         final int q = v / 100;
+         end -= 2;
+         writeTwoDigits(buffer, end, v - q * 100);
+         v = q;
+      }
+
+      if (v >= 10) {
+         writeTwoDigits(buffer, end - 2, v);
+      }
+      else {
+         buffer.put(end - 1, (byte) ('0' + v));
+      }
+   }
 
-      writeNumber(buffer, len - 1, div, offset);
+   private static void writeEightDigits(final ByteBuffer buffer, final int pos, final int value) {
+      final int high = value / 10000;
+      final int low = value - high * 10000;
+      final int hh = high / 100;
+      final int lh = low / 100;
+      writeTwoDigits(buffer, pos, hh);
+      writeTwoDigits(buffer, pos + 2, high - hh * 100);
+      writeTwoDigits(buffer, pos + 4, lh);
+      writeTwoDigits(buffer, pos + 6, low - lh * 100);
+   }
+
+   private static void writeTwoDigits(final ByteBuffer buffer, final int pos, final int value) {
+      buffer.put(pos, DIGIT_TENS[value]);
+      buffer.put(pos + 1, DIGIT_ONES[value]);
    }
 
    private static int log2(long value) {
@@ -161,20 +183,4 @@ public class FastValue2Buffer {
       }
       return 1 + t - (value < pow10 ? 1 : 0);
    }
-
-
-   /**
-    * {@code Allocator} used by StormPot for managing poolable object lifetimes.
-    */
-    private static class FastDoubleAllocator implements Allocator<FastDtoaBuffer> {
-      @Override
-      public FastDtoaBuffer allocate(final Slot slot) throws Exception {
-         return new FastDtoaBuffer(slot);
-      }
-
-      @Override
-      public void deallocate(final FastDtoaBuffer poolable) throws Exception {
-         // nothing
-      }
-   }
 }
@@ -0,0 +1,461 @@
+/*
+ * Copyright 2018 Ulf Adams
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j.util.fastdouble;
+
+import java.math.BigInteger;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Shortest round-trip double to decimal conversion using the Ryu algorithm, writing
+ * directly into a {@link ByteBuffer}.  Unlike Grisu3, Ryu never needs a fallback, and
+ * all of its state lives in primitive locals, so it is thread-safe and garbage-free.
+ * <p>
+ * The output format follows the JavaScript conventions used by {@link FastDtoaBuffer}:
+ * plain decimal notation for decimal exponents in [-5, 21], otherwise exponential
+ * notation such as {@code 1.5e+300}.  Integral values are written without a fraction.
+ * <p>
+ * Derived from the Java reference implementation by Ulf Adams,
+ * https://github.com/ulfjack/ryu
+ *
+ * @author brett.wooldridge at gmail.com
+ */
+public final class RyuDouble {
+   private static final int DOUBLE_MANTISSA_BITS = 52;
+   private static final long DOUBLE_MANTISSA_MASK = (1L << DOUBLE_MANTISSA_BITS) - 1;
+
+   private static final int DOUBLE_EXPONENT_BITS = 11;
+   private static final int DOUBLE_EXPONENT_MASK = (1 << DOUBLE_EXPONENT_BITS) - 1;
+   private static final int DOUBLE_EXPONENT_BIAS = (1 << (DOUBLE_EXPONENT_BITS - 1)) - 1;
+
+   private static final int POS_TABLE_SIZE = 326;
+   private static final int NEG_TABLE_SIZE = 291;
+
+   private static final int POW5_BITCOUNT = 121; // max 3*31 = 124
+   private static final int POW5_QUARTER_BITCOUNT = 31;
+   private static final int[][] POW5_SPLIT = new int[POS_TABLE_SIZE][4];
+
+   private static final int POW5_INV_BITCOUNT = 122; // max 3*31 = 124
+   private static final int POW5_INV_QUARTER_BITCOUNT = 31;
+   private static final int[][] POW5_INV_SPLIT = new int[NEG_TABLE_SIZE][4];
+
+   private static final byte[] ZERO = { (byte) '0' };
+   private static final byte[] NAN = "NaN".getBytes();
+   private static final byte[] POSITIVE_INFINITY = "Infinity".getBytes();
+   private static final byte[] NEGATIVE_INFINITY = "-Infinity".getBytes();
+
+   static {
+      final BigInteger mask = BigInteger.ONE.shiftLeft(POW5_QUARTER_BITCOUNT).subtract(BigInteger.ONE);
+      final BigInteger invMask = BigInteger.ONE.shiftLeft(POW5_INV_QUARTER_BITCOUNT).subtract(BigInteger.ONE);
+      for (int i = 0; i < Math.max(POS_TABLE_SIZE, NEG_TABLE_SIZE); i++) {
+         final BigInteger pow = BigInteger.valueOf(5).pow(i);
+         final int pow5len = pow.bitLength();
+         if (i < POS_TABLE_SIZE) {
+            for (int j = 0; j < 4; j++) {
+               POW5_SPLIT[i][j] = pow
+                  .shiftRight(pow5len - POW5_BITCOUNT + (3 - j) * POW5_QUARTER_BITCOUNT)
+                  .and(mask)
+                  .intValue();
+            }
+         }
+
+         if (i < NEG_TABLE_SIZE) {
+            // We want floor(log_2 5^q) here, which is pow5len - 1.
+            final int j = pow5len - 1 + POW5_INV_BITCOUNT;
+            final BigInteger inv = BigInteger.ONE.shiftLeft(j).divide(pow).add(BigInteger.ONE);
+            for (int k = 0; k < 4; k++) {
+               final BigInteger quarter = inv.shiftRight((3 - k) * POW5_INV_QUARTER_BITCOUNT);
+               POW5_INV_SPLIT[i][k] = (k == 0 ? quarter : quarter.and(invMask)).intValue();
+            }
+         }
+      }
+   }
+
+   private RyuDouble() {
+   }
+
+   /**
+    * Write the shortest decimal representation of {@code value} that round-trips through
+    * {@link Double#parseDouble(String)} at the current position of {@code buffer}, and
+    * advance the position accordingly.
+    *
+    * @param value the double to format
+    * @param buffer the buffer to write into
+    * @throws BufferOverflowException if the representation does not fit in the buffer
+    */
+   public static void format(final double value, final ByteBuffer buffer) {
+      format0(value, buffer);
+   }
+
+   /**
+    * Get the number of bytes {@link #format(double, ByteBuffer)} would write for
+    * {@code value}, without writing them.
+    *
+    * @param value the double to measure
+    * @return the length in bytes of the formatted representation
+    */
+   public static int length(final double value) {
+      return format0(value, null);
+   }
+
+   /**
+    * Format {@code value} into {@code buffer}, or only measure it if {@code buffer} is
+    * {@code null}.
+    *
+    * @return the length in bytes of the formatted representation
+    */
+   private static int format0(final double value, final ByteBuffer buffer) {
+      if (value == 0d) {
+         return put(buffer, ZERO);
+      }
+      else if (Double.isNaN(value)) {
+         return put(buffer, NAN);
+      }
+      else if (Double.isInfinite(value)) {
+         return put(buffer, value > 0 ? POSITIVE_INFINITY : NEGATIVE_INFINITY);
+      }
+
+      final long bits = Double.doubleToRawLongBits(value);
+      final int ieeeExponent = (int) ((bits >>> DOUBLE_MANTISSA_BITS) & DOUBLE_EXPONENT_MASK);
+      final long ieeeMantissa = bits & DOUBLE_MANTISSA_MASK;
+
+      // Step 1: decode the floating point number, and unify normalized and subnormal cases
+      int e2;
+      final long m2;
+      if (ieeeExponent == 0) {
+         e2 = 1 - DOUBLE_EXPONENT_BIAS - DOUBLE_MANTISSA_BITS;
+         m2 = ieeeMantissa;
+      }
+      else {
+         e2 = ieeeExponent - DOUBLE_EXPONENT_BIAS - DOUBLE_MANTISSA_BITS;
+         m2 = ieeeMantissa | (1L << DOUBLE_MANTISSA_BITS);
+      }
+
+      // Step 2: determine the interval of legal decimal representations
+      final boolean even = (m2 & 1) == 0;
+      final long mv = 4 * m2;
+      final long mp = 4 * m2 + 2;
+      final int mmShift = ((m2 != (1L << DOUBLE_MANTISSA_BITS)) || (ieeeExponent <= 1)) ? 1 : 0;
+      final long mm = 4 * m2 - 1 - mmShift;
+      e2 -= 2;
+
+      // Step 3: convert to a decimal power base using 128-bit arithmetic
+      long dv, dp, dm;
+      final int e10;
+      boolean dmIsTrailingZeros = false;
+      boolean dvIsTrailingZeros = false;
+      if (e2 >= 0) {
+         final int q = Math.max(0, ((e2 * 78913) >>> 18) - 1);
+         // k = constant + floor(log_2(5^q))
+         final int k = POW5_INV_BITCOUNT + pow5bits(q) - 1;
+         final int i = -e2 + q + k;
+         dv = mulPow5InvDivPow2(mv, q, i);
+         dp = mulPow5InvDivPow2(mp, q, i);
+         dm = mulPow5InvDivPow2(mm, q, i);
+         e10 = q;
+
+         if (q <= 21) {
+            // Only one of mp, mv, and mm can be a multiple of 5, if any.
+            if (mv % 5 == 0) {
+               dvIsTrailingZeros = multipleOfPowerOf5(mv, q);
+            }
+            else if (even) {
+               dmIsTrailingZeros = multipleOfPowerOf5(mm, q);
+            }
+            else if (multipleOfPowerOf5(mp, q)) {
+               dp--;
+            }
+         }
+      }
+      else {
+         final int q = Math.max(0, ((-e2 * 732923) >>> 20) - 1);
+         final int i = -e2 - q;
+         final int k = pow5bits(i) - POW5_BITCOUNT;
+         final int j = q - k;
+         dv = mulPow5divPow2(mv, i, j);
+         dp = mulPow5divPow2(mp, i, j);
+         dm = mulPow5divPow2(mm, i, j);
+         e10 = q + e2;
+
+         if (q <= 1) {
+            // mv = 4 * m2, so it always has at least two trailing 0 bits
+            dvIsTrailingZeros = true;
+            if (even) {
+               // mm = mv - 1 - mmShift, so it has 1 trailing 0 bit iff mmShift == 1
+               dmIsTrailingZeros = mmShift == 1;
+            }
+            else {
+               // mp = mv + 2, so it always has at least one trailing 0 bit
+               dp--;
+            }
+         }
+         else if (q < 63) {
+            // We need to know if the full product has at least q trailing zeros
+            dvIsTrailingZeros = (mv & ((1L << q) - 1)) == 0;
+         }
+      }
+
+      // Step 4: find the shortest decimal representation in the interval of legal representations
+      int removed = 0;
+      int lastRemovedDigit = 0;
+      final long output;
+      if (dmIsTrailingZeros || dvIsTrailingZeros) {
+         while (dp / 10 > dm / 10) {
+            dmIsTrailingZeros &= dm % 10 == 0;
+            dvIsTrailingZeros &= lastRemovedDigit == 0;
+            lastRemovedDigit = (int) (dv % 10);
+            dp /= 10;
+            dv /= 10;
+            dm /= 10;
+            removed++;
+         }
+
+         if (dmIsTrailingZeros && even) {
+            while (dm % 10 == 0) {
+               dvIsTrailingZeros &= lastRemovedDigit == 0;
+               lastRemovedDigit = (int) (dv % 10);
+               dp /= 10;
+               dv /= 10;
+               dm /= 10;
+               removed++;
+            }
+         }
+
+         if (dvIsTrailingZeros && lastRemovedDigit == 5 && dv % 2 == 0) {
+            // Round even if the exact number is .....50..0.
+            lastRemovedDigit = 4;
+         }
+         output = dv + ((dv == dm && !(dmIsTrailingZeros && even)) || lastRemovedDigit >= 5 ? 1 : 0);
+      }
+      else {
+         while (dp / 10 > dm / 10) {
+            lastRemovedDigit = (int) (dv % 10);
+            dp /= 10;
+            dv /= 10;
+            dm /= 10;
+            removed++;
+         }
+         output = dv + (dv == dm || lastRemovedDigit >= 5 ? 1 : 0);
+      }
+
+      // Step 5: print the decimal representation
+      return writeDecimal(buffer, bits < 0, output, e10 + removed);
+   }
+
+   private static int put(final ByteBuffer buffer, final byte[] bytes) {
+      if (buffer != null) {
+         buffer.put(bytes);
+      }
+      return bytes.length;
+   }
+
+   /**
+    * Write {@code digits * 10^exponent} at the current buffer position, in either plain or
+    * exponential notation.  The length is computed up front, so nothing is written if the
+    * buffer is too small, and nothing at all if it is {@code null}.
+    *
+    * @return the length in bytes of the representation
+    */
+   private static int writeDecimal(final ByteBuffer buffer, final boolean negative, long digits, final int exponent) {
+      final int olength = decimalLength(digits);
+      final int decPoint = exponent + olength;
+      final boolean scientific = decPoint < -5 || decPoint > 21;
+
+      int length = negative ? 1 : 0;
+      if (scientific) {
+         final int exp = Math.abs(decPoint - 1);
+         length += olength + (olength > 1 ? 1 : 0) + 2 + (exp > 99 ? 3 : exp > 9 ? 2 : 1);
+      }
+      else if (decPoint <= 0) {
+         length += 2 - decPoint + olength;
+      }
+      else if (decPoint < olength) {
+         length += olength + 1;
+      }
+      else {
+         length += decPoint;
+      }
+
+      if (buffer == null) {
+         return length;
+      }
+      else if (length > buffer.remaining()) {
+         throw new BufferOverflowException();
+      }
+
+      int pos = buffer.position();
+      if (negative) {
+         buffer.put(pos++, (byte) '-');
+      }
+
+      if (scientific) {
+         // d[.ddd]e[+-]x
+         final int dot = olength > 1 ? 1 : olength;
+         pos = writeDigits(buffer, pos, digits, olength, dot);
+         buffer.put(pos++, (byte) 'e');
+
+         int exp = decPoint - 1;
+         if (exp < 0) {
+            buffer.put(pos++, (byte) '-');
+            exp = -exp;
+         }
+         else {
+            buffer.put(pos++, (byte) '+');
+         }
+
+         final int elength = exp > 99 ? 3 : exp > 9 ? 2 : 1;
+         for (int i = elength - 1; i >= 0; i--) {
+            buffer.put(pos + i, (byte) ('0' + exp % 10));
+            exp /= 10;
+         }
+         pos += elength;
+      }
+      else if (decPoint <= 0) {
+         // 0.000ddd
+         buffer.put(pos++, (byte) '0');
+         buffer.put(pos++, (byte) '.');
+         for (int i = decPoint; i < 0; i++) {
+            buffer.put(pos++, (byte) '0');
+         }
+         pos = writeDigits(buffer, pos, digits, olength, olength);
+      }
+      else if (decPoint < olength) {
+         // ddd.ddd
+         pos = writeDigits(buffer, pos, digits, olength, decPoint);
+      }
+      else {
+         // ddd000
+         pos = writeDigits(buffer, pos, digits, olength, olength);
+         for (int i = olength; i < decPoint; i++) {
+            buffer.put(pos++, (byte) '0');
+         }
+      }
+
+      buffer.position(pos);
+      return length;
+   }
+
+   /**
+    * Write the {@code olength} digits of {@code digits} at {@code pos}, with a decimal point
+    * after the first {@code dot} digits unless {@code dot == olength}.
+    *
+    * @return the position following the last byte written
+    */
+   private static int writeDigits(final ByteBuffer buffer, final int pos, long digits, final int olength, final int dot) {
+      final int length = (dot < olength) ? olength + 1 : olength;
+      for (int i = olength - 1; i >= 0; i--) {
+         buffer.put(pos + (i >= dot ? i + 1 : i), (byte) ('0' + digits % 10));
+         digits /= 10;
+      }
+
+      if (dot < olength) {
+         buffer.put(pos + dot, (byte) '.');
+      }
+      return pos + length;
+   }
+
+   private static int pow5bits(final int e) {
+      return ((e * 1217359) >>> 19) + 1;
+   }
+
+   private static int decimalLength(final long v) {
+      if (v >= 1000000000000000000L) return 19;
+      if (v >= 100000000000000000L) return 18;
+      if (v >= 10000000000000000L) return 17;
+      if (v >= 1000000000000000L) return 16;
+      if (v >= 100000000000000L) return 15;
+      if (v >= 10000000000000L) return 14;
+      if (v >= 1000000000000L) return 13;
+      if (v >= 100000000000L) return 12;
+      if (v >= 10000000000L) return 11;
+      if (v >= 1000000000L) return 10;
+      if (v >= 100000000L) return 9;
+      if (v >= 10000000L) return 8;
+      if (v >= 1000000L) return 7;
+      if (v >= 100000L) return 6;
+      if (v >= 10000L) return 5;
+      if (v >= 1000L) return 4;
+      if (v >= 100L) return 3;
+      if (v >= 10L) return 2;
+      return 1;
+   }
+
+   private static boolean multipleOfPowerOf5(final long value, final int q) {
+      return pow5Factor(value) >= q;
+   }
+
+   private static int pow5Factor(long value) {
+      int count = 0;
+      while (value > 0 && value % 5 == 0) {
+         value /= 5;
+         count++;
+      }
+      return count;
+   }
+
+   /**
+    * Compute the high digits of m * 5^p / 10^q = m * 5^(p - q) / 2^q = m * 5^i / 2^j, with q chosen
+    * such that m * 5^i / 2^j has sufficiently many decimal digits to represent the original floating
+    * point number.
+    */
+   private static long mulPow5divPow2(final long m, final int i, final int j) {
+      // m has at most 55 bits
+      final long mHigh = m >>> 31;
+      final long mLow = m & 0x7fffffff;
+      final int[] split = POW5_SPLIT[i];
+      final long bits13 = mHigh * split[0]; // 124
+      final long bits03 = mLow * split[0];  // 93
+      final long bits12 = mHigh * split[1]; // 93
+      final long bits02 = mLow * split[1];  // 62
+      final long bits11 = mHigh * split[2]; // 62
+      final long bits01 = mLow * split[2];  // 31
+      final long bits10 = mHigh * split[3]; // 31
+      final long bits00 = mLow * split[3];  // 0
+      final int actualShift = j - 3 * 31 - 21;
+      return ((((((
+         ((bits00 >>> 31) + bits01 + bits10) >>> 31)
+         + bits02 + bits11) >>> 31)
+         + bits03 + bits12) >>> 21)
+         + (bits13 << 10)) >>> actualShift;
+   }
+
+   /**
+    * Compute the high digits of m / 5^i / 2^j such that the result is accurate to at least 9
+    * decimal digits. i and j are already chosen appropriately.
+    */
+   private static long mulPow5InvDivPow2(final long m, final int i, final int j) {
+      // m has at most 55 bits
+      final long mHigh = m >>> 31;
+      final long mLow = m & 0x7fffffff;
+      final int[] split = POW5_INV_SPLIT[i];
+      final long bits13 = mHigh * split[0];
+      final long bits03 = mLow * split[0];
+      final long bits12 = mHigh * split[1];
+      final long bits02 = mLow * split[1];
+      final long bits11 = mHigh * split[2];
+      final long bits01 = mLow * split[2];
+      final long bits10 = mHigh * split[3];
+      final long bits00 = mLow * split[3];
+      final int actualShift = j - 3 * 31 - 21;
+      return ((((((
+         ((bits00 >>> 31) + bits01 + bits10) >>> 31)
+         + bits02 + bits11) >>> 31)
+         + bits03 + bits12) >>> 21)
+         + (bits13 << 10)) >>> actualShift;
+   }
+}
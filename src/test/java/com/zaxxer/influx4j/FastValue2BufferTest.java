@@ -21,7 +21,9 @@ import com.zaxxer.influx4j.util.FastValue2Buffer;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.util.Random;
 
 /**
  * Created by brettw on 2017/10/30.
@@ -120,6 +122,85 @@ public class FastValue2BufferTest
       Assert.assertEquals("influx4j,123456", new String(bytes, 0, 15));
    }
 
+   @Test
+   public void testNegativeLong() {
+      final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+      FastValue2Buffer.writeLongToBuffer(-123456, buffer);
+      buffer.put((byte) 'i');
+
+      Assert.assertEquals("-123456i", new String(buffer.array(), 0, buffer.position()));
+   }
+
+   @Test
+   public void testLongAllLengths() {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+      final Random random = new Random(0x1046L);
+      final byte[] bytes = new byte[20];
+
+      long power = 1;
+      for (int digits = 1; digits <= 19; digits++) {
+         final long[] values = { power, power - 1, power + 1, power * 5 + 37, -power, -(power - 1), random.nextLong(), random.nextLong() >>> digits };
+         for (final long value : values) {
+            buffer.clear();
+            FastValue2Buffer.writeLongToBuffer(value, buffer);
+            buffer.flip();
+            final int len = buffer.remaining();
+            buffer.get(bytes, 0, len);
+            Assert.assertEquals(String.valueOf(value), new String(bytes, 0, len));
+         }
+         if (digits < 19) {
+            power *= 10;
+         }
+      }
+   }
+
+   @Test
+   public void testLongLength() {
+      final long[] values = { 0, 9, 10, -1, -10, 123456, -123456, 999999999999L, Long.MAX_VALUE, Long.MIN_VALUE };
+      final ByteBuffer buffer = ByteBuffer.allocate(64);
+      for (final long value : values) {
+         buffer.clear();
+         FastValue2Buffer.writeLongToBuffer(value, buffer);
+         Assert.assertEquals(String.valueOf(value), buffer.position(), FastValue2Buffer.longLength(value));
+      }
+   }
+
+   @Test
+   public void testOverflow() {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(6);
+      try {
+         FastValue2Buffer.writeLongToBuffer(-123456, buffer);
+         Assert.fail("Expected BufferOverflowException");
+      }
+      catch (final BufferOverflowException e) {
+         Assert.assertEquals(0, buffer.position());
+      }
+
+      try {
+         FastValue2Buffer.writeDoubleToBuffer(-1.2345d, buffer);
+         Assert.fail("Expected BufferOverflowException");
+      }
+      catch (final BufferOverflowException e) {
+         Assert.assertEquals(0, buffer.position());
+      }
+   }
+
+   @Test
+   public void testDirectBuffer() {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(64);
+      final byte[] bytes = new byte[64];
+
+      FastValue2Buffer.writeLongToBuffer(-9876543210L, buffer);
+      buffer.put((byte) ',');
+      FastValue2Buffer.writeDoubleToBuffer(12345.6789d, buffer);
+
+      buffer.flip();
+      final int len = buffer.remaining();
+      buffer.get(bytes, 0, len);
+      Assert.assertEquals("-9876543210,12345.6789", new String(bytes, 0, len));
+   }
+
    @Test
    public void testDouble2Buffer1Digit() {
       final ByteBuffer buffer = ByteBuffer.allocate(64);
@@ -0,0 +1,85 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+public class FlushSchedulerTest {
+   private static final long DEADLINE = TimeUnit.MILLISECONDS.toNanos(100);
+   private static final long FAST = TimeUnit.MILLISECONDS.toNanos(2);
+
+   @Test
+   public void testBatchShrinksWhenBodyCostExceedsDeadline() {
+      final WriteMetrics metrics = new WriteMetrics();
+      final FlushScheduler scheduler = new FlushScheduler(DEADLINE, 1024, 64 * 1024, metrics);
+      Assert.assertEquals(64 * 1024, scheduler.batchLimit());
+
+      scheduler.sent(64 * 1024, FAST, true);
+      scheduler.sent(64 * 1024, FAST + DEADLINE, true);
+      Assert.assertEquals(32 * 1024, scheduler.batchLimit());
+
+      for (int i = 0; i < 10; i++) {
+         scheduler.sent(scheduler.batchLimit(), FAST + DEADLINE, true);
+      }
+      Assert.assertEquals(1024, scheduler.batchLimit());
+      Assert.assertEquals(12, metrics.getBatchSizeHistogram().getCount());
+   }
+
+   @Test
+   public void testBatchGrowsOnlyWithBacklog() {
+      final FlushScheduler scheduler = new FlushScheduler(DEADLINE, 1024, 64 * 1024, new WriteMetrics());
+      scheduler.sent(64 * 1024, FAST, true);
+      scheduler.sent(64 * 1024, FAST + DEADLINE, true);
+      final int limit = scheduler.batchLimit();
+
+      scheduler.sent(limit, FAST, false);
+      Assert.assertEquals("grew without a backlog", limit, scheduler.batchLimit());
+
+      scheduler.sent(limit, FAST, true);
+      Assert.assertEquals(limit * 2, scheduler.batchLimit());
+   }
+
+   @Test
+   public void testHighFixedLatencyDoesNotShrinkBatch() {
+      final FlushScheduler scheduler = new FlushScheduler(DEADLINE, 1024, 64 * 1024, new WriteMetrics());
+      for (int i = 0; i < 10; i++) {
+         // A slow link, but the response time does not depend on the body
+         scheduler.sent(64 * 1024, 2 * DEADLINE, true);
+      }
+      Assert.assertEquals(64 * 1024, scheduler.batchLimit());
+   }
+
+   @Test
+   public void testWakeUnparksFlusher() throws Exception {
+      final FlushScheduler scheduler = new FlushScheduler(TimeUnit.SECONDS.toNanos(30), 1024, 64 * 1024, new WriteMetrics());
+      final Thread flusher = new Thread(() -> {
+         scheduler.prepareToPark();
+         scheduler.park();
+      });
+      flusher.start();
+
+      while (!scheduler.isParked()) {
+         Thread.yield();
+      }
+      scheduler.wake();
+      flusher.join(TimeUnit.SECONDS.toMillis(5));
+      Assert.assertFalse(flusher.isAlive());
+   }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class FlusherTest {
+   private PointFactory pointFactory;
+   private StandInServer server;
+   private InfluxDB influxDB;
+
+   @Before
+   public void createServer() throws Exception {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+      server = new StandInServer();
+      influxDB = InfluxDB.builder()
+         .setConnection("127.0.0.1", server.getPort(), InfluxDB.Protocol.HTTP)
+         .setUsername("influx4j")
+         .setDatabase("influx4j")
+         .setAutoFlushPeriod(20)
+         .setThreadFactory(new DaemonThreadFactory("Flusher"))
+         .build();
+   }
+
+   @After
+   public void shutdownServer() throws Exception {
+      influxDB.close();
+      server.close();
+      pointFactory.close();
+   }
+
+   @Test
+   public void testMalformedPointSkipped() throws Exception {
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      influxDB.write(pointFactory.createPoint("cpu").field("seq", 1L).timestamp(1, TimeUnit.SECONDS));
+      influxDB.write(pointFactory.createPoint("cpu").tag("host", "no fields"));
+      influxDB.write(pointFactory.createPoint("cpu").field("seq", 2L).timestamp(2, TimeUnit.SECONDS));
+
+      awaitLines(2);
+
+      Assert.assertEquals(1, metrics.getMalformedCount());
+      Assert.assertTrue(server.getReceived().containsKey("cpu seq=1i 1000000000"));
+      Assert.assertTrue(server.getReceived().containsKey("cpu seq=2i 2000000000"));
+
+      // The flusher is still running
+      influxDB.write(pointFactory.createPoint("cpu").field("seq", 3L).timestamp(3, TimeUnit.SECONDS));
+      awaitLines(3);
+   }
+
+   @Test
+   public void testOversizedLinesSent() throws Exception {
+      // Lines larger than a batch buffer, each sent in a batch of its own
+      final char[] chars = new char[1536 * 1024];
+      for (int i = 0; i < 3; i++) {
+         Arrays.fill(chars, (char) ('a' + i));
+         influxDB.write(pointFactory.createPoint("log").field("text", new String(chars, 0, chars.length - i)).timestamp(i, TimeUnit.SECONDS));
+      }
+      influxDB.write(pointFactory.createPoint("cpu").field("seq", 1L).timestamp(1, TimeUnit.SECONDS));
+
+      awaitLines(4);
+      for (int i = 0; i < 3; i++) {
+         Arrays.fill(chars, (char) ('a' + i));
+         final String line = "log text=\"" + new String(chars, 0, chars.length - i) + "\" " + TimeUnit.SECONDS.toNanos(i);
+         Assert.assertTrue("line " + i + " received", server.getReceived().containsKey(line));
+      }
+   }
+
+   private void awaitLines(final int lines) throws InterruptedException {
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (server.getLines() < lines) {
+         Assert.assertTrue("timed out", System.nanoTime() - deadline < 0);
+         TimeUnit.MILLISECONDS.sleep(10);
+      }
+   }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.GZIPInputStream;
+
+public class GzipEncoderTest {
+   private final GzipEncoder encoder = new GzipEncoder(1, 64 * 1024);
+
+   @After
+   public void end() {
+      encoder.end();
+   }
+
+   @Test
+   public void testRoundTrip() throws IOException {
+      final StringBuilder lines = new StringBuilder();
+      for (int i = 0; i < 1000; i++) {
+         lines.append("cpu,host=server").append(i % 10).append(" idle=").append(i).append("i ").append(1500000000000L + i).append('\n');
+      }
+      final byte[] expected = lines.toString().getBytes(StandardCharsets.UTF_8);
+
+      // The encoder is reused, and reads heap and direct bodies alike
+      for (final ByteBuffer body : new ByteBuffer[] { ByteBuffer.wrap(expected), direct(expected), ByteBuffer.wrap(expected) }) {
+         final ByteBuffer target = ByteBuffer.allocate(expected.length + 100);
+         target.position(100);
+         Assert.assertTrue(encoder.encode(body, target));
+         Assert.assertFalse(body.hasRemaining());
+         Assert.assertTrue("compressed to " + (target.position() - 100), target.position() - 100 < expected.length / 5);
+         Assert.assertArrayEquals(expected, gunzip(target.array(), 100, target.position() - 100));
+      }
+   }
+
+   @Test
+   public void testIncompressibleBodyRejected() {
+      final byte[] random = new byte[4096];
+      new Random(42).nextBytes(random);
+
+      final ByteBuffer target = ByteBuffer.allocate(8192);
+      Assert.assertFalse(encoder.encode(ByteBuffer.wrap(random), target));
+
+      // A body that only compresses when there is room for it does not either
+      final byte[] zeros = new byte[4096];
+      final ByteBuffer small = ByteBuffer.allocate(16);
+      Assert.assertFalse(encoder.encode(ByteBuffer.wrap(zeros), small));
+   }
+
+   private static ByteBuffer direct(final byte[] bytes) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+      buffer.put(bytes).flip();
+      return buffer;
+   }
+
+   private static byte[] gunzip(final byte[] bytes, final int offset, final int length) throws IOException {
+      try (final InputStream in = new GZIPInputStream(new ByteArrayInputStream(bytes, offset, length))) {
+         final ByteArrayOutputStream out = new ByteArrayOutputStream();
+         final byte[] chunk = new byte[8192];
+         for (int read = in.read(chunk); read > 0; read = in.read(chunk)) {
+            out.write(chunk, 0, read);
+         }
+         return out.toByteArray();
+      }
+   }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class HistogramTest {
+   @Test
+   public void testBucketsCoverEveryValue() {
+      long previous = -1;
+      for (int i = 0; i < 64 * 4 && Histogram.upperBound(i) > previous; i++) {
+         final long upper = Histogram.upperBound(i);
+         Assert.assertEquals("gap before bucket " + i, i, Histogram.index(previous + 1));
+         Assert.assertEquals(i, Histogram.index(upper));
+         previous = upper;
+      }
+      Assert.assertEquals(Long.MAX_VALUE, previous);
+   }
+
+   @Test
+   public void testPercentiles() {
+      final Histogram histogram = new Histogram();
+      Assert.assertEquals(0, histogram.getValueAtPercentile(99));
+
+      for (int i = 1; i <= 1000; i++) {
+         histogram.record(i);
+      }
+
+      Assert.assertEquals(1000, histogram.getCount());
+      Assert.assertEquals(1000, histogram.getMax());
+      Assert.assertEquals(500.5, histogram.getMean(), 0.001);
+      assertWithin(500, histogram.getValueAtPercentile(50));
+      assertWithin(990, histogram.getValueAtPercentile(99));
+      Assert.assertEquals(1000, histogram.getValueAtPercentile(100));
+   }
+
+   @Test
+   public void testConcurrentRecording() throws InterruptedException {
+      final Histogram histogram = new Histogram();
+      final Thread[] threads = new Thread[4];
+      for (int t = 0; t < threads.length; t++) {
+         final int offset = t;
+         threads[t] = new Thread(() -> {
+            for (int i = 1; i <= 10000; i++) {
+               histogram.record(i + offset);
+            }
+         });
+         threads[t].start();
+      }
+      for (final Thread thread : threads) {
+         thread.join();
+      }
+
+      Assert.assertEquals(40000, histogram.getCount());
+      Assert.assertEquals(10003, histogram.getMax());
+      Assert.assertEquals(5002, histogram.getMean(), 0.001);
+      Assert.assertEquals(10003, histogram.getValueAtPercentile(100));
+   }
+
+   private static void assertWithin(final long expected, final long actual) {
+      Assert.assertTrue("expected " + expected + " but was " + actual, actual >= expected && actual <= expected * 5 / 4);
+   }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpPipelineTest {
+   private ServerSocketChannel server;
+   private SocketChannel client;
+   private SocketChannel peer;
+   private final List<int[]> responses = new ArrayList<>();
+
+   @Before
+   public void connect() throws IOException {
+      server = ServerSocketChannel.open();
+      server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      client = SocketChannel.open(server.getLocalAddress());
+      peer = server.accept();
+   }
+
+   @After
+   public void close() throws IOException {
+      client.close();
+      peer.close();
+      server.close();
+   }
+
+   @Test
+   public void testResponsesMatchedInOrder() throws IOException {
+      final HttpPipeline pipeline = new HttpPipeline(client, 4, (response, bodyBytes, serviceNs) -> responses.add(new int[] { response.status(), bodyBytes }));
+
+      // Three requests go out before any response comes back
+      for (int i = 1; i <= 3; i++) {
+         pipeline.send(new ByteBuffer[] { ascii("POST /write HTTP/1.1\r\n\r\n"), ascii("line " + i + "\n") }, i * 100);
+      }
+      Assert.assertEquals(3, pipeline.inFlight());
+      Assert.assertTrue(responses.isEmpty());
+      final int requestBytes = 3 * ("POST /write HTTP/1.1\r\n\r\n".length() + "line 1\n".length());
+      Assert.assertEquals(requestBytes, read(peer, requestBytes));
+
+      // Responses split anywhere, an interim response, and an error with a body
+      final String error = "{\"error\":\"partial write\"}";
+      final String answers = "HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n"
+         + "HTTP/1.1 100 Continue\r\n\r\n"
+         + "HTTP/1.1 400 Bad Request\r\ncontent-length: " + error.length() + "\r\n\r\n" + error
+         + "HTTP/1.1 204 No Content\r\n\r\n";
+      peer.write(ascii(answers.substring(0, 30)));
+      peer.write(ascii(answers.substring(30, 120)));
+      pipeline.awaitResponses(2);
+      peer.write(ascii(answers.substring(120)));
+      pipeline.awaitResponses(0);
+
+      Assert.assertEquals(0, pipeline.inFlight());
+      Assert.assertEquals(3, responses.size());
+      Assert.assertArrayEquals(new int[] { 204, 100 }, responses.get(0));
+      Assert.assertArrayEquals(new int[] { 400, 200 }, responses.get(1));
+      Assert.assertArrayEquals(new int[] { 204, 300 }, responses.get(2));
+      pipeline.close();
+   }
+
+   @Test
+   public void testFullPipelineWaitsForResponse() throws Exception {
+      final HttpPipeline pipeline = new HttpPipeline(client, 1, (response, bodyBytes, serviceNs) -> responses.add(new int[] { response.status(), bodyBytes }));
+      pipeline.send(new ByteBuffer[] { ascii("POST /write HTTP/1.1\r\n\r\n") }, 1);
+
+      final Thread answerer = new Thread(() -> {
+         try {
+            Thread.sleep(100);
+            peer.write(ascii("HTTP/1.1 204 No Content\r\n\r\n"));
+         }
+         catch (final Exception e) {
+            throw new RuntimeException(e);
+         }
+      });
+      answerer.start();
+
+      // The second request is only sent once the first is answered
+      final long start = System.nanoTime();
+      pipeline.send(new ByteBuffer[] { ascii("POST /write HTTP/1.1\r\n\r\n") }, 2);
+      Assert.assertTrue(System.nanoTime() - start >= 90_000_000L);
+      Assert.assertEquals(1, responses.size());
+      Assert.assertEquals(1, pipeline.inFlight());
+      answerer.join();
+      pipeline.close();
+   }
+
+   @Test
+   public void testSendReturnsBeforeRequestIsWritten() throws Exception {
+      final HttpPipeline pipeline = new HttpPipeline(client, 2, (response, bodyBytes, serviceNs) -> responses.add(new int[] { response.status(), bodyBytes }));
+
+      // Far more than the socket buffers hold while the peer is not reading
+      final ByteBuffer body = ByteBuffer.allocate(16 * 1024 * 1024);
+      final long sequence = pipeline.send(new ByteBuffer[] { ascii("POST /write HTTP/1.1\r\n\r\n"), body }, body.capacity());
+      Assert.assertTrue(body.hasRemaining());
+
+      final Thread reader = new Thread(() -> {
+         try {
+            final ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+            for (long remaining = "POST /write HTTP/1.1\r\n\r\n".length() + body.capacity(); remaining > 0; buffer.clear()) {
+               remaining -= peer.read(buffer);
+            }
+            peer.write(ascii("HTTP/1.1 204 No Content\r\n\r\n"));
+         }
+         catch (final IOException e) {
+            throw new RuntimeException(e);
+         }
+      });
+      reader.start();
+
+      pipeline.awaitWritten(sequence);
+      Assert.assertFalse(body.hasRemaining());
+      pipeline.awaitResponses(0);
+      Assert.assertEquals(1, responses.size());
+      Assert.assertArrayEquals(new int[] { 204, body.capacity() }, responses.get(0));
+      reader.join();
+      pipeline.close();
+   }
+
+   private static ByteBuffer ascii(final String string) {
+      return ByteBuffer.wrap(string.getBytes(StandardCharsets.US_ASCII));
+   }
+
+   private static int read(final SocketChannel channel, final int expected) throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(4096);
+      while (buffer.position() < expected && channel.read(buffer) > 0) {
+         // keep reading
+      }
+      return buffer.position();
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+public class HttpResponseParserTest {
+   private static final String ERROR = "{\"error\":\"partial write: field type conflict\"}";
+
+   private static final String RESPONSES = "HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n"
+      + "HTTP/1.1 100 Continue\r\n\r\n"
+      + "HTTP/1.1 400 Bad Request\r\ncontent-type: application/json\r\nCONTENT-LENGTH: " + ERROR.length() + "\r\n\r\n" + ERROR
+      + "HTTP/1.1 500 Internal Server Error\r\nTransfer-Encoding: chunked\r\n\r\n"
+      + "b\r\n{\"error\":\"t\r\n" + "1a;ext=1\r\nimeout\", \"retry\": \"maybe\"}\r\n" + "0\r\nX-Trailer: 1\r\n\r\n"
+      + "HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhello"
+      + "HTTP/1.1 204 No Content\r\n\r\n";
+
+   @Test
+   public void testResponsesInOneBuffer() throws IOException {
+      assertResponses(parse(RESPONSES, RESPONSES.length()));
+   }
+
+   @Test
+   public void testResponsesSplitAnywhere() throws IOException {
+      for (final int split : new int[] { 1, 2, 3, 7, 64 }) {
+         assertResponses(parse(RESPONSES, split));
+      }
+   }
+
+   @Test
+   public void testStopsAfterEachResponse() throws IOException {
+      final HttpResponseParser parser = new HttpResponseParser();
+      final ByteBuffer buffer = ascii(RESPONSES);
+      Assert.assertTrue(parser.parse(buffer));
+      Assert.assertEquals(204, parser.status());
+      Assert.assertEquals("HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n".length(), buffer.position());
+   }
+
+   @Test
+   public void testLongErrorBodyIsDrained() throws IOException {
+      final StringBuilder body = new StringBuilder();
+      while (body.length() < 10_000) {
+         body.append("0123456789");
+      }
+      final String responses = "HTTP/1.1 400 Bad Request\r\nContent-Length: " + body.length() + "\r\n\r\n" + body + "HTTP/1.1 204 No Content\r\n\r\n";
+
+      final HttpResponseParser parser = new HttpResponseParser();
+      final ByteBuffer buffer = ascii(responses);
+      Assert.assertTrue(parser.parse(buffer));
+      Assert.assertEquals(400, parser.status());
+      Assert.assertEquals(body.substring(0, 4096), parser.body());
+      Assert.assertTrue(parser.parse(buffer));
+      Assert.assertEquals(204, parser.status());
+      Assert.assertFalse(buffer.hasRemaining());
+   }
+
+   @Test
+   public void testRepeatedContentLength() throws IOException {
+      final HttpResponseParser parser = new HttpResponseParser();
+      final ByteBuffer buffer = ascii("HTTP/1.1 400 Bad Request\r\nContent-Length: 5\r\nContent-Length: 5\r\n\r\nerror"
+                                      + "HTTP/1.1 204 No Content\r\n\r\n");
+      Assert.assertTrue(parser.parse(buffer));
+      Assert.assertEquals("error", parser.body());
+      Assert.assertTrue(parser.parse(buffer));
+      Assert.assertEquals(204, parser.status());
+   }
+
+   @Test(expected = IOException.class)
+   public void testConflictingContentLength() throws IOException {
+      new HttpResponseParser().parse(ascii("HTTP/1.1 200 OK\r\nContent-Length: 5\r\nContent-Length: 50\r\n\r\nhello"));
+   }
+
+   @Test(expected = IOException.class)
+   public void testMalformedStatusLine() throws IOException {
+      new HttpResponseParser().parse(ascii("{\"results\":[]}\r\n"));
+   }
+
+   private static List<String> parse(final String responses, final int split) throws IOException {
+      final HttpResponseParser parser = new HttpResponseParser();
+      final List<String> parsed = new ArrayList<>();
+      for (int start = 0; start < responses.length(); start += split) {
+         final ByteBuffer buffer = ascii(responses.substring(start, Math.min(responses.length(), start + split)));
+         while (parser.parse(buffer)) {
+            parsed.add(parser.status() + " " + parser.body());
+         }
+      }
+      return parsed;
+   }
+
+   private static void assertResponses(final List<String> parsed) {
+      Assert.assertEquals(5, parsed.size());
+      Assert.assertEquals("204 ", parsed.get(0));
+      Assert.assertEquals("400 " + ERROR, parsed.get(1));
+      Assert.assertEquals("500 {\"error\":\"timeout\", \"retry\": \"maybe\"}", parsed.get(2));
+      // A successful body is drained, but not kept
+      Assert.assertEquals("200 ", parsed.get(3));
+      Assert.assertEquals("204 ", parsed.get(4));
+   }
+
+   private static ByteBuffer ascii(final String string) {
+      return ByteBuffer.wrap(string.getBytes(StandardCharsets.US_ASCII));
+   }
+}
@@ -23,7 +23,10 @@ import org.junit.Test;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
 
 import com.zaxxer.influx4j.util.DaemonThreadFactory;
@@ -82,6 +85,33 @@ public class LineProtocolTest {
       Assert.assertEquals("sp\\ ace boolean=t\n", buffer2string(buffer));
    }
 
+   @Test
+   public void testCachedKeys() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(128);
+
+      for (int i = 0; i < 3; i++) {
+         buffer.clear();
+         pointFactory.createPoint(new String("sp ace"))
+               .tag(new String("eq=ual"), "1")
+               .field(new String("com,ma"), true)
+               .write(buffer);
+
+         Assert.assertEquals("sp\\ ace,eq\\=ual=1 com\\,ma=t\n", buffer2string(buffer));
+      }
+   }
+
+   @Test
+   public void testUnicodeMeasurement() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(128);
+
+      pointFactory.createPoint("températ ure")
+            .field("degrés", 1)
+            .write(buffer);
+
+      final byte[] expected = "températ\\ ure degrés=1i\n".getBytes(StandardCharsets.UTF_8);
+      Assert.assertArrayEquals(expected, Arrays.copyOf(buffer.array(), buffer.position()));
+   }
+
    @Test
    public void testFieldString() throws IOException {
       final ByteBuffer buffer = ByteBuffer.allocate(128);
@@ -138,7 +168,43 @@ public class LineProtocolTest {
             .field("double", 123456.789d)
             .write(buffer);
 
-      Assert.assertEquals("testMeasurement double=123456.789,boolean=t\n", buffer2string(buffer));
+      Assert.assertEquals("testMeasurement boolean=t,double=123456.789\n", buffer2string(buffer));
+   }
+
+   @Test
+   public void testGrowBeyondInitialCapacity() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(2048);
+
+      final Point point = pointFactory.createPoint("testMeasurement");
+      final StringBuilder tags = new StringBuilder();
+      final StringBuilder fields = new StringBuilder();
+      for (int i = 0; i < 20; i++) {
+         point.tag("t" + (char) ('a' + i), "v" + i);
+         tags.append(",t").append((char) ('a' + i)).append("=v").append(i);
+
+         switch (i % 4) {
+            case 0:
+               point.field("f" + i, (long) i);
+               fields.append(",f").append(i).append('=').append(i).append('i');
+               break;
+            case 1:
+               point.field("f" + i, i + 0.5d);
+               fields.append(",f").append(i).append('=').append(i).append(".5");
+               break;
+            case 2:
+               point.field("f" + i, "s" + i);
+               fields.append(",f").append(i).append("=\"s").append(i).append('"');
+               break;
+            default:
+               point.field("f" + i, true);
+               fields.append(",f").append(i).append("=t");
+         }
+      }
+
+      final String expected = "testMeasurement" + tags + " " + fields.substring(1) + "\n";
+      Assert.assertEquals(expected.length(), point.serializedSize());
+      point.write(buffer);
+      Assert.assertEquals(expected, buffer2string(buffer));
    }
 
    @Test
@@ -154,6 +220,112 @@ public class LineProtocolTest {
       Assert.assertEquals("testMeasurement string=\"This is a test\",long=-9223372036854775808i,boolean=t\n", buffer2string(buffer));
    }
 
+   @Test
+   public void testDirectBuffer() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(256);
+
+      pointFactory.createPoint("test Measurement")
+            .tag("tag=1", "one")
+            .tag("tag2", "two")
+            .field("string", "This \"is\" a test")
+            .field("long", -42)
+            .field("double", 123456.789d)
+            .field("boolean", true)
+            .timestamp(1509428908609L, TimeUnit.MILLISECONDS)
+            .write(buffer);
+
+      buffer.flip();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+
+      final String expected = "test\\ Measurement,tag2=two,tag\\=1=one string=\"This \\\"is\\\" a test\",long=-42i,double=123456.789,boolean=t 1509428908609000000\n";
+      Assert.assertEquals(expected, new String(bytes, StandardCharsets.UTF_8));
+   }
+
+   @Test
+   public void testMixedScriptEscaping() throws IOException {
+      final String expected = "test,city=S\u00e3o\\ Paulo,user=\u5f20\u4f1f\\,\u0418\u0432\u0430\u043d\\=1 "
+         + "emoji=\"\ud83d\ude00 \\\"\u0394\\\"\" 1509428908609000000\n";
+
+      for (final ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(128), ByteBuffer.allocateDirect(128) }) {
+         pointFactory.createPoint("test")
+               .tag("user", "\u5f20\u4f1f,\u0418\u0432\u0430\u043d=1")
+               .tag("city", "S\u00e3o Paulo")
+               .field("emoji", "\ud83d\ude00 \"\u0394\"")
+               .timestamp(1509428908609L, TimeUnit.MILLISECONDS)
+               .write(buffer);
+
+         buffer.flip();
+         final byte[] bytes = new byte[buffer.remaining()];
+         buffer.get(bytes);
+         Assert.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), bytes);
+      }
+   }
+
+   @Test
+   public void testUnpairedSurrogate() throws IOException {
+      final String expected = "test,host=bad\\ \ud800 string=\"bad \ud800 \\\"\udc00\\\"\" 1509428908609000000\n";
+
+      for (final ByteBuffer buffer : new ByteBuffer[] { ByteBuffer.allocate(128), ByteBuffer.allocateDirect(128) }) {
+         final Point point = pointFactory.createPoint("test")
+               .tag("host", "bad \ud800")
+               .field("string", "bad \ud800 \"\udc00\"")
+               .timestamp(1509428908609L, TimeUnit.MILLISECONDS);
+         final int size = point.serializedSize();
+         point.write(buffer);
+         Assert.assertEquals(size, buffer.position());
+
+         buffer.flip();
+         final byte[] bytes = new byte[buffer.remaining()];
+         buffer.get(bytes);
+         Assert.assertArrayEquals(expected.getBytes(StandardCharsets.UTF_8), bytes);
+      }
+   }
+
+   @Test
+   public void testEscapeOverflow() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(32);
+      try {
+         pointFactory.createPoint("test")
+               .field("string", "\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9\u00e9")
+               .write(buffer);
+         Assert.fail("Expected BufferOverflowException");
+      }
+      catch (final BufferOverflowException e) {
+         Assert.assertEquals("test string=\"", buffer2string(buffer));
+      }
+   }
+
+   @Test
+   public void testSerializedSize() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(256);
+
+      for (int i = 0; i < 3; i++) {
+         final Point[] points = {
+            pointFactory.createPoint("m").field("b", false),
+            pointFactory.createPoint("sp ace,comma")
+                  .tag("eq=ual", "v a,l=ue")
+                  .tag("host", "server" + i)
+                  .field("string", "\"quoted\" \u00e9\u4e2d\ud83d\ude00")
+                  .field("long", -42 * i)
+                  .field("min", Long.MIN_VALUE)
+                  .field("double", -1.5e-7d * i)
+                  .field("nan", Double.NaN)
+                  .field("boolean", true)
+                  .timestamp(1509428908609L, TimeUnit.MILLISECONDS),
+            pointFactory.createPoint("t\u00e9st").tag("\u00e9", "\u00e8").field("d", 123456.789d)
+         };
+
+         for (final Point point : points) {
+            buffer.clear();
+            final int size = point.serializedSize();
+            point.write(buffer);
+            Assert.assertEquals(buffer2string(buffer), buffer.position(), size);
+            point.release();
+         }
+      }
+   }
+
    @Test
    public void testTimestamp() throws IOException {
       final ByteBuffer buffer = ByteBuffer.allocate(128);
@@ -166,6 +338,34 @@ public class LineProtocolTest {
       Assert.assertEquals("testMeasurement boolean=t 1509428908609000000\n", buffer2string(buffer));
    }
 
+   @Test
+   public void testTimestampPrecision() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(128);
+
+      final Point point = pointFactory.createPoint("testMeasurement")
+              .field("boolean", true)
+              .timestamp(1509428908609123456L, TimeUnit.NANOSECONDS);
+
+      final String[] expected = {
+         "testMeasurement boolean=t 1509428908609123456\n",
+         "testMeasurement boolean=t 1509428908609123\n",
+         "testMeasurement boolean=t 1509428908609\n",
+         "testMeasurement boolean=t 1509428908\n",
+         "testMeasurement boolean=t 25157148\n",
+         "testMeasurement boolean=t 419285\n"
+      };
+
+      for (final InfluxDB.Precision precision : InfluxDB.Precision.values()) {
+         buffer.clear();
+         final int size = point.serializedSize(precision);
+         point.write(buffer, precision);
+         Assert.assertEquals(expected[precision.ordinal()], buffer2string(buffer));
+         Assert.assertEquals(size, buffer.position());
+      }
+
+      point.release();
+   }
+
    @Test
    public void testTag() throws IOException {
       final ByteBuffer buffer = ByteBuffer.allocate(128);
@@ -206,6 +406,76 @@ public class LineProtocolTest {
       Assert.assertEquals("testMeasurement,apple=1,mouse=2,table=3,zebra=4 boolean=t\n", buffer2string(buffer));
    }
 
+   @Test
+   public void testSeriesCache() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(128);
+      final SeriesCache seriesCache = pointFactory.getSeriesCache();
+
+      for (int i = 0; i < 3; i++) {
+         buffer.clear();
+         pointFactory.createPoint("testMeasurement")
+                 .tag("zebra", "2")
+                 .tag("apple", "1")
+                 .field("long", i)
+                 .write(buffer);
+
+         Assert.assertEquals("testMeasurement,apple=1,zebra=2 long=" + i + "i\n", buffer2string(buffer));
+      }
+
+      buffer.clear();
+      pointFactory.createPoint("testMeasurement")
+              .tag("zebra", "3")
+              .tag("apple", "1")
+              .field("long", 3)
+              .write(buffer);
+
+      Assert.assertEquals("testMeasurement,apple=1,zebra=3 long=3i\n", buffer2string(buffer));
+      Assert.assertEquals(2, seriesCache.getHitCount());
+      Assert.assertEquals(2, seriesCache.getMissCount());
+      Assert.assertEquals(0, seriesCache.getEvictionCount());
+
+      // Sized before it is written, as by the flusher, a new series is still one miss
+      buffer.clear();
+      final Point point = pointFactory.createPoint("testMeasurement")
+              .tag("zebra", "4")
+              .tag("apple", "1")
+              .field("long", 4);
+      final int size = point.serializedSize();
+      point.write(buffer);
+      Assert.assertEquals(size, buffer.position());
+      Assert.assertEquals(3, seriesCache.getMissCount());
+      Assert.assertEquals(2, seriesCache.getHitCount());
+      point.release();
+   }
+
+   @Test
+   public void testSeriesCacheEviction() throws IOException {
+      final ByteBuffer buffer = ByteBuffer.allocate(128);
+
+      final PointFactory factory = PointFactory.builder()
+              .setSeriesCacheSize(1024)
+              .build();
+      try {
+         for (int i = 0; i < 100; i++) {
+            buffer.clear();
+            factory.createPoint("testMeasurement")
+                    .tag("host", "server" + i)
+                    .field("boolean", true)
+                    .write(buffer);
+
+            Assert.assertEquals("testMeasurement,host=server" + i + " boolean=t\n", buffer2string(buffer));
+         }
+
+         final SeriesCache seriesCache = factory.getSeriesCache();
+         Assert.assertEquals(100, seriesCache.getMissCount());
+         Assert.assertTrue(seriesCache.getEvictionCount() > 0);
+         Assert.assertTrue(seriesCache.getByteSize() <= 1024);
+      }
+      finally {
+         factory.close();
+      }
+   }
+
    @Test
    public void testPointReset() throws IOException {
       final ByteBuffer buffer = ByteBuffer.allocate(128);
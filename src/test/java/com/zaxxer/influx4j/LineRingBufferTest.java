@@ -0,0 +1,222 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class LineRingBufferTest {
+   private PointFactory pointFactory;
+
+   @Before
+   public void createFactory() {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+   }
+
+   @After
+   public void shutdownFactory() {
+      pointFactory.close();
+   }
+
+   @Test
+   public void testWrapSkipsPadding() {
+      final LineRingBuffer ring = new LineRingBuffer(256);
+      final StringBuilder expected = new StringBuilder();
+      final StringBuilder drained = new StringBuilder();
+
+      // Lines of varying length, so that the claims straddle the end of the ring
+      for (int i = 0; i < 200; i++) {
+         final Point point = pointFactory.createPoint("m").tag("host", "h" + i).field("value", (long) i * i * i);
+         expected.append("m,host=h").append(i).append(" value=").append((long) i * i * i).append("i\n");
+         Assert.assertTrue(ring.offer(point, Precision.NANOSECOND));
+         point.release();
+
+         if (i % 3 == 2) {
+            drain(ring, 1024, drained);
+         }
+      }
+      drain(ring, 1024, drained);
+
+      Assert.assertEquals(expected.toString(), drained.toString());
+      Assert.assertTrue(ring.isEmpty());
+   }
+
+   @Test
+   public void testFullAndRegionsOfWholeLines() {
+      final LineRingBuffer ring = new LineRingBuffer(256);
+      int offered = 0;
+      while (true) {
+         final Point point = pointFactory.createPoint("measurement").field("value", 123456789L);
+         final boolean accepted = ring.offer(point, Precision.NANOSECOND);
+         point.release();
+         if (!accepted) {
+            break;
+         }
+         offered++;
+      }
+      Assert.assertEquals(256 / "measurement value=123456789i\n".length(), offered);
+
+      // Regions are cut at line boundaries
+      final ByteBuffer region = ring.nextRegion(70);
+      Assert.assertEquals(2 * "measurement value=123456789i\n".length(), region.remaining());
+      ring.consume();
+   }
+
+   @Test
+   public void testConcurrentProducers() throws Exception {
+      final LineRingBuffer ring = new LineRingBuffer(4096);
+      final int producers = 4;
+      final int perProducer = 5000;
+
+      final Thread[] threads = new Thread[producers];
+      for (int p = 0; p < producers; p++) {
+         final int id = p;
+         threads[p] = new Thread(() -> {
+            for (int i = 0; i < perProducer; i++) {
+               final Point point = pointFactory.createPoint("m")
+                     .tag("p", String.valueOf(id))
+                     .field("v", (long) i)
+                     .timestamp(i, TimeUnit.SECONDS);
+               while (!ring.offer(point, Precision.SECOND)) {
+                  Thread.yield();
+               }
+               point.release();
+            }
+         });
+         threads[p].start();
+      }
+
+      final Set<String> lines = new HashSet<>();
+      final StringBuilder drained = new StringBuilder();
+      while (lines.size() < producers * perProducer) {
+         drained.setLength(0);
+         drain(ring, 1000, drained);
+         for (final String line : drained.toString().split("\n")) {
+            if (!line.isEmpty()) {
+               Assert.assertTrue("malformed line: " + line, line.matches("m,p=[0-3] v=[0-9]+i [0-9]+"));
+               Assert.assertTrue("duplicate line: " + line, lines.add(line));
+            }
+         }
+         Thread.yield();
+      }
+
+      for (final Thread thread : threads) {
+         thread.join();
+      }
+      Assert.assertTrue(ring.isEmpty());
+   }
+
+   @Test
+   public void testStalledProducerDoesNotBlockOthers() throws Exception {
+      final LineRingBuffer ring = new LineRingBuffer(256);
+      final CountDownLatch claimed = new CountDownLatch(1);
+      final CountDownLatch resume = new CountDownLatch(1);
+
+      // A producer preempted in the middle of its line
+      final Thread stalled = new Thread(() -> ring.offer(new Encodable() {
+         @Override
+         int nextSize(final Precision precision) {
+            return 8;
+         }
+
+         @Override
+         boolean encodeNext(final ByteBuffer buffer, final Precision precision) {
+            claimed.countDown();
+            try {
+               resume.await();
+            }
+            catch (final InterruptedException e) {
+               Thread.currentThread().interrupt();
+            }
+            buffer.put("stalled\n".getBytes(StandardCharsets.US_ASCII));
+            return true;
+         }
+
+         @Override
+         public void release() {
+         }
+      }, Precision.NANOSECOND));
+      stalled.start();
+      claimed.await();
+
+      for (int i = 0; i < 3; i++) {
+         final Point point = pointFactory.createPoint("m").field("v", (long) i);
+         Assert.assertTrue(ring.offer(point, Precision.NANOSECOND));
+         point.release();
+      }
+      Assert.assertNull("nothing after the stalled line is visible", ring.nextRegion(1024));
+
+      resume.countDown();
+      stalled.join();
+      final StringBuilder drained = new StringBuilder();
+      drain(ring, 1024, drained);
+      Assert.assertEquals("stalled\nm v=0i\nm v=1i\nm v=2i\n", drained.toString());
+      Assert.assertTrue(ring.isEmpty());
+   }
+
+   @Test
+   public void testBatchWaitBounded() {
+      final LongAdder truncated = new LongAdder();
+      final LineRingBuffer ring = new LineRingBuffer(256, TimeUnit.MILLISECONDS.toNanos(20), truncated);
+
+      final PointBatch batch = createBatch(20);
+      Assert.assertTrue("the first rows went in", ring.offer(batch, Precision.SECOND));
+      batch.release();
+      Assert.assertEquals(1, truncated.sum());
+      Assert.assertFalse(ring.isEmpty());
+
+      // Once closed, the rest of a batch does not wait at all
+      final LineRingBuffer closed = new LineRingBuffer(256, Long.MAX_VALUE, truncated);
+      closed.close();
+      final PointBatch another = createBatch(20);
+      Assert.assertTrue(closed.offer(another, Precision.SECOND));
+      another.release();
+      Assert.assertEquals(2, truncated.sum());
+   }
+
+   private PointBatch createBatch(final int rows) {
+      final PointBatch batch = pointFactory.createBatch("measurement");
+      final int value = batch.longField("value");
+      for (int i = 0; i < rows; i++) {
+         batch.addRow(i, TimeUnit.SECONDS).setLong(value, 123456789L);
+      }
+      return batch;
+   }
+
+   private static void drain(final LineRingBuffer ring, final int maxBytes, final StringBuilder drained) {
+      for (ByteBuffer region = ring.nextRegion(maxBytes); region != null; region = ring.nextRegion(maxBytes)) {
+         Assert.assertEquals('\n', region.get(region.limit() - 1));
+         drained.append(StandardCharsets.UTF_8.decode(region));
+         ring.consume();
+      }
+   }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class PointBatchTest {
+   private PointFactory pointFactory;
+
+   @Before
+   public void createFactory() {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+   }
+
+   @After
+   public void shutdownFactory() {
+      pointFactory.close();
+   }
+
+   @Test
+   public void testRows() {
+      final PointBatch batch = pointFactory.createBatch("cpu load")
+            .tag("region", "us-west")
+            .tag("host", "server 01");
+      final int idle = batch.doubleField("idle");
+      final int count = batch.longField("count");
+
+      batch.addRow(1509428908609L, TimeUnit.MILLISECONDS).setDouble(idle, 98.5d).setLong(count, -3);
+      batch.addRow(1509428909609L, TimeUnit.MILLISECONDS).setLong(count, 12);
+      Assert.assertEquals(2, batch.size());
+
+      final String expected =
+         "cpu\\ load,host=server\\ 01,region=us-west idle=98.5,count=-3i 1509428908\n" +
+         "cpu\\ load,host=server\\ 01,region=us-west idle=0,count=12i 1509428909\n";
+      Assert.assertEquals(expected, encode(batch, Precision.SECOND));
+
+      batch.release();
+   }
+
+   @Test
+   public void testMatchesPoint() {
+      final PointBatch batch = pointFactory.createBatch("testMeasurement")
+            .tag("zebra", "3")
+            .tag("apple", "1");
+      final int value = batch.longField("value");
+      final int ratio = batch.doubleField("ratio");
+
+      final StringBuilder expected = new StringBuilder();
+      final ByteBuffer buffer = ByteBuffer.allocate(256);
+      for (int i = 0; i < 100; i++) {
+         batch.addRow(1509428908609L + i, TimeUnit.MILLISECONDS).setLong(value, i * 1001L).setDouble(ratio, i / 7d);
+
+         buffer.clear();
+         final Point point = pointFactory.createPoint("testMeasurement")
+               .tag("zebra", "3")
+               .tag("apple", "1")
+               .field("value", i * 1001L)
+               .field("ratio", i / 7d)
+               .timestamp(1509428908609L + i, TimeUnit.MILLISECONDS);
+         point.write(buffer);
+         point.release();
+         expected.append(new String(buffer.array(), 0, buffer.position()));
+      }
+
+      Assert.assertEquals(expected.toString(), encode(batch, Precision.NANOSECOND));
+      batch.release();
+   }
+
+   @Test
+   public void testReleasedAndReused() {
+      for (int i = 0; i < 3; i++) {
+         final PointBatch batch = pointFactory.createBatch("m" + i);
+         for (int t = i + 1; t > 0; t--) {
+            batch.tag("tag" + t, "value" + t);
+         }
+         final int value = batch.longField("value");
+         batch.addRow(1L, TimeUnit.SECONDS).setLong(value, i);
+
+         final StringBuilder expected = new StringBuilder("m" + i);
+         for (int t = 1; t <= i + 1; t++) {
+            expected.append(",tag").append(t).append("=value").append(t);
+         }
+         expected.append(" value=").append(i).append("i 1\n");
+         Assert.assertEquals(expected.toString(), encode(batch, Precision.SECOND));
+         batch.release();
+      }
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void testTagAfterRows() {
+      final PointBatch batch = pointFactory.createBatch("test");
+      batch.longField("value");
+      batch.addRow(1L, TimeUnit.SECONDS);
+      batch.tag("late", "tag");
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testColumnType() {
+      final PointBatch batch = pointFactory.createBatch("test");
+      final int value = batch.longField("value");
+      batch.addRow(1L, TimeUnit.SECONDS).setDouble(value, 1d);
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testUndeclaredColumn() {
+      final PointBatch batch = pointFactory.createBatch("test");
+      final int value = batch.longField("value");
+      batch.addRow(1L, TimeUnit.SECONDS).setLong(value + 1, 1L);
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void testSetBeforeRow() {
+      final PointBatch batch = pointFactory.createBatch("test");
+      batch.setLong(batch.longField("value"), 1L);
+   }
+
+   private static String encode(final PointBatch batch, final Precision precision) {
+      final ByteBuffer buffer = ByteBuffer.allocateDirect(64 * 1024);
+      boolean done;
+      do {
+         final int start = buffer.position();
+         final int size = batch.nextSize(precision);
+         done = batch.encodeNext(buffer, precision);
+         Assert.assertEquals(size, buffer.position() - start);
+      } while (!done);
+
+      buffer.flip();
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new String(bytes);
+   }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class PointCacheTest {
+   private PointFactory pointFactory;
+
+   @Before
+   public void createFactory() {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .setMagazineSize(16)
+            .build();
+   }
+
+   @After
+   public void shutdownFactory() {
+      pointFactory.close();
+   }
+
+   @Test
+   public void testSameThreadReuse() {
+      final Point point = pointFactory.createPoint("cpu");
+      point.release();
+      final Point again = pointFactory.createPoint("mem");
+      Assert.assertSame(point, again);
+      again.release();
+   }
+
+   @Test
+   public void testReleasedByOtherThreadReturnInBatch() throws Exception {
+      final List<Point> claimed = new ArrayList<>();
+      for (int i = 0; i < 32; i++) {
+         claimed.add(pointFactory.createPoint("cpu"));
+      }
+
+      final Set<Point> released = Collections.newSetFromMap(new IdentityHashMap<>());
+      released.addAll(claimed);
+
+      // Stand in for the flusher, which releases the points written by producers
+      final Thread flusher = new Thread(() -> claimed.forEach(Point::release));
+      flusher.start();
+      flusher.join();
+
+      for (int i = 0; i < 16; i++) {
+         final Point point = pointFactory.createPoint("cpu");
+         Assert.assertTrue("point was not handed back from the depot", released.contains(point));
+      }
+   }
+
+   @Test
+   public void testTerminatedThreadMagazineSwept() throws Exception {
+      final PointCache pointCache = pointFactory.getPointCache();
+      final Thread terminated = new Thread(() -> {
+         final List<Point> points = new ArrayList<>();
+         for (int i = 0; i < 16; i++) {
+            points.add(pointFactory.createPoint("cpu"));
+         }
+         points.forEach(Point::release);
+      });
+      terminated.start();
+      terminated.join();
+      Assert.assertEquals(1, pointCache.magazineCount());
+
+      // Handing a full magazine to the depot sweeps the magazines of terminated threads
+      final List<Point> points = new ArrayList<>();
+      for (int i = 0; i < 17; i++) {
+         points.add(pointFactory.createPoint("cpu"));
+      }
+      points.forEach(Point::release);
+      Assert.assertEquals(1, pointCache.magazineCount());
+   }
+
+   @Test
+   public void testStealFromIdleThread() throws Exception {
+      final Set<Point> cached = Collections.newSetFromMap(new IdentityHashMap<>());
+      final Thread idle = new Thread(() -> {
+         final List<Point> points = new ArrayList<>();
+         for (int i = 0; i < 16; i++) {
+            points.add(pointFactory.createPoint("cpu"));
+         }
+         cached.addAll(points);
+         points.forEach(Point::release);
+      });
+      idle.start();
+      idle.join();
+
+      // Exhaust the pool; the remaining points are stranded in the magazine of the idle thread
+      final List<Point> points = new ArrayList<>();
+      for (int i = 0; i < 512 - 16; i++) {
+         points.add(pointFactory.createPoint("cpu"));
+      }
+
+      final Point stolen = pointFactory.createPoint("cpu");
+      Assert.assertTrue(cached.contains(stolen));
+   }
+}
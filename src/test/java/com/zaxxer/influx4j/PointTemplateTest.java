@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class PointTemplateTest {
+   private PointFactory pointFactory;
+   private PointTemplate template;
+
+   @Before
+   public void createFactory() {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+
+      template = pointFactory.templateBuilder("cpu load")
+            .tag("region")
+            .tag("host")
+            .doubleField("idle")
+            .longField("count")
+            .stringField("status")
+            .booleanField("up")
+            .build();
+   }
+
+   @After
+   public void shutdownFactory() {
+      pointFactory.close();
+   }
+
+   @Test
+   public void testMatchesPoint() {
+      final Point templated = template.createPoint()
+            .setTag(0, "us-west")
+            .setTag(1, "server 01")
+            .setDouble(0, 98.5d)
+            .setLong(1, -42)
+            .setString(2, "say \"hi\"")
+            .setBoolean(3, true)
+            .timestamp(1509428908609L, TimeUnit.MILLISECONDS);
+
+      final Point point = pointFactory.createPoint("cpu load")
+            .tag("region", "us-west")
+            .tag("host", "server 01")
+            .field("idle", 98.5d)
+            .field("count", -42)
+            .field("status", "say \"hi\"")
+            .field("up", true)
+            .timestamp(1509428908609L, TimeUnit.MILLISECONDS);
+
+      final String expected = "cpu\\ load,host=server\\ 01,region=us-west idle=98.5,count=-42i,status=\"say \\\"hi\\\"\",up=t 1509428908609000000\n";
+      Assert.assertEquals(expected, encode(templated));
+      Assert.assertEquals(expected.length(), templated.serializedSize());
+      Assert.assertEquals(encode(point).length(), expected.length());
+
+      templated.release();
+      point.release();
+   }
+
+   @Test
+   public void testUnsetSlotsOmitted() {
+      final Point point = template.createPoint()
+            .setTag(1, "server01")
+            .setLong(1, 7);
+
+      Assert.assertEquals("cpu\\ load,host=server01 count=7i\n", encode(point));
+      Assert.assertEquals(point.serializedSize(), encode(point).length());
+      point.release();
+
+      // a recycled point must not carry over the values of its previous use
+      final Point reused = template.createPoint().setBoolean(3, false);
+      Assert.assertEquals("cpu\\ load up=f\n", encode(reused));
+      reused.release();
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testWrongFieldType() {
+      final Point point = template.createPoint();
+      try {
+         point.setLong(0, 1);
+      }
+      finally {
+         point.release();
+      }
+   }
+
+   @Test(expected = IllegalStateException.class)
+   public void testNoFields() {
+      final Point point = template.createPoint().setTag(0, "us-west");
+      try {
+         encode(point);
+      }
+      finally {
+         point.release();
+      }
+   }
+
+   @Test
+   public void testMisuseRejected() {
+      final Point point = template.createPoint().setLong(1, 7);
+      try {
+         try {
+            // the template has two tags; the slot array may be larger
+            point.setTag(2, "extra");
+            Assert.fail("tag index beyond the template");
+         }
+         catch (final IllegalArgumentException e) {
+            // expected
+         }
+
+         try {
+            point.tag("host", "server01");
+            Assert.fail("tag set by name");
+         }
+         catch (final IllegalStateException e) {
+            // expected
+         }
+
+         try {
+            point.field("count", 8L);
+            Assert.fail("field set by name");
+         }
+         catch (final IllegalStateException e) {
+            // expected
+         }
+
+         try {
+            point.measurement("mem");
+            Assert.fail("measurement of a template point");
+         }
+         catch (final IllegalStateException e) {
+            // expected
+         }
+
+         Assert.assertEquals("cpu\\ load count=7i\n", encode(point));
+      }
+      finally {
+         point.release();
+      }
+   }
+
+   @Test(expected = IllegalArgumentException.class)
+   public void testDuplicateTagKey() {
+      pointFactory.templateBuilder("cpu").tag("host").tag("host");
+   }
+
+   private static String encode(final Point point) {
+      final ByteBuffer buffer = ByteBuffer.allocate(512);
+      point.write(buffer);
+      buffer.flip();
+      return StandardCharsets.UTF_8.decode(buffer).toString();
+   }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.fastdouble.RyuDouble;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Differential tests of {@link RyuDouble} against {@link Double#toString(double)}.  Every
+ * formatted value must parse back to the identical double, must never need more
+ * significant digits than the JDK does, and must have the length {@link RyuDouble#length}
+ * predicts.
+ */
+public class RyuDoubleTest
+{
+   private static final int SAMPLES = 500_000;
+
+   private final ByteBuffer buffer = ByteBuffer.allocate(64);
+
+   @Test
+   public void testFormats() {
+      Assert.assertEquals("0", format(0d));
+      Assert.assertEquals("0", format(-0d));
+      Assert.assertEquals("9", format(9d));
+      Assert.assertEquals("-9.2", format(-9.2d));
+      Assert.assertEquals("123456.789", format(123456.789d));
+      Assert.assertEquals("0.1", format(0.1d));
+      Assert.assertEquals("0.000001", format(1e-6d));
+      Assert.assertEquals("1e-7", format(1e-7d));
+      Assert.assertEquals("100000000000000000000", format(1e20d));
+      Assert.assertEquals("1e+22", format(1e22d));
+      Assert.assertEquals("1.7976931348623157e+308", format(Double.MAX_VALUE));
+      Assert.assertEquals("5e-324", format(Double.MIN_VALUE));
+      Assert.assertEquals("NaN", format(Double.NaN));
+      Assert.assertEquals("-Infinity", format(Double.NEGATIVE_INFINITY));
+   }
+
+   @Test
+   public void testBufferOffset() {
+      buffer.put("double=".getBytes());
+      RyuDouble.format(12345.6789d, buffer);
+      buffer.put((byte) ',');
+
+      Assert.assertEquals("double=12345.6789,", new String(buffer.array(), 0, buffer.position()));
+   }
+
+   @Test
+   public void testPowersOfTwoAndTen() {
+      for (int e = -1074; e <= 1023; e++) {
+         verify(Math.scalb(1d, e));
+      }
+
+      for (int e = -323; e <= 308; e++) {
+         verify(Double.parseDouble("1e" + e));
+      }
+   }
+
+   @Test
+   public void testBoundaries() {
+      verify(Double.MIN_NORMAL);
+      verify(Math.nextDown(Double.MIN_NORMAL));
+      verify(Math.nextUp(Double.MIN_NORMAL));
+      verify(Double.MAX_VALUE);
+      verify(Math.nextDown(Double.MAX_VALUE));
+      verify(9007199254740993d);
+      verify(2e23d);
+   }
+
+   @Test
+   public void testRandomBitPatterns() {
+      final Random random = new Random(0x1f1f1fL);
+      for (int i = 0; i < SAMPLES; i++) {
+         final double value = Double.longBitsToDouble(random.nextLong());
+         if (!Double.isNaN(value) && !Double.isInfinite(value)) {
+            verify(value);
+         }
+      }
+   }
+
+   @Test
+   public void testRandomSensorValues() {
+      final Random random = new Random(0x5e7507L);
+      for (int i = 0; i < SAMPLES; i++) {
+         verify(random.nextDouble() * Math.pow(10, random.nextInt(24) - 12));
+         verify(Math.round(random.nextGaussian() * 1e7) / 1e3);
+      }
+   }
+
+   private void verify(final double value) {
+      final String formatted = format(value);
+      Assert.assertEquals(formatted, value, Double.parseDouble(formatted), 0d);
+      Assert.assertEquals(formatted, formatted.length(), RyuDouble.length(value));
+
+      final BigDecimal ours = new BigDecimal(formatted).stripTrailingZeros();
+      final BigDecimal jdk = new BigDecimal(Double.toString(value)).stripTrailingZeros();
+      if (ours.precision() > jdk.precision()) {
+         Assert.fail(formatted + " is longer than " + Double.toString(value));
+      }
+   }
+
+   private String format(final double value) {
+      buffer.clear();
+      RyuDouble.format(value, buffer);
+      return new String(buffer.array(), 0, buffer.position());
+   }
+}
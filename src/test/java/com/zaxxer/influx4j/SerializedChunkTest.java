@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class SerializedChunkTest {
+   private final List<SerializedChunk> recycled = new ArrayList<>();
+
+   @Test
+   public void testFullChunkRecycledWhenSent() {
+      final SerializedChunk chunk = new SerializedChunk(64, recycled::add);
+      Assert.assertTrue(chunk.beginWrite());
+      chunk.buffer.put((byte) 'x');
+      chunk.sealFull();
+
+      Assert.assertFalse("the flusher cannot seal a chunk queued by its producer", chunk.trySeal());
+      chunk.release();
+      Assert.assertEquals(1, recycled.size());
+      Assert.assertTrue(chunk.isEmpty());
+   }
+
+   @Test
+   public void testSweptChunkSentBeforeAbandoned() {
+      final SerializedChunk chunk = sweptChunk();
+
+      chunk.release();
+      Assert.assertTrue("recycled while its producer still holds it", recycled.isEmpty());
+      Assert.assertFalse(chunk.beginWrite());
+
+      chunk.abandon();
+      Assert.assertEquals(1, recycled.size());
+   }
+
+   @Test
+   public void testSweptChunkAbandonedBeforeSent() {
+      final SerializedChunk chunk = sweptChunk();
+
+      Assert.assertFalse(chunk.beginWrite());
+      chunk.abandon();
+      Assert.assertTrue("recycled before it was sent", recycled.isEmpty());
+
+      chunk.release();
+      Assert.assertEquals(1, recycled.size());
+      Assert.assertTrue(chunk.beginWrite());
+   }
+
+   @Test
+   public void testEmptyOrBusyChunkNotSwept() {
+      final SerializedChunk chunk = new SerializedChunk(64, recycled::add);
+      Assert.assertFalse(chunk.trySeal());
+
+      Assert.assertTrue(chunk.beginWrite());
+      chunk.buffer.put((byte) 'x');
+      Assert.assertFalse("sealed during an append", chunk.trySeal());
+      chunk.endWrite();
+      Assert.assertTrue(chunk.trySeal());
+   }
+
+   private SerializedChunk sweptChunk() {
+      final SerializedChunk chunk = new SerializedChunk(64, recycled::add);
+      Assert.assertTrue(chunk.beginWrite());
+      chunk.buffer.put((byte) 'x');
+      chunk.endWrite();
+      Assert.assertTrue(chunk.trySeal());
+      return chunk;
+   }
+}
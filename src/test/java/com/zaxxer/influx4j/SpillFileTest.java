@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import com.zaxxer.influx4j.InfluxDB.Precision;
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class SpillFileTest {
+   private PointFactory pointFactory;
+   private File directory;
+
+   @Before
+   public void createFactory() throws Exception {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+      directory = Files.createTempDirectory("influx4j-spill").toFile();
+   }
+
+   @After
+   public void shutdownFactory() {
+      pointFactory.close();
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   @Test
+   public void testSpilledLinesImportable() throws Exception {
+      final SpillFile spillFile = new SpillFile(directory, "mydb", "autogen");
+      Assert.assertNull("created before the first spill", spillFile.getFile());
+
+      final Point point = pointFactory.createPoint("cpu").tag("host", "h1").field("idle", 1L).timestamp(5, TimeUnit.SECONDS);
+      spillFile.append(point, Precision.SECOND);
+      point.release();
+
+      final PointBatch batch = pointFactory.createBatch("cpu").tag("host", "h2");
+      final int idle = batch.longField("idle");
+      batch.addRow(6, TimeUnit.SECONDS).setLong(idle, 2L);
+      batch.addRow(7, TimeUnit.SECONDS).setLong(idle, 3L);
+      spillFile.append(batch, Precision.SECOND);
+      batch.release();
+      spillFile.close();
+
+      final String contents = new String(Files.readAllBytes(spillFile.getFile().toPath()), StandardCharsets.UTF_8);
+      Assert.assertEquals("# DML\n# CONTEXT-DATABASE: mydb\n# CONTEXT-RETENTION-POLICY: autogen\n" +
+                          "cpu,host=h1 idle=1i 5\n" +
+                          "cpu,host=h2 idle=2i 6\n" +
+                          "cpu,host=h2 idle=3i 7\n", contents);
+   }
+
+   @Test
+   public void testLineLargerThanBuffer() throws Exception {
+      final StringBuilder large = new StringBuilder();
+      for (int i = 0; i < 100 * 1024; i++) {
+         large.append('x');
+      }
+
+      final SpillFile spillFile = new SpillFile(directory, "mydb", "autogen");
+      final Point point = pointFactory.createPoint("log").field("text", large.toString()).timestamp(1, TimeUnit.SECONDS);
+      spillFile.append(point, Precision.SECOND);
+      point.release();
+      spillFile.close();
+
+      final String contents = new String(Files.readAllBytes(spillFile.getFile().toPath()), StandardCharsets.UTF_8);
+      Assert.assertTrue(contents.endsWith("log text=\"" + large + "\" 1\n"));
+   }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class SpillLogTest {
+   private static final String ENDPOINT = "localhost:8086";
+
+   private File directory;
+
+   @Before
+   public void createDirectory() throws Exception {
+      directory = Files.createTempDirectory("influx4j-spill").toFile();
+   }
+
+   @After
+   public void deleteDirectory() {
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   @Test
+   public void testRecoveredAfterCrash() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      log.append(ascii("cpu idle=1i 1\n"));
+      log.append(ascii("cpu idle=2i 2\n"));
+      log.append(ascii("cpu idle=3i 3\n"));
+      Assert.assertEquals(3, log.size());
+
+      // Opened again by a process restarted after a crash, which took its lock with it
+      log.close();
+      final SpillLog recovered = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      Assert.assertEquals(3, recovered.size());
+      Assert.assertEquals(42, recovered.bytes());
+      for (int i = 1; i <= 3; i++) {
+         Assert.assertEquals("cpu idle=" + i + "i " + i + "\n", string(recovered.claim()));
+         recovered.release(true);
+      }
+      Assert.assertNull(recovered.claim());
+      Assert.assertEquals(0, recovered.size());
+
+      // Appends go to a new segment, after the recovered ones
+      recovered.append(ascii("cpu idle=4i 4\n"));
+      Assert.assertEquals("cpu idle=4i 4\n", string(recovered.claim()));
+   }
+
+   @Test
+   public void testConsumedNotReplayed() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      log.append(ascii("first\n"));
+      log.append(ascii("second\n"));
+      log.append(ascii("third\n"));
+
+      Assert.assertEquals("first\n", string(log.claim()));
+      Assert.assertNull("one record claimed at a time", log.claim());
+      log.release(true);
+
+      // Not consumed, so it is claimed again
+      Assert.assertEquals("second\n", string(log.claim()));
+      log.release(false);
+      Assert.assertEquals("second\n", string(log.claim()));
+      log.release(false);
+      log.close();
+
+      final SpillLog recovered = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      Assert.assertEquals(2, recovered.size());
+      Assert.assertEquals("second\n", string(recovered.claim()));
+      recovered.release(true);
+      Assert.assertEquals("third\n", string(recovered.claim()));
+   }
+
+   @Test
+   public void testTornRecordDropped() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      log.append(ascii("whole\n"));
+      log.append(ascii("corrupt\n"));
+      log.close();
+
+      final File[] files = segments();
+      Assert.assertEquals(1, files.length);
+      try (final RandomAccessFile file = new RandomAccessFile(files[0], "rw")) {
+         // The second record starts after the 8 byte header and body of the first
+         file.seek(8 + 6 + 8 + 2);
+         file.write('X');
+      }
+
+      final SpillLog recovered = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      Assert.assertEquals(1, recovered.size());
+      Assert.assertEquals("whole\n", string(recovered.claim()));
+      recovered.release(true);
+      Assert.assertNull(recovered.claim());
+   }
+
+   @Test
+   public void testSegmentsRotatedAndDeleted() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 64);
+      for (int i = 0; i < 8; i++) {
+         log.append(ascii("cpu idle=" + i + "i\n"));
+      }
+      // Three records of 20 bytes fit in a segment
+      Assert.assertEquals(3, segments().length);
+
+      // A record larger than a segment gets a segment of its own
+      final ByteBuffer large = ByteBuffer.allocate(1000);
+      log.append(large);
+      Assert.assertEquals(4, segments().length);
+
+      for (int i = 0; i < 8; i++) {
+         Assert.assertEquals("cpu idle=" + i + "i\n", string(log.claim()));
+         log.release(true);
+      }
+      Assert.assertEquals("segments deleted once consumed", 1, segments().length);
+      Assert.assertEquals(1000, log.claim().remaining());
+      log.release(true);
+      Assert.assertEquals("the segment appended to is kept", 1, segments().length);
+
+      log.close();
+      final SpillLog recovered = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 64);
+      Assert.assertEquals(0, recovered.size());
+      Assert.assertEquals(0, segments().length);
+   }
+
+   @Test
+   public void testLockedWhileOpen() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      log.append(ascii("cpu idle=1i 1\n"));
+      try {
+         new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+         Assert.fail("opened twice");
+      }
+      catch (final IOException e) {
+         // expected
+      }
+
+      log.close();
+      final SpillLog reopened = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      Assert.assertEquals(1, reopened.size());
+      reopened.close();
+   }
+
+   @Test
+   public void testEndpointsKeptApart() throws Exception {
+      final SpillLog first = new SpillLog(directory, "influx1:8086", "mydb", "autogen", 4096);
+      final SpillLog second = new SpillLog(directory, "influx2:8086", "mydb", "autogen", 4096);
+      first.append(ascii("first\n"));
+      second.append(ascii("second\n"));
+      first.close();
+      second.close();
+
+      final SpillLog recovered = new SpillLog(directory, "influx2:8086", "mydb", "autogen", 4096);
+      Assert.assertEquals(1, recovered.size());
+      Assert.assertEquals("second\n", string(recovered.claim()));
+      recovered.close();
+   }
+
+   @Test
+   public void testNamesKeptInDirectory() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "../my/db", "auto\\gen:1", 4096);
+      log.append(ascii("cpu idle=1i 1\n"));
+      log.close();
+
+      final File[] files = segments();
+      Assert.assertEquals(1, files.length);
+      Assert.assertTrue(files[0].getName(), files[0].getName().startsWith("influx4j-localhost_8086-.._my_db-auto_gen_1-"));
+   }
+
+   @Test
+   public void testAppendAfterClose() throws Exception {
+      final SpillLog log = new SpillLog(directory, ENDPOINT, "mydb", "autogen", 4096);
+      log.append(ascii("cpu idle=1i 1\n"));
+      log.close();
+      try {
+         log.append(ascii("cpu idle=2i 2\n"));
+         Assert.fail("appended after close");
+      }
+      catch (final IOException e) {
+         // expected
+      }
+      Assert.assertEquals(1, segments().length);
+   }
+
+   private File[] segments() {
+      return directory.listFiles((dir, name) -> name.endsWith(".spill"));
+   }
+
+   private static ByteBuffer ascii(final String string) {
+      return ByteBuffer.wrap(string.getBytes(StandardCharsets.US_ASCII));
+   }
+
+   private static String string(final ByteBuffer buffer) {
+      final byte[] bytes = new byte[buffer.remaining()];
+      buffer.get(bytes);
+      return new String(bytes, StandardCharsets.US_ASCII);
+   }
+}
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import com.zaxxer.influx4j.util.DaemonThreadFactory;
+
+public class SpillReplayTest {
+   private PointFactory pointFactory;
+   private StandInServer server;
+   private File directory;
+   private InfluxDB influxDB;
+   private int written;
+
+   @Before
+   public void createServer() throws Exception {
+      pointFactory = PointFactory.builder()
+            .setThreadFactory(new DaemonThreadFactory("Point"))
+            .build();
+      server = new StandInServer();
+      directory = Files.createTempDirectory("influx4j-spill").toFile();
+   }
+
+   @After
+   public void shutdownServer() throws Exception {
+      if (influxDB != null) {
+         influxDB.close();
+      }
+      server.close();
+      pointFactory.close();
+
+      final File[] files = directory.listFiles();
+      if (files != null) {
+         for (final File file : files) {
+            file.delete();
+         }
+      }
+      directory.delete();
+   }
+
+   @Test
+   public void testOutageSpilledAndReplayedOnce() throws Exception {
+      influxDB = builder().build();
+      outage();
+   }
+
+   @Test
+   public void testOutageSpilledAndReplayedOnceFromRing() throws Exception {
+      influxDB = builder().setRingBufferSize(1).build();
+      outage();
+   }
+
+   @Test
+   public void testRetryableStatusSpilledAndReplayedOnce() throws Exception {
+      influxDB = builder().build();
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      for (final int status : new int[] { 503, 404, 401 }) {
+         server.setStatus(status);
+         final long spilled = metrics.getSpilledBatchCount();
+         writePoints(100);
+         await(() -> metrics.getSpilledBatchCount() > spilled);
+      }
+
+      server.setStatus(204);
+      writePoints(100);
+      awaitReceived();
+      await(() -> metrics.getReplayedBatchCount() == metrics.getSpilledBatchCount());
+      assertReceivedOnce();
+      Assert.assertEquals(0, metrics.getDroppedBatchCount());
+      Assert.assertEquals(0, metrics.getRejectedBatchCount());
+   }
+
+   @Test
+   public void testRejectedBatchNotReplayed() throws Exception {
+      influxDB = builder().build();
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      server.setStatus(413);
+      writePoints(100);
+      await(() -> metrics.getRejectedBatchCount() > 0);
+      // The points may have been sent in more than one batch
+      TimeUnit.MILLISECONDS.sleep(200);
+
+      server.setStatus(204);
+      final int rejected = written;
+      writePoints(100);
+      await(() -> server.getLines() == written - rejected);
+      Assert.assertEquals(0, metrics.getSpilledBatchCount());
+      Assert.assertEquals(0, metrics.getReplayedBatchCount());
+   }
+
+   @Test
+   public void testRejectedReplayNotCountedReplayed() throws Exception {
+      influxDB = builder().build();
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      server.down();
+      writePoints(100);
+      await(() -> metrics.getSpilledBatchCount() > 0);
+      TimeUnit.MILLISECONDS.sleep(200);
+
+      server.setStatus(400);
+      server.up();
+      await(() -> metrics.getRejectedBatchCount() == metrics.getSpilledBatchCount());
+      Assert.assertEquals(0, metrics.getReplayedBatchCount());
+      Assert.assertEquals(0, server.getLines());
+   }
+
+   @Test
+   public void testInFlightCountedDroppedWithoutSpillLog() throws Exception {
+      influxDB = builder().setSpillLog(false).build();
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      server.setStatus(503);
+      writePoints(100);
+      await(() -> metrics.getDroppedBatchCount() > 0);
+      Assert.assertEquals(0, metrics.getSpilledBatchCount());
+   }
+
+   /**
+    * Write while the server is up, down, and up again, and check that every line arrives
+    * exactly once: those written while it was down are spilled and replayed after it is back.
+    */
+   private void outage() throws Exception {
+      final WriteMetrics metrics = influxDB.getWriteMetrics();
+
+      writePoints(100);
+      awaitReceived();
+
+      server.down();
+      writePoints(100);
+      await(() -> metrics.getSpilledBatchCount() > 0);
+      TimeUnit.MILLISECONDS.sleep(200);
+
+      server.up();
+      writePoints(100);
+      awaitReceived();
+      await(() -> metrics.getReplayedBatchCount() == metrics.getSpilledBatchCount());
+      assertReceivedOnce();
+      Assert.assertEquals(0, metrics.getDroppedBatchCount());
+   }
+
+   private InfluxDB.Builder builder() {
+      return InfluxDB.builder()
+         .setConnection("127.0.0.1", server.getPort(), InfluxDB.Protocol.HTTP)
+         .setUsername("influx4j")
+         .setDatabase("influx4j")
+         .setAutoFlushPeriod(20)
+         .setSpillLog(true)
+         .setSpillDirectory(directory)
+         .setThreadFactory(new DaemonThreadFactory("Flusher"));
+   }
+
+   private void writePoints(final int count) {
+      for (int i = 0; i < count; i++, written++) {
+         influxDB.write(pointFactory.createPoint("cpu").field("seq", (long) written).timestamp(written, TimeUnit.SECONDS));
+      }
+   }
+
+   private void awaitReceived() throws InterruptedException {
+      await(() -> server.getLines() >= written);
+   }
+
+   private void assertReceivedOnce() {
+      Assert.assertEquals(written, server.getLines());
+      for (final Map.Entry<String, AtomicInteger> entry : server.getReceived().entrySet()) {
+         Assert.assertEquals("received more than once: " + entry.getKey(), 1, entry.getValue().get());
+      }
+   }
+
+   private static void await(final BooleanSupplier condition) throws InterruptedException {
+      final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+      while (!condition.getAsBoolean()) {
+         Assert.assertTrue("timed out", System.nanoTime() - deadline < 0);
+         TimeUnit.MILLISECONDS.sleep(10);
+      }
+   }
+}
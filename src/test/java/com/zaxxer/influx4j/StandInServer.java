@@ -0,0 +1,205 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A stand-in for an InfluxDB server on the loopback interface, like the one the benchmarks
+ * write to, that can also fail.  A query is answered at once, so connections validate; a
+ * write is read in full and answered with the status currently set, and only a write
+ * answered {@code 204 No Content} counts its lines as received.  The server can be taken
+ * down, closing every connection, and brought up again on the same port.
+ */
+final class StandInServer implements AutoCloseable {
+   private static final byte[] OK = "HTTP/1.1 200 OK\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+   private static final byte[] NO_CONTENT = "HTTP/1.1 204 No Content\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.US_ASCII);
+
+   private final int port;
+   private final CopyOnWriteArrayList<Socket> sockets;
+   private final ConcurrentHashMap<String, AtomicInteger> received;
+   private volatile ServerSocket serverSocket;
+   private volatile int status;
+
+   StandInServer() throws IOException {
+      this.sockets = new CopyOnWriteArrayList<>();
+      this.received = new ConcurrentHashMap<>();
+      this.status = 204;
+      up(0);
+      this.port = serverSocket.getLocalPort();
+   }
+
+   int getPort() {
+      return port;
+   }
+
+   /**
+    * Answer every write from now on with a status.
+    */
+   void setStatus(final int status) {
+      this.status = status;
+   }
+
+   /**
+    * Get how many times each line was received.
+    */
+   Map<String, AtomicInteger> getReceived() {
+      return received;
+   }
+
+   /**
+    * Get the number of distinct lines received.
+    */
+   int getLines() {
+      return received.size();
+   }
+
+   /**
+    * Stop accepting connections, and close the open ones.
+    */
+   void down() throws IOException {
+      serverSocket.close();
+      // Not while a write is answered, so that a write counted received is also answered
+      synchronized (this) {
+         for (final Socket socket : sockets) {
+            socket.close();
+         }
+         sockets.clear();
+      }
+   }
+
+   /**
+    * Accept connections on the same port again.
+    */
+   void up() throws IOException {
+      up(port);
+   }
+
+   @Override
+   public void close() throws IOException {
+      down();
+   }
+
+   private void up(final int port) throws IOException {
+      final ServerSocket socket = new ServerSocket();
+      socket.setReuseAddress(true);
+      socket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 64);
+      serverSocket = socket;
+
+      final Thread acceptor = new Thread(() -> accept(socket), "stand-in-acceptor");
+      acceptor.setDaemon(true);
+      acceptor.start();
+   }
+
+   private void accept(final ServerSocket serverSocket) {
+      while (!serverSocket.isClosed()) {
+         try {
+            final Socket socket = serverSocket.accept();
+            sockets.add(socket);
+            final Thread server = new Thread(() -> serve(socket), "stand-in-server");
+            server.setDaemon(true);
+            server.start();
+         }
+         catch (final IOException e) {
+            // closed
+         }
+      }
+   }
+
+   private void serve(final Socket socket) {
+      try (final Socket s = socket) {
+         s.setTcpNoDelay(true);
+         final InputStream in = new BufferedInputStream(s.getInputStream(), 64 * 1024);
+         final OutputStream out = s.getOutputStream();
+         final StringBuilder line = new StringBuilder();
+         while (true) {
+            if (!readLine(in, line)) {
+               return;
+            }
+            final boolean write = line.indexOf("POST") == 0;
+
+            int contentLength = 0;
+            while (readLine(in, line) && line.length() > 0) {
+               if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("Content-Length:")) {
+                  contentLength = Integer.parseInt(line.substring(15).trim());
+               }
+            }
+
+            final byte[] body = new byte[contentLength];
+            for (int read = 0; read < contentLength; ) {
+               final int n = in.read(body, read, contentLength - read);
+               if (n < 0) {
+                  return;
+               }
+               read += n;
+            }
+
+            if (!write) {
+               out.write(OK);
+               out.flush();
+            }
+            else {
+               synchronized (this) {
+                  if (s.isClosed()) {
+                     return;
+                  }
+
+                  final int status = this.status;
+                  if (status == 204) {
+                     for (final String received : new String(body, StandardCharsets.UTF_8).split("\n")) {
+                        this.received.computeIfAbsent(received, k -> new AtomicInteger()).incrementAndGet();
+                     }
+                     out.write(NO_CONTENT);
+                  }
+                  else {
+                     out.write(("HTTP/1.1 " + status + " Error\r\nContent-Length: 2\r\n\r\n{}").getBytes(StandardCharsets.US_ASCII));
+                  }
+                  out.flush();
+               }
+            }
+         }
+      }
+      catch (final IOException e) {
+         // client went away, or the server went down
+      }
+   }
+
+   private static boolean readLine(final InputStream in, final StringBuilder line) throws IOException {
+      line.setLength(0);
+      for (int c = in.read(); c != '\n'; c = in.read()) {
+         if (c < 0) {
+            return false;
+         }
+         if (c != '\r') {
+            line.append((char) c);
+         }
+      }
+      return true;
+   }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright (c) 2017, Brett Wooldridge.  All rights reserved.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.zaxxer.influx4j;
+
+import com.zaxxer.influx4j.util.Utf8;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Random;
+
+/**
+ * Tests of the SWAR string classification in {@link Utf8} against a char-by-char scan.
+ */
+public class Utf8Test
+{
+   private static final char[] ALPHABET = { 'a', 'Z', '0', ',', '=', ' ', '"', '\0', '\u007f', '\u0080', '\u00e9', '\u4e2d', '\uffff' };
+
+   @Test
+   public void testClassify() {
+      Assert.assertEquals(Utf8.PLAIN_ASCII, Utf8.classify("", ',', '=', ' '));
+      Assert.assertEquals(Utf8.PLAIN_ASCII, Utf8.classify("plain", ',', '=', ' '));
+      Assert.assertEquals(Utf8.ESCAPED_ASCII, Utf8.classify("sp ace", ',', '=', ' '));
+      Assert.assertEquals(Utf8.PLAIN_ASCII, Utf8.classify("sp ace", '"', '"', '"'));
+      Assert.assertEquals(Utf8.ESCAPED_ASCII, Utf8.classify("0123456789=", ',', '=', ' '));
+      Assert.assertEquals(Utf8.NON_ASCII, Utf8.classify("caf\u00e9 au lait", ',', '=', ' '));
+      Assert.assertEquals(3, Utf8.count("a,b=c d", ',', '=', ' '));
+      Assert.assertEquals(2, Utf8.count("\"quoted\"", '"', '"', '"'));
+   }
+
+   @Test
+   public void testRandomStrings() {
+      final Random random = new Random(0x5ca1L);
+      final StringBuilder sb = new StringBuilder();
+      for (int i = 0; i < 100_000; i++) {
+         sb.setLength(0);
+         final int len = random.nextInt(40);
+         final int alphabet = 3 + random.nextInt(ALPHABET.length - 2);
+         for (int j = 0; j < len; j++) {
+            sb.append(ALPHABET[random.nextInt(alphabet)]);
+         }
+
+         final String string = sb.toString();
+         Assert.assertEquals(string, scalarClassify(string, ',', '=', ' '), Utf8.classify(string, ',', '=', ' '));
+         Assert.assertEquals(string, scalarClassify(string, '"', '"', '"'), Utf8.classify(string, '"', '"', '"'));
+         Assert.assertEquals(string, scalarCount(string, ',', '=', ' '), Utf8.count(string, ',', '=', ' '));
+         Assert.assertEquals(string, scalarCount(string, '"', '"', '"'), Utf8.count(string, '"', '"', '"'));
+      }
+   }
+
+   private static int scalarClassify(final String string, final char e1, final char e2, final char e3) {
+      if (Utf8.containsUnicode(string)) {
+         return Utf8.NON_ASCII;
+      }
+      return scalarCount(string, e1, e2, e3) > 0 ? Utf8.ESCAPED_ASCII : Utf8.PLAIN_ASCII;
+   }
+
+   private static int scalarCount(final String string, final char e1, final char e2, final char e3) {
+      int count = 0;
+      for (int i = 0; i < string.length(); i++) {
+         final char c = string.charAt(i);
+         if (c == e1 || c == e2 || c == e3) {
+            count++;
+         }
+      }
+      return count;
+   }
+}